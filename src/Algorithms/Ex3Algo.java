@@ -15,7 +15,26 @@ import java.util.Objects;
  * Your task is to implement (here) your PacMan algorithm.
  */
 public class Ex3Algo implements PacManAlgo {
+    // the largest all pairs table built (about 4700 walkable cells), bigger boards use the searches of _cache
+    private static final long ORACLE_BUDGET = 64L << 20;
     private int _count;
+    // the game board, loaded in place every tick so its caches and obstacle hashes follow the cells that changed
+    private Map _board;
+    // the per tick tables move() sets for the methods below (see setTickTables):
+    // the all pairs table of the walls, rebuilt only when their hash changes (null over ORACLE_BUDGET),
+    // used by nextStep on any board with those walls
+    private DistanceOracle _oracle;
+    private long _oracleWalls;
+    // the distance of every cell from its nearest ghost (see dangerMap), used by findSmartPath and panicMode
+    private Map2D _danger;
+    // the nearest ghost of every cell (see dangerMap), reused while the board keeps its size
+    private Map _owner;
+    // distance maps from pacman, and first steps when there is no oracle, valid as long as the walls are the same
+    private final DistanceCache _cache = new DistanceCache(256, 1 << 20);
+    // the walls findSmartPath puts around the ghost, on top of the board (which is never written), reused
+    private MapOverlay _overlay;
+    // the step costs of riskyPath (see dangerCosts), reused
+    private int[] _costs;
 
     public Ex3Algo() {
         _count = 0;
@@ -72,21 +91,47 @@ public class Ex3Algo implements PacManAlgo {
         String[] posArr = pos.split(",");
         int pacX = Integer.parseInt(posArr[0]);
         int pacY = Integer.parseInt(posArr[1]);
-        Pixel2D pacPos = new Index2D(pacX, pacY);
+        Pixel2D pacPos = Index2D.of(pacX, pacY);
+
+        // only the cells that changed since the last tick are written, so the obstacle hash is kept up to date
+        boolean first = _board == null;
+        if (first) _board = new Map(board);
+        else _board.load(board);
+        Map2D _map = _board;
+        long walls = _board.obstacleHash(blue);
+
+        // get all distance map (a lookup when pacman was on this cell before, with the same walls)
+        Map2D distanceMap = _cache.allDistance(_board, pacPos, blue, GameInfo.CYCLIC_MODE);
+
+        // the walls are fixed for a whole game, so the table is normally built once (if the board is small enough);
+        // so are the component labels, which the board keeps up to date and the ghost overlay of findSmartPath
+        // checks, so a target cut off by the walls costs no search
+        if (first || walls != _oracleWalls) {
+            _oracle = DistanceOracle.tableBytes(_board, blue) <= ORACLE_BUDGET
+                    ? new DistanceOracle(_board, blue, GameInfo.CYCLIC_MODE) : null;
+            _board.components(blue, GameInfo.CYCLIC_MODE);
+            _oracleWalls = walls;
+        }
 
-        // get all distance map
-        Map2D _map = new Map(board);
-        Map2D distanceMap = _map.allDistance(pacPos, blue, GameInfo.CYCLIC_MODE);
+        // parse the ghosts once, and get the wall aware distance to the nearest ghost of every cell
+        Pixel2D[] ghostPos = ghostPositions(ghosts, code);
+        if (_owner == null || _owner.getWidth() != _map.getWidth() || _owner.getHeight() != _map.getHeight()) {
+            _owner = new Map(_map.getWidth(), _map.getHeight(), -1);
+        }
+        Map2D owner = _owner;
+        _danger = dangerMap(_map, ghostPos, owner, blue);
 
         // get closest ghost
         Pixel2D closestGhostPixel = null;
-        GhostCL closestGhost = getClosestGhost(pacPos, ghosts, code);
+        int closestIndex = getClosestGhost(_danger, owner, pacPos, ghostPos);
+
+        if (closestIndex != -1) {
+            GhostCL closestGhost = ghosts[closestIndex];
+            closestGhostPixel = ghostPos[closestIndex];
 
-        if (closestGhost != null) {
-            // get distance from closets ghost
-            String[] currGhPosArr = closestGhost.getPos(code).split(",");
-            closestGhostPixel = new Index2D(Integer.parseInt(currGhPosArr[0]), Integer.parseInt(currGhPosArr[1]));
-            double distToGhost = pacPos.distance2D(closestGhostPixel);
+            // the maze distance, or the straight one if no ghost can reach pacman
+            int mazeDist = _danger.getPixel(pacPos);
+            double distToGhost = mazeDist != -1 ? mazeDist : pacPos.distance2D(closestGhostPixel);
 
             if (distToGhost < GameInfo.SAFETY_RANGE) {
                 if (closestGhost.remainTimeAsEatable(code) >= GameInfo.MIN_TIME_EATABLE && distToGhost < GameInfo.HUNT_RANGE) {
@@ -142,10 +187,11 @@ public class Ex3Algo implements PacManAlgo {
      */
     public int getDirection(Map2D board, Map2D distanceMap, Pixel2D closestGhost, Pixel2D pacman, String goal, int code, int obsColor) {
         int color = 1;
-        Pixel2D[] path;
+        Pixel2D nextMove;
 
         if (Objects.equals(goal, "hunt")) {
-            path = board.shortestPath(pacman, closestGhost, obsColor, GameInfo.CYCLIC_MODE);
+            // only the first step towards the ghost is needed
+            nextMove = nextStep(board, pacman, closestGhost, obsColor);
         } else {
             color = switch (goal) {
                 case "pink" -> Game.getIntColor(Color.PINK, code);
@@ -154,16 +200,16 @@ public class Ex3Algo implements PacManAlgo {
             };
 
             // get the shortest path to goal
-            path = findSmartPath(board, distanceMap, pacman, closestGhost, goal, code, obsColor);
+            Pixel2D[] path = findSmartPath(board, distanceMap, pacman, closestGhost, goal, code, obsColor);
+            nextMove = (path == null || path.length <= 1) ? null : path[1];
         }
 
         // if still no path or pacman reached the goal -> explode :)
-        if (path == null || path.length <= 1) {
+        if (nextMove == null) {
             return randomDir();
         }
 
         // calculate which direction pacman should go.
-        Pixel2D nextMove = path[1];
         int dx = nextMove.getX() - pacman.getX();
         int dy = nextMove.getY() - pacman.getY();
         if (dx == 1 || (GameInfo.CYCLIC_MODE && dx < -1)) return Game.RIGHT;
@@ -175,7 +221,9 @@ public class Ex3Algo implements PacManAlgo {
     /**
      * This function's goal is to find the best smart path in case of 'running'
      * while this case the PacMan will try to find the shortest path to a pink dot,
-     * using the shortest path algorithm by defining the ghost as an obstacle
+     * using the shortest path algorithm by defining the ghost as an obstacle.
+     * With the danger map of the tick (see setTickTables), riskyPath is tried before panicMode
+     * when walling off the ghost leaves no path
      *
      * @param board The game board
      * @param distanceMap The current all distance map
@@ -188,14 +236,15 @@ public class Ex3Algo implements PacManAlgo {
      * @return A path to target avoiding ghosts
      */
     public Pixel2D[] findSmartPath(Map2D board, Map2D distanceMap, Pixel2D pacman, Pixel2D ghost,String goal, int code, int obsColor) {
-        java.util.Map<Pixel2D, Integer> originalValues = new java.util.HashMap<>();
         int[][] directions = {{0, 0}, {0, 1}, {0, -1}, {1, 0}, {-1, 0}};
 
         int targetColor = Objects.equals(goal, "green") ? Game.getIntColor(Color.GREEN, code) : Game.getIntColor(Color.PINK, code);;
         int width = board.getWidth();
         int height = board.getHeight();
 
-        // mark ghost surroundings as obstacles
+        // mark ghost surroundings as obstacles on an overlay, the board itself is not touched
+        if (_overlay == null) _overlay = new MapOverlay(board);
+        else _overlay.reset(board);
         for (int[] dir : directions) {
             int nx, ny;
             if (GameInfo.CYCLIC_MODE) {
@@ -211,19 +260,17 @@ public class Ex3Algo implements PacManAlgo {
                 }
             }
 
-            // store original values and paint next X and Y with obstacle color
-            Pixel2D p = new Index2D(nx, ny);
-            originalValues.put(p, board.getPixel(nx, ny));
-            board.setPixel(nx, ny, obsColor);
+            // paint next X and Y with obstacle color
+            _overlay.setPixel(nx, ny, obsColor);
         }
 
-        // get shortest path (BFS)
-        Pixel2D target = getClosest(board, distanceMap, targetColor);
-        Pixel2D[] path = board.shortestPath(pacman, target, obsColor, GameInfo.CYCLIC_MODE);
+        // get shortest path to the closest target (BFS)
+        Pixel2D[] path = pathToClosest(_overlay, distanceMap, pacman, targetColor, obsColor);
 
-        // restore original map
-        for (java.util.Map.Entry<Pixel2D, Integer> entry : originalValues.entrySet()) {
-            board.setPixel(entry.getKey().getX(), entry.getKey().getY(), entry.getValue());
+        // walled off: accept a path that passes the ghosts at a cost before giving up on the targets
+        Map2D danger = danger(board);
+        if (path == null && danger != null && board instanceof Map) {
+            path = riskyPath((Map) board, danger, pacman, targetColor, obsColor);
         }
 
         // if cannot blocked
@@ -233,9 +280,53 @@ public class Ex3Algo implements PacManAlgo {
         return path;
     }
 
+    /**
+     * Returns the path to the closest pixel of a given color that trades length against risk:
+     * the cheapest path when a step costs 1 plus a penalty that grows as the cell gets closer to a ghost (see dangerCosts).
+     * It is the fallback of findSmartPath when walling off the closest ghost leaves no path at all,
+     * a path whose first step is next to a ghost is refused (panicMode decides then).
+     *
+     * @param board The board map
+     * @param danger The danger map of the board (see dangerMap)
+     * @param pacman The current position of the PacMan
+     * @param color required color to search the closest
+     * @param obsColor The obstacle color
+     *
+     * @return the path, or null if there is none or it starts next to a ghost
+     */
+    public Pixel2D[] riskyPath(Map board, Map2D danger, Pixel2D pacman, int color, int obsColor) {
+        Pixel2D[] path = board.cheapestNearestPath(pacman, color, obsColor, GameInfo.CYCLIC_MODE, dangerCosts(danger));
+        if (path == null || path.length < 2) return null;
+        int firstDanger = danger.getPixel(path[1]);
+        return (firstDanger != -1 && firstDanger <= 1) ? null : path;
+    }
+
+    /**
+     * Computes the step costs of riskyPath from a danger map: 1 for a cell at SAFETY_RANGE or more from every ghost
+     * (or out of their reach), plus DANGER_PENALTY for every step closer than that.
+     *
+     * @param danger The danger map (see dangerMap)
+     *
+     * @return the cost of entering every cell, by flat index (the array is reused by the next call)
+     */
+    public int[] dangerCosts(Map2D danger) {
+        int w = danger.getWidth(), h = danger.getHeight();
+        if (_costs == null || _costs.length != w * h) _costs = new int[w * h];
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                int d = danger.getPixel(x, y);
+                int closer = (d == -1 || d >= GameInfo.SAFETY_RANGE) ? 0 : GameInfo.SAFETY_RANGE - d;
+                _costs[x * h + y] = 1 + closer * GameInfo.DANGER_PENALTY;
+            }
+        }
+        return _costs;
+    }
+
     /**
      * Finds the single best move to maximize distance from the ghost
      * when no safe path to a target is available.
+     * With the danger map of the tick (see setTickTables) the maze distance from the nearest ghost decides first,
+     * the straight distance from the closest ghost breaks ties
      *
      * @param board The current board map
      * @param pacman The current position of the PacMan
@@ -244,6 +335,7 @@ public class Ex3Algo implements PacManAlgo {
      */
     public Pixel2D[] panicMode(Map2D board, Pixel2D pacman, Pixel2D ghost, int obsColor) {
         if (ghost == null) return null;
+        Map2D danger = danger(board);
 
         int width = board.getWidth();
         int height = board.getHeight();
@@ -253,6 +345,7 @@ public class Ex3Algo implements PacManAlgo {
 
         Pixel2D bestMove = null;
         double maxDistance = -1;
+        int maxDanger = -1;
 
         for (int[] m : moves) {
             int nx, ny;
@@ -272,13 +365,21 @@ public class Ex3Algo implements PacManAlgo {
 
             // check if cell is not an obstacle
             if (board.getPixel(nx, ny) != obsColor) {
-                Pixel2D candidate = new Index2D(nx, ny);
+                Pixel2D candidate = Index2D.of(nx, ny);
 
                 // calculate distance to the ghost
                 double distFromGhost = candidate.distance2D(ghost);
 
+                // a cell no ghost can reach is the safest
+                int currDanger = 0;
+                if (danger != null) {
+                    currDanger = danger.getPixel(nx, ny);
+                    if (currDanger == -1) currDanger = Integer.MAX_VALUE;
+                }
+
                 // track of the move that provides the maximum distance
-                if (distFromGhost > maxDistance) {
+                if (currDanger > maxDanger || (currDanger == maxDanger && distFromGhost > maxDistance)) {
+                    maxDanger = currDanger;
                     maxDistance = distFromGhost;
                     bestMove = candidate;
                 }
@@ -312,7 +413,7 @@ public class Ex3Algo implements PacManAlgo {
             int currGhX = Integer.parseInt(currGhPosArr[0]);
             int currGhY = Integer.parseInt(currGhPosArr[1]);
 
-            double currDist = pacman.distance2D(new Index2D(currGhX, currGhY));
+            double currDist = pacman.distance2D(Index2D.of(currGhX, currGhY));
 
             if (currDist < minDist) {
                 minDist = currDist;
@@ -322,6 +423,83 @@ public class Ex3Algo implements PacManAlgo {
         return ghost;
     }
 
+    /**
+     * Parses the positions of the ghosts
+     *
+     * @param ghosts Array of GhostCL
+     * @param code The colors code
+     *
+     * @return The position of every ghost, in the order of ghosts
+     */
+    public Pixel2D[] ghostPositions(GhostCL[] ghosts, int code) {
+        Pixel2D[] ans = new Pixel2D[ghosts.length];
+        for (int i = 0; i < ghosts.length; i++) {
+            String[] currGhPosArr = ghosts[i].getPos(code).split(",");
+            ans[i] = Index2D.of(Integer.parseInt(currGhPosArr[0]), Integer.parseInt(currGhPosArr[1]));
+        }
+        return ans;
+    }
+
+    /**
+     * Computes the danger map: the maze distance of every cell from its nearest ghost
+     * (a single multi source BFS on a common.Map, one search per ghost otherwise)
+     *
+     * @param board The board map
+     * @param ghosts The ghost positions
+     * @param owner Receives the index of the nearest ghost of every cell (-1 if none), may be null
+     * @param obsColor Obstacle color of the game
+     *
+     * @return The danger map (-1 for cells no ghost can reach)
+     */
+    public Map2D dangerMap(Map2D board, Pixel2D[] ghosts, Map2D owner, int obsColor) {
+        if (board instanceof Map) {
+            return ((Map) board).multiSourceDistance(ghosts, obsColor, GameInfo.CYCLIC_MODE, owner);
+        }
+        Map2D danger = new Map(board.getWidth(), board.getHeight(), -1);
+        for (int g = 0; g < ghosts.length; g++) {
+            if (board.getPixel(ghosts[g]) == obsColor) continue;
+            Map2D dist = board.allDistance(ghosts[g], obsColor, GameInfo.CYCLIC_MODE);
+            for (int x = 0; x < board.getWidth(); x++) {
+                for (int y = 0; y < board.getHeight(); y++) {
+                    int d = dist.getPixel(x, y);
+                    int best = danger.getPixel(x, y);
+                    if (d != -1 && (best == -1 || d < best)) {
+                        danger.setPixel(x, y, d);
+                        if (owner != null) owner.setPixel(x, y, g);
+                    }
+                }
+            }
+        }
+        return danger;
+    }
+
+    /**
+     * Finds the closest ghost by maze distance, using a danger map.
+     * If no ghost can reach the PacMan the closest one in a straight line is returned.
+     *
+     * @param danger The danger map (see dangerMap)
+     * @param owner The nearest ghost of every cell (see dangerMap)
+     * @param pacman The Pacman current position.
+     * @param ghosts The ghost positions
+     *
+     * @return The index of the closest ghost, -1 if there are no ghosts
+     */
+    public int getClosestGhost(Map2D danger, Map2D owner, Pixel2D pacman, Pixel2D[] ghosts) {
+        if (ghosts.length == 0 || pacman == null) return -1;
+        if (danger.getPixel(pacman) != -1) return owner.getPixel(pacman);
+
+        int ans = -1;
+        double minDist = Double.MAX_VALUE;
+        for (int i = 0; i < ghosts.length; i++) {
+            double currDist = pacman.distance2D(ghosts[i]);
+            if (currDist < minDist) {
+                minDist = currDist;
+                ans = i;
+            }
+        }
+        return ans;
+    }
+
     /**
      * Checks if there is green dot close to Pacman
      *
@@ -381,6 +559,31 @@ public class Ex3Algo implements PacManAlgo {
         return closest;
     }
 
+    /**
+     * Returns the shortest path from the PacMan to the closest pixel of a given color.
+     * On a common.Map (or an overlay of one) this is a single BFS which stops at the first target it reaches,
+     * otherwise the target is picked by getClosest and the path is computed by shortestPath.
+     *
+     * @param board The board map
+     * @param distanceMap An all distance common.Map of current board
+     * @param pacman The current position of the PacMan
+     * @param color required color to search the closest
+     * @param obsColor Obstacle color of the game
+     *
+     * @return the path to the closest asking element, or null if there is none
+     */
+    public Pixel2D[] pathToClosest(Map2D board, Map2D distanceMap, Pixel2D pacman, int color, int obsColor) {
+        if (board instanceof Map) {
+            return ((Map) board).nearestPath(pacman, color, obsColor, GameInfo.CYCLIC_MODE);
+        }
+        if (board instanceof MapOverlay) {
+            return ((MapOverlay) board).nearestPath(pacman, color, obsColor, GameInfo.CYCLIC_MODE);
+        }
+        Pixel2D target = getClosest(board, distanceMap, color);
+        if (target == null) return null;
+        return board.shortestPath(pacman, target, obsColor, GameInfo.CYCLIC_MODE);
+    }
+
     /**
      * Returns true if two of ways are the same direction or not
      * by checking the first pixel of each way, calculate by Shortest Path algorithm
@@ -394,6 +597,55 @@ public class Ex3Algo implements PacManAlgo {
      * @return boolean sameDirection value
      */
     public boolean sameDirection(Map2D board, Pixel2D src, Pixel2D dest1, Pixel2D dest2, int obsColor) {
-        return (board.shortestPath(src, dest1, obsColor, GameInfo.CYCLIC_MODE)[1].equals(board.shortestPath(src, dest2, obsColor, GameInfo.CYCLIC_MODE)[1]));
+        Pixel2D step1 = nextStep(board, src, dest1, obsColor);
+        return step1 != null && step1.equals(nextStep(board, src, dest2, obsColor));
+    }
+
+    /**
+     * Returns the first step of a shortest path between two pixels.
+     * On a common.Map with the walls of the tick's all pairs table (see setTickTables) it is a lookup,
+     * on any other common.Map only that step is computed (no path is built), and it is cached for the same walls.
+     *
+     * @param board The game board
+     * @param src The source pixel
+     * @param dest The destination pixel
+     * @param obsColor Obstacle color of the game
+     *
+     * @return the pixel to move to, or null if dest is not reachable (or is src)
+     */
+    public Pixel2D nextStep(Map2D board, Pixel2D src, Pixel2D dest, int obsColor) {
+        DistanceOracle oracle = _oracle;
+        if (oracle != null && board instanceof Map && oracle.getObsColor() == obsColor
+                && oracle.isCyclic() == GameInfo.CYCLIC_MODE && oracle.fits((Map) board)) {
+            return oracle.nextStep(src, dest);
+        }
+        if (board instanceof Map) {
+            Map map = (Map) board;
+            int step = _cache.firstStep(map, src, dest, obsColor, GameInfo.CYCLIC_MODE);
+            return step == -1 ? null : map.pixel(step);
+        }
+        Pixel2D[] path = board.shortestPath(src, dest, obsColor, GameInfo.CYCLIC_MODE);
+        return (path == null || path.length < 2) ? null : path[1];
+    }
+
+    /**
+     * Sets the per tick tables, as move() does every tick before it calls the methods above
+     * (the tests set them to check those methods with and without them)
+     *
+     * @param oracle The all pairs table of the walls, or null (nextStep uses it on a board with these walls only)
+     * @param danger The danger map of the tick (see dangerMap), or null
+     */
+    void setTickTables(DistanceOracle oracle, Map2D danger) {
+        _oracle = oracle;
+        _danger = danger;
+    }
+
+    /**
+     * @return the danger map of the tick if it has the shape of the board, otherwise null
+     */
+    private Map2D danger(Map2D board) {
+        Map2D danger = _danger;
+        return danger != null && danger.getWidth() == board.getWidth() && danger.getHeight() == board.getHeight()
+                ? danger : null;
     }
-}
\ No newline at end of file
+}
@@ -61,6 +61,23 @@ public class Ex3AlgoTest {
         System.out.println("✓ getDirection() tests passed");
     }
 
+    @Test
+    public void dangerMapTest() {
+        System.out.println("Testing dangerMap()...");
+
+        // (3,3) is closer in a straight line, but the walls make (5,8) the closer one to walk
+        Pixel2D[] ghosts = {new Index2D(3, 3), new Index2D(5, 8)};
+        Map2D owner = new Map(_map.getWidth(), _map.getHeight(), -1);
+        Map2D danger = _algo.dangerMap(_map, ghosts, owner, blue);
+        Map2D fromPacman = _map.allDistance(pacman, blue, GameInfo.CYCLIC_MODE);
+
+        assertTrue(pacman.distance2D(ghosts[0]) < pacman.distance2D(ghosts[1]));
+        assertEquals(fromPacman.getPixel(ghosts[1]), danger.getPixel(pacman));
+        assertEquals(1, _algo.getClosestGhost(danger, owner, pacman, ghosts));
+
+        System.out.println("✓ dangerMap() tests passed");
+    }
+
     @Test
     public void findSmartPathTest() {
         System.out.println("Testing findEscapePath()...");
@@ -73,6 +90,38 @@ public class Ex3AlgoTest {
         System.out.println("✓ findEscapePath() tests passed");
     }
 
+    @Test
+    public void riskyPathTest() {
+        System.out.println("Testing riskyPath()...");
+
+        // a loop around a block of walls, two routes of the same length from (1,1) to the pink dot at (5,3)
+        int pink = Game.getIntColor(Color.PINK, code);
+        int[][] loop = new int[7][5];
+        for (int x = 0; x < 7; x++) {
+            for (int y = 0; y < 5; y++) {
+                boolean border = x == 0 || x == 6 || y == 0 || y == 4;
+                boolean block = y == 2 && x >= 2 && x <= 4;
+                loop[x][y] = (border || block) ? blue : 0;
+            }
+        }
+        loop[5][3] = pink;
+        Map map = new Map(loop);
+        Pixel2D start = new Index2D(1, 1);
+
+        // a ghost on the top route: the path goes round the bottom
+        Map2D danger = _algo.dangerMap(map, new Pixel2D[] {new Index2D(4, 1)}, null, blue);
+        Pixel2D[] path = _algo.riskyPath(map, danger, start, pink, blue);
+        assertNotNull(path);
+        assertEquals(new Index2D(1, 2), path[1]);
+        assertEquals(new Index2D(5, 3), path[path.length - 1]);
+
+        // a ghost next to pacman: no risky path
+        danger = _algo.dangerMap(map, new Pixel2D[] {new Index2D(2, 1), new Index2D(1, 3)}, null, blue);
+        assertNull(_algo.riskyPath(map, danger, start, pink, blue));
+
+        System.out.println("✓ riskyPath() tests passed");
+    }
+
     @Test
     public void getClosestGhostTest() {
         System.out.println("Testing getClosestGhost()...");
@@ -170,4 +219,45 @@ public class Ex3AlgoTest {
         System.out.println("✓ sameDirection() tests passed");
 
     }
+
+    @Test
+    public void tickStateTest() {
+        System.out.println("Testing the per tick oracle and danger map...");
+
+        // the all pairs table gives the same first steps as the searches, on any board with its walls
+        Ex3Algo tables = new Ex3Algo();
+        tables.setTickTables(new DistanceOracle((Map) _map, blue, GameInfo.CYCLIC_MODE), null);
+        Map copy = new Map(board);
+        for (int x = 0; x < _map.getWidth(); x++) {
+            for (int y = 0; y < _map.getHeight(); y++) {
+                Pixel2D dest = new Index2D(x, y);
+                assertEquals(_algo.nextStep(_map, pacman, dest, blue), tables.nextStep(_map, pacman, dest, blue));
+                assertEquals(_algo.nextStep(_map, pacman, dest, blue), tables.nextStep(copy, pacman, dest, blue));
+            }
+        }
+        assertTrue(tables.sameDirection(_map, pacman, new Index2D(3, 2), new Index2D(1, 2), blue));
+
+        // a corridor with the ghost between pacman and the pink dot: walled off, panicMode runs away without a
+        // danger map, and with one the risky path passes the ghost's side
+        int pink = Game.getIntColor(Color.PINK, code);
+        int[][] corridor = new int[9][3];
+        for (int x = 0; x < 9; x++) {
+            for (int y = 0; y < 3; y++) {
+                corridor[x][y] = (x == 0 || x == 8 || y != 1) ? blue : 0;
+            }
+        }
+        corridor[7][1] = pink;
+        Map map = new Map(corridor);
+        Pixel2D start = new Index2D(2, 1), ghost = new Index2D(5, 1);
+        Map2D distanceMap = map.allDistance(start, blue, false);
+        tables.setTickTables(null, _algo.dangerMap(map, new Pixel2D[] {ghost}, null, blue));
+
+        Pixel2D[] away = _algo.findSmartPath(map, distanceMap, start, ghost, "pink", code, blue);
+        assertEquals(new Index2D(1, 1), away[1]);
+        Pixel2D[] risky = tables.findSmartPath(map, distanceMap, start, ghost, "pink", code, blue);
+        assertEquals(new Index2D(3, 1), risky[1]);
+        assertEquals(new Index2D(7, 1), risky[risky.length - 1]);
+
+        System.out.println("✓ per tick state tests passed");
+    }
 }
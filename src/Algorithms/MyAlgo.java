@@ -7,7 +7,6 @@ import common.*;
 import exe.ex3.game.Game;
 
 import java.awt.*;
-import java.util.HashMap;
 import java.util.Objects;
 
 /**
@@ -18,6 +17,10 @@ import java.util.Objects;
 public class MyAlgo {
 
     private int _count;
+    // distance maps and first steps of the previous ticks, valid as long as the walls are the same
+    private final DistanceCache _cache = new DistanceCache(256, 1 << 20);
+    // the walls findSmartPath puts around the ghost, on top of the board (which is never written), reused
+    private MapOverlay _overlay;
 
     public MyAlgo() {
         _count = 0;
@@ -52,7 +55,7 @@ public class MyAlgo {
 
         // data
         int code = 0;
-        int[][] boardData = game.getGame(code);
+        ReadOnlyMap board = game.getBoard(code);
         MyGhost[] ghosts = game.getGhosts(code);
         String pos = game.getPos(code);
 
@@ -62,7 +65,7 @@ public class MyAlgo {
             int black = Game.getIntColor(Color.BLACK, code);
             int green = Game.getIntColor(Color.GREEN, code);
 
-            printBoard(boardData);
+            printBoard(board);
             System.out.println("Blue=" + blue + ", Pink=" + pink + ", Black=" + black + ", Green=" + green);
             System.out.println("Pacman coordinate: " + pos);
         }
@@ -77,12 +80,13 @@ public class MyAlgo {
             return -1;
         }
 
-        // map analysis
-        Map2D map = new Map(boardData);
+        // map analysis, on the read only view of the game's board: the searches and the cache read it in place and
+        // findSmartPath only overlays it, so the board is never copied (a snapshot would make the game's next
+        // write clone it); the wall hash is kept up to date by the board's own writes
         Pixel2D pacPos = parsePosition(pos);
 
-        // calculate distances from Pacman to every other cell (BFS flood fill)
-        Map2D distanceMap = map.allDistance(pacPos, GameInfo.WALL, GameInfo.CYCLIC_MODE);
+        // calculate distances from Pacman to every other cell (BFS flood fill, or the cached one of the same walls)
+        Map2D distanceMap = _cache.allDistance(board, pacPos, GameInfo.WALL, GameInfo.CYCLIC_MODE);
 
         // decision making
         String goal = "pink"; // Default behavior: Eat dots
@@ -98,17 +102,17 @@ public class MyAlgo {
                     goal = "hunt";
                 }
                 // if ghost is dangerous
-                else if (isGreenClose(map, distanceMap, pacPos, ghostPixel, GameInfo.WALL)) {
+                else if (isGreenClose(board, distanceMap, pacPos, ghostPixel, GameInfo.WALL)) {
                     goal = "green";
                 } else {
                     goal = "run";
                 }
             }
-            return getDirection(map, distanceMap, ghostPixel, pacPos, goal, GameInfo.WALL);
+            return getDirection(board, distanceMap, ghostPixel, pacPos, goal, GameInfo.WALL);
         }
 
         // FIX: handle null if no ghost exists
-        return getDirection(map, distanceMap, null, pacPos, goal, GameInfo.WALL);
+        return getDirection(board, distanceMap, null, pacPos, goal, GameInfo.WALL);
     }
 
     // --- Core Navigation Logic ---
@@ -133,7 +137,9 @@ public class MyAlgo {
             path = findSmartPath(board, distanceMap, pacman, closestGhost, goal, obsColor);
         }
         else if (Objects.equals(goal, "hunt")) {
-            path = board.shortestPath(pacman, closestGhost, obsColor, GameInfo.CYCLIC_MODE);
+            // only the first step towards the ghost is needed
+            Pixel2D nextMove = nextStep(board, pacman, closestGhost, obsColor);
+            return nextMove == null ? randomDir() : toDirection(pacman, nextMove);
         }
         else {
             path = findSmartPath(board, distanceMap, pacman, closestGhost, goal, obsColor);
@@ -145,7 +151,18 @@ public class MyAlgo {
         }
 
         // calculate direction from current(path[0]) to next(path[1])
-        Pixel2D nextMove = path[1];
+        return toDirection(pacman, path[1]);
+    }
+
+    /**
+     * Converts a single step of Pacman into a direction code.
+     *
+     * @param pacman Pacman's current position
+     * @param nextMove The neighboring pixel Pacman moves to
+     *
+     * @return The direction constant (UP, DOWN, LEFT, RIGHT).
+     */
+    private int toDirection(Pixel2D pacman, Pixel2D nextMove) {
         int dx = nextMove.getX() - pacman.getX();
         int dy = nextMove.getY() - pacman.getY();
 
@@ -171,11 +188,12 @@ public class MyAlgo {
     public Pixel2D[] findSmartPath(Map2D board, Map2D distanceMap, Pixel2D pacman, Pixel2D ghost, String goal, int obsColor) {
         int targetColor = Objects.equals(goal, "green") ? GameInfo.GREEN : GameInfo.PINK;
 
-        java.util.Map<Pixel2D, Integer> originalValues = new HashMap<>();
         int width = board.getWidth();
         int height = board.getHeight();
 
-        // temporarily mark the ghost and its neighbors as obstacles
+        // mark the ghost and its neighbors as obstacles on an overlay, the board itself is not touched
+        if (_overlay == null) _overlay = new MapOverlay(board);
+        else _overlay.reset(board);
         if (ghost != null) {
             int[][] directions = {{0, 0}, {0, 1}, {0, -1}, {1, 0}, {-1, 0}};
             for (int[] dir : directions) {
@@ -189,24 +207,12 @@ public class MyAlgo {
                     continue;
                 }
 
-                Pixel2D p = new Index2D(nx, ny);
-                originalValues.put(p, board.getPixel(nx, ny));
-                board.setPixel(nx, ny, obsColor); // make it a wall
+                _overlay.setPixel(nx, ny, obsColor); // make it a wall
             }
         }
 
         // try to find path to nearest targetColor dot with ghost blocked off
-        Pixel2D target = getClosestTarget(board, distanceMap, targetColor);
-        Pixel2D[] path = null;
-
-        if (target != null) {
-            path = board.shortestPath(pacman, target, obsColor, GameInfo.CYCLIC_MODE);
-        }
-
-        // restore map to original state
-        for (java.util.Map.Entry<Pixel2D, Integer> entry : originalValues.entrySet()) {
-            board.setPixel(entry.getKey().getX(), entry.getKey().getY(), entry.getValue());
-        }
+        Pixel2D[] path = pathToClosestTarget(_overlay, distanceMap, pacman, targetColor, obsColor);
 
         // if 'smart path' failed (trapped), use 'Panic Mode'
         if (path == null && ghost != null) {
@@ -249,7 +255,7 @@ public class MyAlgo {
 
             // if move is legal (not a wall)
             if (board.getPixel(nx, ny) != obsColor) {
-                Pixel2D candidate = new Index2D(nx, ny);
+                Pixel2D candidate = Index2D.of(nx, ny);
                 double dist = candidate.distance2D(ghost);
 
                 if (dist > maxDist) {
@@ -278,7 +284,7 @@ public class MyAlgo {
         String[] parts = pos.split(",");
         int x = Integer.parseInt(parts[0]);
         int y = Integer.parseInt(parts[1]);
-        return new Index2D(x, y);
+        return Index2D.of(x, y);
     }
 
     /**
@@ -370,6 +376,34 @@ public class MyAlgo {
         return closest;
     }
 
+    /**
+     * Finds the shortest path from Pacman to the closest pixel of a specific type (PINK or GREEN).
+     * On a common.Map (or a view or an overlay of one) this is a single BFS which stops at the first target it reaches,
+     * instead of a full distance scan followed by a second shortest path search.
+     *
+     * @param board The game board map
+     * @param distanceMap The distance map from Pacman's current position
+     * @param pacman Pacman's current position
+     * @param color The target color
+     * @param obsColor The integer value representing walls
+     *
+     * @return Pixel2D objects array of the path to the closest target, or null if there is none
+     */
+    public Pixel2D[] pathToClosestTarget(Map2D board, Map2D distanceMap, Pixel2D pacman, int color, int obsColor) {
+        if (board instanceof Map) {
+            return ((Map) board).nearestPath(pacman, color, obsColor, GameInfo.CYCLIC_MODE);
+        }
+        if (board instanceof ReadOnlyMap) {
+            return ((ReadOnlyMap) board).nearestPath(pacman, color, obsColor, GameInfo.CYCLIC_MODE);
+        }
+        if (board instanceof MapOverlay) {
+            return ((MapOverlay) board).nearestPath(pacman, color, obsColor, GameInfo.CYCLIC_MODE);
+        }
+        Pixel2D target = getClosestTarget(board, distanceMap, color);
+        if (target == null) return null;
+        return board.shortestPath(pacman, target, obsColor, GameInfo.CYCLIC_MODE);
+    }
+
     /**
      * Checks if the first step towards dest1 is the same as the first step towards dest2.
      * Used to avoid running into a ghost while trying to get an item.
@@ -383,23 +417,56 @@ public class MyAlgo {
      * @return boolean value isSameDirecation
      */
     public boolean sameDirection(Map2D board, Pixel2D src, Pixel2D dest1, Pixel2D dest2, int obsColor) {
-        Pixel2D[] path1 = board.shortestPath(src, dest1, obsColor, GameInfo.CYCLIC_MODE);
-        Pixel2D[] path2 = board.shortestPath(src, dest2, obsColor, GameInfo.CYCLIC_MODE);
+        Pixel2D step1 = nextStep(board, src, dest1, obsColor);
+        Pixel2D step2 = nextStep(board, src, dest2, obsColor);
 
-        if (path1 == null || path1.length < 2 || path2 == null || path2.length < 2) return false;
+        if (step1 == null || step2 == null) return false;
 
-        return path1[1].equals(path2[1]);
+        return step1.equals(step2);
+    }
+
+    /**
+     * Returns the first step of a shortest path between two pixels.
+     * On a common.Map (or a read only view of one) only that step is computed (no path is built), and it is cached for the same walls.
+     *
+     * @param board The game board map
+     * @param src The source pixel coordiantes
+     * @param dest The destination pixel coordiantes
+     * @param obsColor The integer value representing walls
+     *
+     * @return the pixel to move to, or null if dest is not reachable (or is src)
+     */
+    public Pixel2D nextStep(Map2D board, Pixel2D src, Pixel2D dest, int obsColor) {
+        if (board instanceof Map) {
+            Map map = (Map) board;
+            int step = _cache.firstStep(map, src, dest, obsColor, GameInfo.CYCLIC_MODE);
+            return step == -1 ? null : map.pixel(step);
+        }
+        if (board instanceof ReadOnlyMap) {
+            ReadOnlyMap view = (ReadOnlyMap) board;
+            int step = _cache.firstStep(view, src, dest, obsColor, GameInfo.CYCLIC_MODE);
+            return step == -1 ? null : view.pixel(step);
+        }
+        Pixel2D[] path = board.shortestPath(src, dest, obsColor, GameInfo.CYCLIC_MODE);
+        return (path == null || path.length < 2) ? null : path[1];
+    }
+
+    /**
+     * @return the cache of the searches of this algorithm (for its hit and miss counters).
+     */
+    public DistanceCache getCache() {
+        return _cache;
     }
 
     /**
      * Prints the map to the user
      *
-     * @param b 2D array of the game board map
+     * @param b the game board map
      */
-    private static void printBoard(int[][] b) {
-        for (int y = 0; y < b[0].length; y++) {
-            for (int x = 0; x < b.length; x++) {
-                int v = b[x][y];
+    private static void printBoard(Map2D b) {
+        for (int y = 0; y < b.getHeight(); y++) {
+            for (int x = 0; x < b.getWidth(); x++) {
+                int v = b.getPixel(x, y);
                 System.out.print(v + "\t");
             }
             System.out.println();
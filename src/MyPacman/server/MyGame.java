@@ -30,6 +30,8 @@ public class MyGame implements MyPacmanGame {
 
     // --- Instance Variables ---
     private Map2D _map;
+    // zero copy view of _map handed to the GUI and the agent
+    private ReadOnlyMap _board;
     private Pixel2D _pacman;
     private int _pinksCounter;
     private int _status;
@@ -43,7 +45,11 @@ public class MyGame implements MyPacmanGame {
     @Override
     public void init() {
         _status = INIT;
-        this._map = new Map(GameInfo.MAP_SIZE);
+        Map map = new Map(GameInfo.MAP_SIZE);
+        this._map = map;
+        this._board = map.readOnly();
+        // share one Index2D per cell for positions and paths
+        Index2D.intern(GameInfo.MAP_SIZE, GameInfo.MAP_SIZE);
         this.setPinksCounter(0);
 
         this._pacman = new Index2D(this.mid, this.mid + 2);
@@ -116,7 +122,7 @@ public class MyGame implements MyPacmanGame {
             this.updateMap(x, y);
 
             // set new position
-            _pacman = new Index2D(x, y);
+            _pacman = Index2D.of(x, y);
             this._map.setPixel(_pacman, GameInfo.PACMAN);
 
             this.drawBoard();
@@ -201,7 +207,7 @@ public class MyGame implements MyPacmanGame {
             // calculate cyclic coordinates
             int targetX = (nextX + GameInfo.MAP_SIZE) % GameInfo.MAP_SIZE;
             int targetY = (nextY + GameInfo.MAP_SIZE) % GameInfo.MAP_SIZE;
-            Pixel2D targetPos = new Index2D(targetX, targetY);
+            Pixel2D targetPos = Index2D.of(targetX, targetY);
 
             if (isLegalMove(targetX, targetY)) {
                 // restore the map content at the ghost's previous position
@@ -216,7 +222,7 @@ public class MyGame implements MyPacmanGame {
                         // Ghost dies and resets to center
                         _ghosts[i].setPx(this.mid, this.mid);
                         _ghosts[i].setPrevValue(GameInfo.EMPTY);
-                        this._map.setPixel(new Index2D(this.mid, this.mid), GameInfo.GHOST);
+                        this._map.setPixel(this.mid, this.mid, GameInfo.GHOST);
                         continue;
                     } else {
                         // Pacman dies
@@ -293,6 +299,7 @@ public class MyGame implements MyPacmanGame {
     public String getPos(int code) { return _pacman.getX() + "," + _pacman.getY(); }
     public MyGhost[] getGhosts(int code) { return _ghosts; }
     public int[][] getGame(int code) { return this._map.getMap(); }
+    public ReadOnlyMap getBoard(int code) { return this._board; }
 
     /**
      * Triggers the GUI to repaint the board.
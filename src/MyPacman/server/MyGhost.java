@@ -98,7 +98,7 @@ public class MyGhost implements GhostCL {
      * @param y The new Y coordinate.
      */
     public void setPx(int x, int y) {
-        this._ghostPx = new Index2D(x, y);
+        this._ghostPx = Index2D.of(x, y);
         setPos(x, y);
     }
 
@@ -154,6 +154,6 @@ public class MyGhost implements GhostCL {
         String[] gArr = g.getPos(0).split(",");
         int gX = Integer.parseInt(gArr[0]);
         int gY = Integer.parseInt(gArr[1]);
-        return new Index2D(gX, gY);
+        return Index2D.of(gX, gY);
     }
 }
\ No newline at end of file
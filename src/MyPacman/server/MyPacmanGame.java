@@ -1,5 +1,7 @@
 package MyPacman.server;
 
+import common.ReadOnlyMap;
+
 /**
  * The interface defining the core behavior and contract for the Pacman game engine.
  * Any class implementing this interface must handle game initialization,
@@ -61,6 +63,15 @@ public interface MyPacmanGame {
      */
     int[][] getGame(int code);
 
+    /**
+     * Returns a read only view of the live game board, without copying it.
+     * The view follows the board as the game goes on; take its snapshot() for a copy to keep or modify.
+     *
+     * @param code A security or access code (legacy use).
+     * @return A read only view of the board.
+     */
+    ReadOnlyMap getBoard(int code);
+
     /**
      * Returns the current position of the Pacman.
      *
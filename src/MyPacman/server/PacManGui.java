@@ -5,6 +5,7 @@ import java.awt.Font;
 import java.awt.event.KeyEvent;
 
 import common.GameInfo;
+import common.ReadOnlyMap;
 import utils.StdDraw;
 
 /**
@@ -32,14 +33,14 @@ public class PacManGui {
      * @param game The game instance containing the map data.
      */
     public static void drawBoard(MyPacmanGame game) {
-        int[][] map = game.getGame(0);
+        ReadOnlyMap map = game.getBoard(0);
         if (map == null) return;
 
         StdDraw.clear(Color.BLACK);
 
         for (int x = 0; x < GameInfo.MAP_SIZE; x++) {
             for (int y = 0; y < GameInfo.MAP_SIZE; y++) {
-                int val = map[x][y];
+                int val = map.getPixel(x, y);
                 drawCell(x, y, val);
             }
         }
@@ -0,0 +1,192 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch memory for the breadth first searches of {@link Map}.
+ * Each thread owns one workspace (see {@link #acquire(int, int, boolean)}), so a search allocates nothing
+ * once the arrays have grown to the size of the largest map seen by that thread.
+ *
+ * The visited set is epoch stamped: a cell is visited iff stamp[cell]==epoch, so starting a new search
+ * is O(1) instead of clearing a w*h array.
+ * Cells are flat indices in the layout of {@link Map} (x*h+y).
+ */
+final class BfsWorkspace {
+    /** Marks a missing neighbour (outside a non cyclic map). */
+    static final int NONE = -1;
+
+    private static final ThreadLocal<BfsWorkspace> LOCAL = ThreadLocal.withInitial(BfsWorkspace::new);
+
+    /** The BFS queue, every cell is pushed at most once so head/tail never pass the map size. */
+    int[] queue = new int[0];
+    /** parent[c] is the cell c was reached from (valid only when c is visited). */
+    int[] parent = new int[0];
+    /** dist[c] is the search distance (g value) of c (valid only when c is visited). */
+    int[] dist = new int[0];
+    /** Scratch array for {@link #neighbours(int, int[])}. */
+    final int[] next = new int[4];
+    private int[] _stamp = new int[0];
+    private int[] _closed = new int[0];
+    private int _epoch;
+    private IntMinHeap _heap;
+    private BfsWorkspace _reverse;
+
+    // the shape of the current search and its precomputed neighbour offsets (right, left, down, up)
+    private int _w, _h;
+    private boolean _cyclic;
+
+    private BfsWorkspace() {
+    }
+
+    /**
+     * Returns the workspace of the calling thread, sized for a w*h map and with an empty visited set.
+     *
+     * @param w      The map width.
+     * @param h      The map height.
+     * @param cyclic Whether the neighbours wrap around the map borders.
+     * @return The thread's workspace.
+     */
+    static BfsWorkspace acquire(int w, int h, boolean cyclic) {
+        BfsWorkspace ws = LOCAL.get();
+        ws.reset(w, h, cyclic);
+        return ws;
+    }
+
+    /**
+     * Prepares this workspace for a new search on a w*h map.
+     *
+     * @param w      The map width.
+     * @param h      The map height.
+     * @param cyclic Whether the neighbours wrap around the map borders.
+     */
+    void reset(int w, int h, boolean cyclic) {
+        int n = w * h;
+        if (queue.length < n) {
+            queue = new int[n];
+            parent = new int[n];
+            dist = new int[n];
+            _stamp = new int[n];
+            _closed = new int[n];
+            _epoch = 0;
+        }
+
+        // a new epoch empties the visited set, the stamps are cleared only when the counter overflows
+        if (++_epoch == Integer.MAX_VALUE) {
+            Arrays.fill(_stamp, 0);
+            Arrays.fill(_closed, 0);
+            _epoch = 1;
+        }
+
+        _w = w;
+        _h = h;
+        _cyclic = cyclic;
+    }
+
+    /**
+     * @param cell A flat cell index.
+     * @return true iff the cell was visited in the current search.
+     */
+    boolean isVisited(int cell) {
+        return _stamp[cell] == _epoch;
+    }
+
+    /**
+     * Marks a cell as visited and records the cell it was reached from.
+     *
+     * @param cell A flat cell index.
+     * @param from The parent cell (the cell itself for a source).
+     */
+    void visit(int cell, int from) {
+        _stamp[cell] = _epoch;
+        parent[cell] = from;
+    }
+
+    /**
+     * @param cell A flat cell index.
+     * @return true iff the cell was closed (expanded for good) in the current search.
+     */
+    boolean isClosed(int cell) {
+        return _closed[cell] == _epoch;
+    }
+
+    /**
+     * Marks a cell as closed, used by the searches that may reach a cell more than once (A*).
+     *
+     * @param cell A flat cell index.
+     */
+    void close(int cell) {
+        _closed[cell] = _epoch;
+    }
+
+    /**
+     * @return an empty priority queue owned by this workspace.
+     */
+    IntMinHeap heap() {
+        if (_heap == null) _heap = new IntMinHeap(64);
+        _heap.clear();
+        return _heap;
+    }
+
+    /**
+     * Returns a second workspace, owned by this one and reset for the same shape,
+     * for searches that grow two trees at once (bidirectional search).
+     *
+     * @return the paired workspace with an empty visited set.
+     */
+    BfsWorkspace reverse() {
+        if (_reverse == null) _reverse = new BfsWorkspace();
+        _reverse.reset(_w, _h, _cyclic);
+        return _reverse;
+    }
+
+    /**
+     * Writes the four neighbours of a cell into out, in the order right, left, down, up
+     * (the same order the original Index2D based BFS used, so tie breaking between equal paths is kept).
+     * A neighbour outside a non cyclic map is written as {@link #NONE}.
+     *
+     * @param cell A flat cell index.
+     * @param out  An array of at least 4 entries.
+     */
+    void neighbours(int cell, int[] out) {
+        neighbours(cell, _w, _h, _cyclic, out);
+    }
+
+    /**
+     * Writes the four neighbours of a cell of a w*h map into out, right, left, down, up ({@link #NONE} outside
+     * a non cyclic map). This is the one definition of the neighbour order, every search of the package
+     * (with a workspace or not) goes through it or its long version, so they all break ties the same way.
+     *
+     * @param cell   A flat cell index.
+     * @param w      The map width.
+     * @param h      The map height.
+     * @param cyclic Whether the map wraps around its borders.
+     * @param out    An array of at least 4 entries.
+     */
+    static void neighbours(int cell, int w, int h, boolean cyclic, int[] out) {
+        int x = cell / h;
+        int y = cell - x * h;
+        out[0] = x < w - 1 ? cell + h : (cyclic ? y : NONE);
+        out[1] = x > 0 ? cell - h : (cyclic ? (w - 1) * h + y : NONE);
+        out[2] = y < h - 1 ? cell + 1 : (cyclic ? x * h : NONE);
+        out[3] = y > 0 ? cell - 1 : (cyclic ? x * h + h - 1 : NONE);
+    }
+
+    /**
+     * {@link #neighbours(int, int, int, boolean, int[])} for maps whose flat indices pass the int range
+     * ({@link MappedMap}, {@link TiledDistance}).
+     *
+     * @param cell   A flat cell index.
+     * @param w      The map width.
+     * @param h      The map height.
+     * @param cyclic Whether the map wraps around its borders.
+     * @param out    An array of at least 4 entries.
+     */
+    static void neighbours(long cell, int w, int h, boolean cyclic, long[] out) {
+        long x = cell / h;
+        int y = (int) (cell - x * h);
+        out[0] = x < w - 1 ? cell + h : (cyclic ? y : NONE);
+        out[1] = x > 0 ? cell - h : (cyclic ? (long) (w - 1) * h + y : NONE);
+        out[2] = y < h - 1 ? cell + 1 : (cyclic ? x * h : NONE);
+        out[3] = y > 0 ? cell - 1 : (cyclic ? x * h + h - 1 : NONE);
+    }
+}
@@ -0,0 +1,194 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * A breadth first search engine over bitsets, used by {@link Map#allDistance(Pixel2D, int, boolean)} on large maps.
+ *
+ * Every column x of the map (the cells x*h .. x*h+h-1 of the flat layout) is a run of ceil(h/64) longs,
+ * bit y of the run is the cell (x,y). A whole BFS level is expanded 64 cells at a time:
+ * next = (frontier<<1 | frontier>>>1 | left column | right column) & walkable & ~visited,
+ * with the carries between words and the wrap around of a cyclic map handled explicitly.
+ * Only the words next to the current frontier are touched, so a narrow frontier in a long maze stays cheap.
+ *
+ * The result is the same distance map as the queue based BFS.
+ */
+final class BitsetBfs {
+    private static final ThreadLocal<BitsetBfs> LOCAL = ThreadLocal.withInitial(BitsetBfs::new);
+
+    private long[] _visited = new long[0];
+    private long[] _cur = new long[0];
+    private long[] _next = new long[0];
+    private int[] _curList = new int[0];
+    private int[] _nextList = new int[0];
+    private int[] _stamp = new int[0];
+
+    private BitsetBfs() {
+    }
+
+    /**
+     * @param h The map height.
+     * @return the number of longs of a column.
+     */
+    static int wordsPerColumn(int h) {
+        return (h + 63) >>> 6;
+    }
+
+    /**
+     * Builds the walkable bitset of a map.
+     *
+     * @param data     The cells in the layout of {@link Map}.
+     * @param w        The map width.
+     * @param h        The map height.
+     * @param obsColor The obstacle color.
+     * @return the bitset, a set bit is a walkable cell (the padding bits of a column are clear).
+     */
+    static long[] walkable(int[] data, int w, int h, int obsColor) {
+        int wpc = wordsPerColumn(h);
+        long[] free = new long[w * wpc];
+        for (int x = 0; x < w; x++) {
+            int base = x * h, word = x * wpc;
+            for (int y = 0; y < h; y++) {
+                if (data[base + y] != obsColor) free[word + (y >>> 6)] |= 1L << y;
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Computes the BFS distances of every cell from a walkable source.
+     *
+     * @param free   The walkable bitset (see {@link #walkable(int[], int, int, int)}).
+     * @param w      The map width.
+     * @param h      The map height.
+     * @param src    The flat index of the source, which must be walkable.
+     * @param cyclic Whether the neighbours wrap around the map borders.
+     * @param dist   Receives the distances, it must hold -1 for every cell.
+     */
+    static void distances(long[] free, int w, int h, int src, boolean cyclic, int[] dist) {
+        LOCAL.get().run(free, w, h, src, cyclic, dist);
+    }
+
+    private void run(long[] free, int w, int h, int src, boolean cyclic, int[] dist) {
+        int wpc = wordsPerColumn(h);
+        int words = w * wpc;
+        if (_visited.length < words) {
+            _visited = new long[words];
+            _cur = new long[words];
+            _next = new long[words];
+            _curList = new int[words];
+            _nextList = new int[words];
+            _stamp = new int[words];
+        } else {
+            Arrays.fill(_visited, 0, words, 0L);
+            Arrays.fill(_stamp, 0, words, 0);
+        }
+        long[] visited = _visited, cur = _cur, next = _next;
+        int[] curList = _curList, nextList = _nextList, stamp = _stamp;
+        int last = wpc - 1;
+        int topBit = (h - 1) & 63;
+
+        // level 0 is the source alone
+        int sx = src / h, sy = src % h;
+        int sw = sx * wpc + (sy >>> 6);
+        cur[sw] = 1L << sy;
+        visited[sw] = cur[sw];
+        dist[src] = 0;
+        curList[0] = sw;
+        int curSize = 1;
+
+        for (int level = 1; curSize > 0; level++) {
+            int nextSize = 0;
+            for (int i = 0; i < curSize; i++) {
+                int id = curList[i];
+                int x = id / wpc, k = id - x * wpc;
+
+                // the words a frontier word can spread to: itself, above and below (y), left and right (x)
+                for (int c = 0; c < 5; c++) {
+                    int cx = x, ck = k;
+                    if (c == 1) {
+                        if (k > 0) ck = k - 1;
+                        else if (cyclic) ck = last;
+                        else continue;
+                    } else if (c == 2) {
+                        if (k < last) ck = k + 1;
+                        else if (cyclic) ck = 0;
+                        else continue;
+                    } else if (c == 3) {
+                        if (x > 0) cx = x - 1;
+                        else if (cyclic) cx = w - 1;
+                        else continue;
+                    } else if (c == 4) {
+                        if (x < w - 1) cx = x + 1;
+                        else if (cyclic) cx = 0;
+                        else continue;
+                    }
+                    int cand = cx * wpc + ck;
+                    if (stamp[cand] == level) continue;
+                    stamp[cand] = level;
+
+                    long v = expand(cur, cx, ck, w, wpc, topBit, cyclic) & free[cand] & ~visited[cand];
+                    if (v == 0) continue;
+                    visited[cand] |= v;
+                    next[cand] = v;
+                    nextList[nextSize++] = cand;
+
+                    // write the distances of the new cells
+                    int base = cx * h + (ck << 6);
+                    while (v != 0) {
+                        dist[base + Long.numberOfTrailingZeros(v)] = level;
+                        v &= v - 1;
+                    }
+                }
+            }
+
+            // the new frontier replaces the old one, only the words that were set are cleared
+            for (int i = 0; i < curSize; i++) {
+                cur[curList[i]] = 0L;
+            }
+            long[] t = cur;
+            cur = next;
+            next = t;
+            int[] tl = curList;
+            curList = nextList;
+            nextList = tl;
+            curSize = nextSize;
+        }
+
+        for (int i = 0; i < curSize; i++) {
+            cur[curList[i]] = 0L;
+        }
+        _cur = cur;
+        _next = next;
+        _curList = curList;
+        _nextList = nextList;
+    }
+
+    /**
+     * @return the cells of word k of column x that have a frontier cell as a neighbour (walls not applied yet).
+     */
+    private static long expand(long[] f, int x, int k, int w, int wpc, int topBit, boolean cyclic) {
+        int col = x * wpc;
+        int last = wpc - 1;
+        long word = f[col + k];
+
+        // y+1 and y-1 inside the column, with the carry from the next / previous word
+        long v = word << 1 | word >>> 1;
+        if (k > 0) v |= f[col + k - 1] >>> 63;
+        if (k < last) v |= f[col + k + 1] << 63;
+
+        // (a <<1 of bit h-1 lands in the padding, which is never walkable)
+        if (cyclic) {
+            // y = h-1 and y = 0 are neighbours
+            if (k == 0) v |= (f[col + last] >>> topBit) & 1L;
+            if (k == last) v |= (f[col] & 1L) << topBit;
+        }
+
+        // x-1 and x+1
+        if (x > 0) v |= f[col - wpc + k];
+        else if (cyclic) v |= f[(w - 1) * wpc + k];
+        if (x < w - 1) v |= f[col + wpc + k];
+        else if (cyclic) v |= f[k];
+        return v;
+    }
+}
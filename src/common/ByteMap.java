@@ -0,0 +1,54 @@
+package common;
+
+/**
+ * A {@link Map2D} with one byte per cell (values -128..127), a quarter of the memory of {@link Map}.
+ */
+public final class ByteMap extends CompactMap {
+    // set by allocate(), which runs inside the super constructor (so no field initializer here)
+    private byte[] _cells;
+
+    /**
+     * Constructs a w*h map with an init value v.
+     *
+     * @param w The width.
+     * @param h The height.
+     * @param v The init value.
+     */
+    public ByteMap(int w, int h, int v) {
+        super(w, h, v);
+    }
+
+    /**
+     * Constructs a map from a 2D array (deep copy).
+     *
+     * @param data The cells, every value in -128..127.
+     */
+    public ByteMap(int[][] data) {
+        super(data);
+    }
+
+    @Override
+    public int minValue() {
+        return Byte.MIN_VALUE;
+    }
+
+    @Override
+    public int maxValue() {
+        return Byte.MAX_VALUE;
+    }
+
+    @Override
+    public int getCell(int index) {
+        return _cells[index];
+    }
+
+    @Override
+    void allocate(int cells) {
+        _cells = new byte[cells];
+    }
+
+    @Override
+    void store(int index, int v) {
+        _cells[index] = (byte) v;
+    }
+}
@@ -0,0 +1,79 @@
+package common;
+
+/**
+ * The storage of the cells of a {@link Map2D}, and the factory of the matching implementation.
+ * The smaller encodings hold a smaller range of values (writing a value outside it throws),
+ * and use less memory, so large boards fit in the caches:
+ * <pre>
+ * INT    32 bits per cell, any int     {@link Map}
+ * BYTE    8 bits per cell, -128..127   {@link ByteMap}
+ * NIBBLE  4 bits per cell, -8..7       {@link NibbleMap}
+ * </pre>
+ */
+public enum CellEncoding {
+    INT(Integer.MIN_VALUE, Integer.MAX_VALUE),
+    BYTE(Byte.MIN_VALUE, Byte.MAX_VALUE),
+    NIBBLE(-8, 7);
+
+    private final int _min, _max;
+
+    CellEncoding(int min, int max) {
+        _min = min;
+        _max = max;
+    }
+
+    /**
+     * @return the smallest value a cell can hold.
+     */
+    public int minValue() {
+        return _min;
+    }
+
+    /**
+     * @return the largest value a cell can hold.
+     */
+    public int maxValue() {
+        return _max;
+    }
+
+    /**
+     * @param min The smallest value the cells will hold.
+     * @param max The largest value the cells will hold.
+     * @return the most compact encoding holding every value in [min,max].
+     */
+    public static CellEncoding smallest(int min, int max) {
+        if (min >= NIBBLE._min && max <= NIBBLE._max) return NIBBLE;
+        if (min >= BYTE._min && max <= BYTE._max) return BYTE;
+        return INT;
+    }
+
+    /**
+     * Constructs a w*h map with an init value v.
+     *
+     * @param w The width.
+     * @param h The height.
+     * @param v The init value.
+     * @return the new map.
+     */
+    public Map2D create(int w, int h, int v) {
+        switch (this) {
+            case BYTE: return new ByteMap(w, h, v);
+            case NIBBLE: return new NibbleMap(w, h, v);
+            default: return new Map(w, h, v);
+        }
+    }
+
+    /**
+     * Constructs a map from a 2D array (deep copy).
+     *
+     * @param data The cells.
+     * @return the new map.
+     */
+    public Map2D create(int[][] data) {
+        switch (this) {
+            case BYTE: return new ByteMap(data);
+            case NIBBLE: return new NibbleMap(data);
+            default: return new Map(data);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package common;
+
+/**
+ * The base of the {@link Map2D} implementations that keep a cell in fewer than 32 bits
+ * ({@link ByteMap}, {@link NibbleMap}, see {@link CellEncoding}).
+ *
+ * The cells use the flat layout of {@link Map} (the cell (x,y) is at index x*getHeight()+y), only the storage differs.
+ * A compact map holds a small range of values ({@link #minValue()} .. {@link #maxValue()}), writing a value
+ * outside it throws instead of silently truncating it. Everything else behaves like {@link Map}:
+ * setPixel ignores coordinates outside the map, and the searches return the same paths and distances.
+ * Distance maps do not fit the small range, so allDistance returns a {@link Map}.
+ */
+public abstract class CompactMap implements Map2D {
+    private int _w, _h;
+    // the packed cells as the search kernels read them
+    private final GridSearch.Cells _cells = this::getCell;
+    private boolean _cyclicFlag = true;
+
+    /**
+     * @param w The width.
+     * @param h The height.
+     * @param v The init value of every cell.
+     */
+    CompactMap(int w, int h, int v) {
+        init(w, h, v);
+    }
+
+    /**
+     * @param data The cells, data[x][y] is the value of (x,y) (deep copy).
+     */
+    CompactMap(int[][] data) {
+        init(data);
+    }
+
+    /**
+     * @return the smallest value a cell can hold.
+     */
+    public abstract int minValue();
+
+    /**
+     * @return the largest value a cell can hold.
+     */
+    public abstract int maxValue();
+
+    /**
+     * @param index A flat cell index in [0,size()).
+     * @return the value of the cell.
+     */
+    public abstract int getCell(int index);
+
+    /**
+     * Replaces the storage with cells-many zero cells.
+     *
+     * @param cells The number of cells.
+     */
+    abstract void allocate(int cells);
+
+    /**
+     * Writes a cell, the value is already known to be in range.
+     *
+     * @param index A flat cell index.
+     * @param v     The value.
+     */
+    abstract void store(int index, int v);
+
+    /**
+     * Raw write access by flat index, bypassing the coordinate bounds check.
+     *
+     * @param index A flat cell index in [0,size()).
+     * @param v     The new value of the cell.
+     * @throws RuntimeException if v is out of the range of this map.
+     */
+    public void setCell(int index, int v) {
+        checkValue(v, "setCell");
+        store(index, v);
+    }
+
+    /**
+     * @return the number of cells in this map (getWidth()*getHeight()).
+     */
+    public int size() {
+        return _w * _h;
+    }
+
+    /**
+     * Computes the flat index of (x,y), no bounds check is done.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return x*getHeight()+y
+     */
+    public int index(int x, int y) {
+        return x * _h + y;
+    }
+
+    /**
+     * @return a {@link Map} (32 bits per cell) with the same cells and cyclic flag.
+     */
+    public Map toMap() {
+        int n = size();
+        int[] data = new int[n];
+        for (int c = 0; c < n; c++) {
+            data[c] = getCell(c);
+        }
+        Map map = new Map(_w, _h, data);
+        map.setCyclic(_cyclicFlag);
+        return map;
+    }
+
+    @Override
+    public void init(int w, int h, int v) {
+        checkValue(v, "init");
+        checkDimensions(w, h);
+        _w = w;
+        _h = h;
+        Index2D.intern(w, h);
+        allocate(w * h);
+        if (v != 0) {
+            for (int c = 0, n = w * h; c < n; c++) {
+                store(c, v);
+            }
+        }
+    }
+
+    @Override
+    public void init(int[][] arr) {
+        if (arr == null || arr.length == 0 || arr[0] == null)
+            throw new RuntimeException("common.Map2D init error: null or empty array");
+        int w = arr.length;
+        int h = arr[0].length;
+        checkDimensions(w, h);
+        for (int[] column : arr) {
+            if (column == null || column.length != h)
+                throw new RuntimeException("common.Map2D init error: ragged array");
+            for (int v : column) {
+                checkValue(v, "init");
+            }
+        }
+        _w = w;
+        _h = h;
+        Index2D.intern(w, h);
+        allocate(w * h);
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                store(x * h + y, arr[x][y]);
+            }
+        }
+    }
+
+    @Override
+    public int[][] getMap() {
+        int[][] ans = new int[_w][_h];
+        for (int x = 0; x < _w; x++) {
+            int base = x * _h;
+            for (int y = 0; y < _h; y++) {
+                ans[x][y] = getCell(base + y);
+            }
+        }
+        return ans;
+    }
+
+    @Override
+    public int getWidth() {
+        return _w;
+    }
+
+    @Override
+    public int getHeight() {
+        return _h;
+    }
+
+    @Override
+    public int getPixel(int x, int y) {
+        if (x < 0 || x >= _w || y < 0 || y >= _h)
+            throw new RuntimeException("common.Map2D getPixel error: out of bounds");
+        return getCell(x * _h + y);
+    }
+
+    @Override
+    public int getPixel(Pixel2D p) {
+        return getPixel(p.getX(), p.getY());
+    }
+
+    @Override
+    public void setPixel(int x, int y, int v) {
+        checkValue(v, "setPixel");
+        if (x >= 0 && x < _w && y >= 0 && y < _h)
+            store(x * _h + y, v);
+    }
+
+    @Override
+    public void setPixel(Pixel2D p, int v) {
+        if (p == null)
+            throw new RuntimeException("common.Map2D setPixel error: null pixel");
+        setPixel(p.getX(), p.getY(), v);
+    }
+
+    @Override
+    public boolean isInside(Pixel2D p) {
+        return !(p == null || p.getX() < 0 || p.getX() >= _w || p.getY() < 0 || p.getY() >= _h);
+    }
+
+    @Override
+    public boolean isCyclic() {
+        return _cyclicFlag;
+    }
+
+    @Override
+    public void setCyclic(boolean cy) {
+        _cyclicFlag = cy;
+    }
+
+    @Override
+    public int fill(Pixel2D xy, int new_v) {
+        checkValue(new_v, "fill");
+        int start = index(xy.getX(), xy.getY());
+        int oldColor = getPixel(xy.getX(), xy.getY());
+        if (oldColor == new_v) return 0;
+
+        // depth first over a growable stack, a painted cell no longer matches oldColor
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, _cyclicFlag);
+        int[] stack = ws.queue, next = ws.next;
+        int top = 0, ans = 0;
+        store(start, new_v);
+        stack[top++] = start;
+        while (top > 0) {
+            int c = stack[--top];
+            ans++;
+            ws.neighbours(c, next);
+            for (int i = 0; i < 4; i++) {
+                int n = next[i];
+                if (n != BfsWorkspace.NONE && getCell(n) == oldColor) {
+                    store(n, new_v);
+                    stack[top++] = n;
+                }
+            }
+        }
+        return ans;
+    }
+
+    @Override
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        if (p1 == null || p2 == null) return null;
+        if (getPixel(p1) == obsColor || getPixel(p2) == obsColor) return null;
+        if (p1.equals(p2)) return new Pixel2D[] {p1};
+
+        // the BFS of Map (same neighbour order) reading the packed cells, so the same path is found
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        int src = index(p1.getX(), p1.getY());
+        int dst = index(p2.getX(), p2.getY());
+        if (GridSearch.bfs(ws, null, _cells, null, src, dst, false, 0, obsColor) == BfsWorkspace.NONE) return null;
+        return GridSearch.path(ws, _h, p1, src, dst);
+    }
+
+    @Override
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
+        Map ans = new Map(_w, _h, -1);
+        if (getPixel(start.getX(), start.getY()) == obsColor) return ans;
+
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        GridSearch.distances(ws, null, _cells, index(start.getX(), start.getY()), obsColor, ans.cells());
+        return ans;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * Throws if a value does not fit a cell of this map.
+     */
+    private void checkValue(int v, String method) {
+        if (v < minValue() || v > maxValue())
+            throw new RuntimeException("common.Map2D " + method + " error: " + v + " is out of the range ["
+                    + minValue() + "," + maxValue() + "] of " + getClass().getSimpleName());
+    }
+
+    private static void checkDimensions(int w, int h) {
+        if (w <= 0 || h <= 0)
+            throw new RuntimeException("common.Map2D init error: wrong dimensions");
+        if ((long) w * h > Integer.MAX_VALUE - 8)
+            throw new RuntimeException("common.Map2D init error: map too large (" + w + "*" + h + ")");
+    }
+}
@@ -0,0 +1,80 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactMapTest {
+
+    /**
+     * a random board of GameInfo values, about a third walls
+     */
+    /**
+     * checks the packed cells read back what was written, including negative values and word borders
+     */
+    @Test
+    void testCells() {
+        for (CellEncoding e : new CellEncoding[] {CellEncoding.BYTE, CellEncoding.NIBBLE}) {
+            CompactMap map = (CompactMap) e.create(7, 5, -1);
+            for (int c = 0; c < map.size(); c++) {
+                assertEquals(-1, map.getCell(c));
+            }
+            for (int c = 0; c < map.size(); c++) {
+                map.setCell(c, c % 16 - 8);
+            }
+            for (int c = 0; c < map.size(); c++) {
+                assertEquals(c % 16 - 8, map.getCell(c), e + " cell " + c);
+            }
+            assertEquals(map.getCell(map.index(3, 4)), map.getPixel(3, 4));
+            assertArrayEquals(map.getMap(), map.toMap().getMap());
+        }
+    }
+
+    /**
+     * checks the value range is enforced, and the factory picks the smallest encoding
+     */
+    @Test
+    void testRange() {
+        Map2D nibble = CellEncoding.NIBBLE.create(3, 3, 0);
+        assertThrows(RuntimeException.class, () -> nibble.setPixel(0, 0, 8));
+        assertThrows(RuntimeException.class, () -> nibble.setPixel(0, 0, -9));
+        assertThrows(RuntimeException.class, () -> nibble.fill(new Index2D(0, 0), 100));
+        assertThrows(RuntimeException.class, () -> new ByteMap(2, 2, 128));
+        assertThrows(RuntimeException.class, () -> new ByteMap(new int[][] {{1, 2}, {3, 1000}}));
+        assertThrows(RuntimeException.class, () -> new NibbleMap(new int[][] {{1, 2}, {3}}));
+        nibble.setPixel(5, 5, 1);
+        assertEquals(0, nibble.getPixel(2, 2));
+
+        assertEquals(CellEncoding.NIBBLE, CellEncoding.smallest(GameInfo.WALL, GameInfo.GHOST));
+        assertEquals(CellEncoding.BYTE, CellEncoding.smallest(-1, 100));
+        assertEquals(CellEncoding.INT, CellEncoding.smallest(-1, 1000));
+        assertTrue(CellEncoding.INT.create(2, 2, 0) instanceof Map);
+    }
+
+    /**
+     * checks fill, shortestPath and allDistance give the same results as Map
+     */
+    @Test
+    void testSameAsMap() {
+        Random rnd = new Random(17);
+        for (CellEncoding e : new CellEncoding[] {CellEncoding.BYTE, CellEncoding.NIBBLE}) {
+            for (boolean cyclic : new boolean[] {false, true}) {
+                Map map = TestMaps.randomMap(rnd, 23, 19, 0.33, GameInfo.GHOST);
+                Map2D compact = e.create(map.getMap());
+                map.setCyclic(cyclic);
+                compact.setCyclic(cyclic);
+                for (int round = 0; round < 30; round++) {
+                    Pixel2D p = new Index2D(rnd.nextInt(23), rnd.nextInt(19));
+                    Pixel2D q = new Index2D(rnd.nextInt(23), rnd.nextInt(19));
+                    assertArrayEquals(map.shortestPath(p, q, GameInfo.WALL, cyclic), compact.shortestPath(p, q, GameInfo.WALL, cyclic));
+                    assertArrayEquals(map.allDistance(p, GameInfo.WALL, cyclic).getMap(), compact.allDistance(p, GameInfo.WALL, cyclic).getMap());
+                    int v = rnd.nextInt(GameInfo.GHOST + 1);
+                    assertEquals(map.fill(p, v), compact.fill(p, v));
+                    assertArrayEquals(map.getMap(), compact.getMap());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * The connected components of the walkable cells of a {@link Map} (for one obstacle color and cyclic flag),
+ * answering "is b reachable from a" in O(1).
+ *
+ * The labels are built by a union find raster scan. After that the labelling follows single cell changes
+ * (see {@link #setObstacle(int, boolean)}), which is what {@link Map} does for the components it caches:
+ * - a cell that opens up joins the components around it, relabeling the smaller ones into the largest.
+ * - a cell that gets walled off may split its component: one search per neighbour runs in lockstep,
+ *   searches that meet are merged, and every piece that is exhausted while others are still running gets
+ *   a new id. The last piece keeps the old id, so the cost is bounded by the smaller pieces.
+ * Component ids are never reused.
+ */
+public final class Components {
+    private final int _w, _h;
+    private final int _obsColor;
+    private final boolean _cyclic;
+    // _comp[c] is the component id of cell c, -1 for an obstacle
+    private final int[] _comp;
+    private int[] _size;
+    private int _ids;
+
+    // scratch for the split searches: up to 4 queues, the owning search of a cell (stamped) and a tiny union find
+    private int[][] _queues;
+    private int[] _owner;
+    private int[] _ownerStamp;
+    private int _epoch;
+    private final int[] _head = new int[4], _tail = new int[4], _group = new int[4];
+    private final int[] _next = new int[4];
+
+    /**
+     * Labels the components of a map.
+     *
+     * @param map      The map.
+     * @param obsColor The color which is addressed as an obstacle.
+     * @param cyclic   Whether the cells wrap around the map borders.
+     */
+    public Components(Map map, int obsColor, boolean cyclic) {
+        _w = map.getWidth();
+        _h = map.getHeight();
+        _obsColor = obsColor;
+        _cyclic = cyclic;
+        int n = _w * _h;
+
+        // raster scan: join every walkable cell with the walkable cells before it
+        UnionFind uf = new UnionFind(n);
+        for (int c = 0; c < n; c++) {
+            if (map.getCell(c) == obsColor) continue;
+            int x = c / _h, y = c - x * _h;
+            if (y > 0 && map.getCell(c - 1) != obsColor) uf.union(c, c - 1);
+            if (x > 0 && map.getCell(c - _h) != obsColor) uf.union(c, c - _h);
+            if (cyclic && y == _h - 1 && _h > 1 && map.getCell(c - y) != obsColor) uf.union(c, c - y);
+            if (cyclic && x == _w - 1 && _w > 1 && map.getCell(y) != obsColor) uf.union(c, y);
+        }
+
+        // turn the roots into dense ids (a root is the smallest cell of its set, so it is met first)
+        _comp = new int[n];
+        _size = new int[16];
+        for (int c = 0; c < n; c++) {
+            if (map.getCell(c) == obsColor) {
+                _comp[c] = -1;
+                continue;
+            }
+            int r = uf.find(c);
+            int id = r == c ? newId() : _comp[r];
+            _comp[c] = id;
+            _size[id]++;
+        }
+    }
+
+    /**
+     * @param cell A flat cell index (see {@link Map#index(int, int)}).
+     * @return the component id of the cell, -1 for an obstacle.
+     */
+    public int component(int cell) {
+        return _comp[cell];
+    }
+
+    /**
+     * @param p A pixel.
+     * @return the component id of the pixel, -1 for an obstacle.
+     */
+    public int component(Pixel2D p) {
+        return _comp[p.getX() * _h + p.getY()];
+    }
+
+    /**
+     * @param a A flat cell index.
+     * @param b A flat cell index.
+     * @return true iff both cells are walkable and there is a path between them.
+     */
+    public boolean connected(int a, int b) {
+        int ca = _comp[a];
+        return ca != -1 && ca == _comp[b];
+    }
+
+    /**
+     * @param a A pixel.
+     * @param b A pixel.
+     * @return true iff both pixels are walkable and there is a path between them.
+     */
+    public boolean connected(Pixel2D a, Pixel2D b) {
+        return connected(a.getX() * _h + a.getY(), b.getX() * _h + b.getY());
+    }
+
+    /**
+     * @param id A component id.
+     * @return the number of cells of the component (0 for an id that was split or merged away).
+     */
+    public int size(int id) {
+        return id < 0 || id >= _ids ? 0 : _size[id];
+    }
+
+    /**
+     * @return a new map holding the component id of every cell (-1 for obstacles).
+     */
+    public Map2D toMap() {
+        return new Map(_w, _h, _comp);
+    }
+
+    /**
+     * @return the obstacle color this labelling was built for.
+     */
+    public int getObsColor() {
+        return _obsColor;
+    }
+
+    /**
+     * @return true iff this labelling wraps around the map borders.
+     */
+    public boolean isCyclic() {
+        return _cyclic;
+    }
+
+    /**
+     * Updates the labelling after a cell turned into an obstacle, or stopped being one.
+     *
+     * @param cell     A flat cell index.
+     * @param obstacle true iff the cell is now an obstacle.
+     */
+    public void setObstacle(int cell, boolean obstacle) {
+        if ((_comp[cell] == -1) == obstacle) return;
+        if (obstacle) block(cell);
+        else unblock(cell);
+    }
+
+    /**
+     * @param w        A map width.
+     * @param h        A map height.
+     * @param obsColor An obstacle color.
+     * @param cyclic   A cyclic flag.
+     * @return true iff this labelling was built for a map of that shape with those parameters.
+     */
+    boolean matches(int w, int h, int obsColor, boolean cyclic) {
+        return _w == w && _h == h && _obsColor == obsColor && _cyclic == cyclic;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    private int newId() {
+        if (_ids == _size.length) _size = Arrays.copyOf(_size, _ids * 2);
+        _size[_ids] = 0;
+        return _ids++;
+    }
+
+    /**
+     * Opens a cell: it joins the largest neighbouring component, the other ones are relabeled into it.
+     */
+    private void unblock(int cell) {
+        BfsWorkspace.neighbours(cell, _w, _h, _cyclic, _next);
+        int best = -1;
+        for (int i = 0; i < 4; i++) {
+            int n = _next[i];
+            if (n == BfsWorkspace.NONE || _comp[n] == -1) continue;
+            if (best == -1 || _size[_comp[n]] > _size[best]) best = _comp[n];
+        }
+        if (best == -1) best = newId();
+        _comp[cell] = best;
+        _size[best]++;
+
+        // relabel the smaller components (relabel() overwrites _next, so keep the neighbours)
+        int n0 = _next[0], n1 = _next[1], n2 = _next[2], n3 = _next[3];
+        joinInto(n0, best);
+        joinInto(n1, best);
+        joinInto(n2, best);
+        joinInto(n3, best);
+    }
+
+    /**
+     * Relabels the component of cell n into the component 'to', unless it already is or n is not walkable.
+     */
+    private void joinInto(int n, int to) {
+        if (n != BfsWorkspace.NONE && _comp[n] != -1 && _comp[n] != to) relabel(n, _comp[n], to);
+    }
+
+    /**
+     * Moves the component 'from' (reached from the cell start) into the component 'to', by a BFS.
+     */
+    private void relabel(int start, int from, int to) {
+        int[] queue = queue(0);
+        int head = 0, tail = 0;
+        _comp[start] = to;
+        queue[tail++] = start;
+        while (head < tail) {
+            int u = queue[head++];
+            BfsWorkspace.neighbours(u, _w, _h, _cyclic, _next);
+            for (int i = 0; i < 4; i++) {
+                int v = _next[i];
+                if (v != BfsWorkspace.NONE && _comp[v] == from) {
+                    _comp[v] = to;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        _size[to] += _size[from];
+        _size[from] = 0;
+    }
+
+    /**
+     * Walls off a cell, splitting its component if it was a cut cell.
+     */
+    private void block(int cell) {
+        int old = _comp[cell];
+        _comp[cell] = -1;
+        _size[old]--;
+
+        // the distinct walkable neighbours start one search each
+        queue(0);
+        BfsWorkspace.neighbours(cell, _w, _h, _cyclic, _next);
+        if (++_epoch == Integer.MAX_VALUE) {
+            Arrays.fill(_ownerStamp, 0);
+            _epoch = 1;
+        }
+        int searches = 0;
+        for (int i = 0; i < 4; i++) {
+            int n = _next[i];
+            if (n == BfsWorkspace.NONE || _comp[n] != old || owner(n) != -1) continue;
+            int[] q = queue(searches);
+            q[0] = n;
+            setOwner(n, searches);
+            _head[searches] = 0;
+            _tail[searches] = 1;
+            _group[searches] = searches;
+            searches++;
+        }
+        if (searches <= 1) return;
+
+        // advance the searches one cell at a time, until a single unfinished group is left
+        int groups = searches;
+        while (groups > 1) {
+            for (int s = 0; s < searches; s++) {
+                if (_head[s] == _tail[s]) continue;
+                int[] q = _queues[s];
+                int u = q[_head[s]++];
+                BfsWorkspace.neighbours(u, _w, _h, _cyclic, _next);
+                for (int i = 0; i < 4; i++) {
+                    int v = _next[i];
+                    if (v == BfsWorkspace.NONE || _comp[v] != old) continue;
+                    int o = owner(v);
+                    if (o == -1) {
+                        setOwner(v, s);
+                        q[_tail[s]++] = v;
+                    } else if (group(o) != group(s)) {
+                        // two searches met, they are in the same piece
+                        _group[group(o)] = group(s);
+                        groups--;
+                    }
+                }
+            }
+            if (groups <= 1) break;
+
+            // a group whose searches are all exhausted is a whole piece of its own
+            for (int s = 0; s < searches && groups > 1; s++) {
+                int g = group(s);
+                if (g != s || !exhausted(g, searches)) continue;
+                int id = newId();
+                for (int t = 0; t < searches; t++) {
+                    if (group(t) != g) continue;
+                    int[] q = _queues[t];
+                    for (int k = 0; k < _tail[t]; k++) {
+                        _comp[q[k]] = id;
+                    }
+                    _size[id] += _tail[t];
+                    _tail[t] = _head[t] = 0;
+                }
+                _size[old] -= _size[id];
+                _group[g] = -1;
+                groups--;
+            }
+        }
+    }
+
+    /**
+     * @return true iff every search of the group has an empty queue.
+     */
+    private boolean exhausted(int g, int searches) {
+        for (int t = 0; t < searches; t++) {
+            if (group(t) == g && _head[t] != _tail[t]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the group of a search (-1 once the group was given its own id).
+     */
+    private int group(int s) {
+        while (_group[s] != s) {
+            if (_group[s] == -1) return -1;
+            s = _group[s];
+        }
+        return s;
+    }
+
+    private int owner(int cell) {
+        return _ownerStamp[cell] == _epoch ? _owner[cell] : -1;
+    }
+
+    private void setOwner(int cell, int s) {
+        _owner[cell] = s;
+        _ownerStamp[cell] = _epoch;
+    }
+
+    private int[] queue(int s) {
+        if (_queues == null) {
+            int n = _w * _h;
+            _queues = new int[4][];
+            _owner = new int[n];
+            _ownerStamp = new int[n];
+        }
+        if (_queues[s] == null) _queues[s] = new int[_w * _h];
+        return _queues[s];
+    }
+}
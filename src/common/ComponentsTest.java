@@ -0,0 +1,80 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComponentsTest {
+
+    /**
+     * checks the labels on a map with two separate rooms
+     */
+    @Test
+    void testLabels() {
+        Map map = new Map(5, 3, 0);
+        for (int y = 0; y < 3; y++) {
+            map.setPixel(2, y, -1);
+        }
+        Components comps = new Components(map, -1, false);
+        assertTrue(comps.connected(new Index2D(0, 0), new Index2D(1, 2)));
+        assertFalse(comps.connected(new Index2D(0, 0), new Index2D(4, 0)));
+        assertFalse(comps.connected(new Index2D(2, 0), new Index2D(2, 0)));
+        assertEquals(6, comps.size(comps.component(new Index2D(3, 1))));
+        assertEquals(-1, comps.toMap().getPixel(2, 1));
+
+        // with cyclic borders the rooms meet around the x border
+        assertTrue(new Components(map, -1, true).connected(new Index2D(0, 0), new Index2D(4, 0)));
+    }
+
+    /**
+     * checks the incremental updates of the cached labels against a BFS after every wall toggle
+     */
+    @Test
+    void testIncremental() {
+        Random rnd = new Random(7);
+        for (boolean cyclic : new boolean[] {false, true}) {
+            Map map = TestMaps.randomMap(rnd, 10, 8, 0.3);
+            Components comps = map.components(-1, cyclic);
+            for (int step = 0; step < 300; step++) {
+                int c = rnd.nextInt(map.size());
+                map.setCell(c, map.getCell(c) == -1 ? 0 : -1);
+                assertSame(comps, map.components(-1, cyclic));
+
+                // every pair of cells is connected iff a BFS says so, and the sizes add up
+                Pixel2D a = map.pixel(rnd.nextInt(map.size()));
+                Map2D dist = map.allDistance(a, -1, cyclic);
+                int reached = 0;
+                for (int b = 0; b < map.size(); b++) {
+                    boolean reachable = dist.getPixel(map.pixel(b)) != -1;
+                    assertEquals(reachable, comps.connected(map.index(a.getX(), a.getY()), b), "step " + step);
+                    if (reachable) reached++;
+                }
+                if (reached > 0) assertEquals(reached, comps.size(comps.component(a)));
+            }
+        }
+    }
+
+    /**
+     * checks that the searches return at once for targets in another component
+     */
+    @Test
+    void testSearchEarlyOut() {
+        Map map = new Map(5, 3, 0);
+        for (int y = 0; y < 3; y++) {
+            map.setPixel(2, y, -1);
+        }
+        map.components(-1, false);
+        Pixel2D a = new Index2D(0, 0), b = new Index2D(4, 2);
+        assertNull(map.shortestPath(a, b, -1, false));
+        for (SearchMode mode : SearchMode.values()) {
+            assertNull(map.shortestPath(a, b, -1, false, mode));
+        }
+        assertEquals(-1, map.firstStep(a, b, -1, false));
+
+        // opening the wall is picked up by the cached labels
+        map.setPixel(2, 1, 0);
+        assertEquals(7, map.shortestPath(a, b, -1, false).length);
+    }
+}
@@ -0,0 +1,210 @@
+package common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded cache of search results in front of {@link Map}: distance maps, shortest paths and first steps.
+ *
+ * An entry is keyed by the inputs the result depends on: the map size, the {@link Map#obstacleHash(int) obstacle hash},
+ * the obstacle color, the cyclic flag and the end points. The hash is kept up to date by the map's writes, so a
+ * lookup costs no pass over the map, and a result can be found again on any map with the same obstacles
+ * (e.g. the snapshot of the next tick, or the board after Pac-Man moved back). Pac-Man, the dots and the ghosts
+ * are not obstacles, so moving them does not invalidate anything.
+ *
+ * The cache is LRU, bounded by its number of entries and by the number of cells its results hold
+ * (a distance map holds w*h cells, a path its length, a step one). It is not thread safe.
+ */
+public final class DistanceCache {
+    private static final int DISTANCE = 0, PATH = 1, STEP = 2;
+    // the cached result of a search that found no path (the entries cannot hold null)
+    private static final Object NO_PATH = new Object();
+
+    private final int _maxEntries;
+    private final long _maxCells;
+    private final LinkedHashMap<Key, Object> _entries = new LinkedHashMap<Key, Object>(64, 0.75f, true);
+    private long _cells;
+    private long _hits, _misses;
+
+    /**
+     * @param maxEntries The largest number of results kept.
+     * @param maxCells   The largest number of cells the kept results may hold together.
+     */
+    public DistanceCache(int maxEntries, long maxCells) {
+        if (maxEntries < 1 || maxCells < 1)
+            throw new RuntimeException("common.DistanceCache error: bad bounds " + maxEntries + ", " + maxCells);
+        _maxEntries = maxEntries;
+        _maxCells = maxCells;
+    }
+
+    /**
+     * Cached {@link Map#allDistance(Pixel2D, int, boolean)}.
+     *
+     * @param board    The map, a {@link Map} or a read only view of one (nothing is copied).
+     * @param start    The source.
+     * @param obsColor The obstacle color.
+     * @param cyclic   Whether the distances wrap around the map borders.
+     * @return a read only distance map, shared with later hits.
+     */
+    public Map2D allDistance(Map2D board, Pixel2D start, int obsColor, boolean cyclic) {
+        Map map = flat(board, "allDistance");
+        Key key = key(map, DISTANCE, start, start, obsColor, cyclic);
+        Object hit = lookup(key);
+        if (hit != null) return (ReadOnlyMap) hit;
+        ReadOnlyMap ans = ((Map) map.allDistance(start, obsColor, cyclic)).readOnly();
+        store(key, ans, map.size());
+        return ans;
+    }
+
+    /**
+     * Cached {@link Map#shortestPath(Pixel2D, Pixel2D, int, boolean)}.
+     *
+     * @param board    The map, a {@link Map} or a read only view of one (nothing is copied).
+     * @param p1       The source.
+     * @param p2       The destination.
+     * @param obsColor The obstacle color.
+     * @param cyclic   Whether the path may wrap around the map borders.
+     * @return a new array holding the path, or null if there is none.
+     */
+    public Pixel2D[] shortestPath(Map2D board, Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        Map map = flat(board, "shortestPath");
+        Key key = key(map, PATH, p1, p2, obsColor, cyclic);
+        Object hit = lookup(key);
+        if (hit != null) return hit == NO_PATH ? null : ((Pixel2D[]) hit).clone();
+        Pixel2D[] ans = map.shortestPath(p1, p2, obsColor, cyclic);
+        store(key, ans == null ? NO_PATH : ans.clone(), ans == null ? 1 : ans.length);
+        return ans;
+    }
+
+    /**
+     * Cached {@link Map#firstStep(Pixel2D, Pixel2D, int, boolean)}.
+     *
+     * @param board    The map, a {@link Map} or a read only view of one (nothing is copied).
+     * @param p1       The source.
+     * @param p2       The destination.
+     * @param obsColor The obstacle color.
+     * @param cyclic   Whether the path may wrap around the map borders.
+     * @return the flat index of the first step, -1 if there is none.
+     */
+    public int firstStep(Map2D board, Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        Map map = flat(board, "firstStep");
+        Key key = key(map, STEP, p1, p2, obsColor, cyclic);
+        Object hit = lookup(key);
+        if (hit != null) return (Integer) hit;
+        int ans = map.firstStep(p1, p2, obsColor, cyclic);
+        store(key, ans, 1);
+        return ans;
+    }
+
+    /**
+     * @return the number of queries answered from the cache.
+     */
+    public long hits() {
+        return _hits;
+    }
+
+    /**
+     * @return the number of queries that ran a search.
+     */
+    public long misses() {
+        return _misses;
+    }
+
+    /**
+     * @return the number of results kept.
+     */
+    public int size() {
+        return _entries.size();
+    }
+
+    /**
+     * @return the number of cells the kept results hold.
+     */
+    public long cells() {
+        return _cells;
+    }
+
+    /**
+     * Drops every result, the counters are kept.
+     */
+    public void clear() {
+        _entries.clear();
+        _cells = 0;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * The map behind a Map or a read only view of one.
+     */
+    private static Map flat(Map2D board, String method) {
+        if (board instanceof Map) return (Map) board;
+        if (board instanceof ReadOnlyMap) return ((ReadOnlyMap) board).map();
+        throw new RuntimeException("common.DistanceCache " + method + " error: "
+                + (board == null ? "null map" : board.getClass().getSimpleName() + " is not a Map or a view of one"));
+    }
+
+    private static Key key(Map map, int kind, Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        return new Key(map.obstacleHash(obsColor), map.getWidth(), map.getHeight(), kind, obsColor, cyclic,
+                map.index(p1.getX(), p1.getY()), map.index(p2.getX(), p2.getY()));
+    }
+
+    private Object lookup(Key key) {
+        Object hit = _entries.get(key);
+        if (hit != null) _hits++;
+        else _misses++;
+        return hit;
+    }
+
+    /**
+     * Adds a result and evicts the least recently used ones until both bounds hold (the new one is always kept).
+     */
+    private void store(Key key, Object value, long cells) {
+        key.cells = cells;
+        _entries.put(key, value);
+        _cells += cells;
+        Iterator<Key> it = _entries.keySet().iterator();
+        while ((_entries.size() > _maxEntries || _cells > _maxCells) && _entries.size() > 1) {
+            Key eldest = it.next();
+            _cells -= eldest.cells;
+            it.remove();
+        }
+    }
+
+    /**
+     * The inputs of a search.
+     */
+    private static final class Key {
+        private final long _hash;
+        private final int _w, _h, _kind, _obsColor, _src, _dst;
+        private final boolean _cyclic;
+        // the size of the result, for the eviction (not part of the key)
+        long cells;
+
+        Key(long hash, int w, int h, int kind, int obsColor, boolean cyclic, int src, int dst) {
+            _hash = hash;
+            _w = w;
+            _h = h;
+            _kind = kind;
+            _obsColor = obsColor;
+            _cyclic = cyclic;
+            _src = src;
+            _dst = dst;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return _hash == k._hash && _w == k._w && _h == k._h && _kind == k._kind && _obsColor == k._obsColor
+                    && _cyclic == k._cyclic && _src == k._src && _dst == k._dst;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = _hash ^ ((long) _src * 31 + _dst) * 0x9E3779B97F4A7C15L;
+            h ^= _kind * 7L + _obsColor * 131L + (_cyclic ? 1 : 0) + (long) _w * 524287L + _h;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistanceCacheTest {
+
+    /**
+     * checks the cached results equal the searches, repeated queries are hits, and new walls are misses
+     */
+    @Test
+    void testHitsAndMisses() {
+        Random rnd = new Random(21);
+        Map map = TestMaps.randomMap(rnd, 20, 15, 0.25);
+        DistanceCache cache = new DistanceCache(100, 1 << 16);
+        for (int i = 0; i < 50; i++) {
+            Pixel2D a = new Index2D(rnd.nextInt(20), rnd.nextInt(15));
+            Pixel2D b = new Index2D(rnd.nextInt(20), rnd.nextInt(15));
+            if (map.getPixel(a) == -1) continue;
+            for (int k = 0; k < 2; k++) {
+                assertArrayEquals(map.allDistance(a, -1, true).getMap(), cache.allDistance(map, a, -1, true).getMap());
+                assertEquals(map.firstStep(a, b, -1, false), cache.firstStep(map, a, b, -1, false));
+                assertArrayEquals(map.shortestPath(a, b, -1, true), cache.shortestPath(map, a, b, -1, true));
+            }
+        }
+        // every second query is a hit, and a few first ones too (repeated random pairs)
+        assertTrue(cache.misses() > 0 && cache.hits() >= cache.misses());
+
+        // a pink dot eaten is not an obstacle change, a new wall is
+        Pixel2D src = new Index2D(0, 0);
+        map.setPixel(src, 0);
+        cache.allDistance(map, src, -1, true);
+        long misses = cache.misses();
+        map.setPixel(5, 5, map.getPixel(5, 5) == -1 ? -1 : 3);
+        cache.allDistance(map, src, -1, true);
+        assertEquals(misses, cache.misses());
+        map.setPixel(6, 6, map.getPixel(6, 6) == -1 ? 0 : -1);
+        Map2D dist = cache.allDistance(map, src, -1, true);
+        assertEquals(misses + 1, cache.misses());
+        assertArrayEquals(map.allDistance(src, -1, true).getMap(), dist.getMap());
+        assertThrows(RuntimeException.class, () -> dist.setPixel(0, 0, 5));
+
+        // the same walls on another map are a hit
+        Map copy = new Map(20, 15, map.toArray());
+        cache.allDistance(copy, src, -1, true);
+        assertEquals(misses + 1, cache.misses());
+    }
+
+    /**
+     * checks the entry and cell bounds evict the least recently used results
+     */
+    @Test
+    void testEviction() {
+        Map map = new Map(10, 10, 0);
+        DistanceCache cache = new DistanceCache(3, 250);
+        for (int i = 0; i < 4; i++) {
+            cache.allDistance(map, new Index2D(i, 0), -1, true);
+            assertTrue(cache.cells() <= 250);
+        }
+        assertEquals(2, cache.size());
+        cache.allDistance(map, new Index2D(3, 0), -1, true);
+        long hits = cache.hits();
+        cache.allDistance(map, new Index2D(0, 0), -1, true);
+        assertEquals(hits, cache.hits());
+
+        for (int i = 0; i < 10; i++) {
+            cache.firstStep(map, new Index2D(i, 0), new Index2D(9, 9), -1, true);
+        }
+        assertEquals(3, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.cells());
+    }
+
+    /**
+     * checks a read only view is searched in place: same results and entries as its map, and the map is not copied
+     */
+    @Test
+    void testReadOnlyView() {
+        Random rnd = new Random(16);
+        Map map = TestMaps.randomMap(rnd, 20, 15, 0.25);
+        ReadOnlyMap view = map.readOnly();
+        int[] cells = map.cells();
+        DistanceCache cache = new DistanceCache(100, 1 << 16);
+        Pixel2D a = new Index2D(0, 0), b = new Index2D(19, 14);
+        map.setPixel(a, 0);
+        map.setPixel(b, 0);
+        assertArrayEquals(map.allDistance(a, -1, true).getMap(), cache.allDistance(view, a, -1, true).getMap());
+        assertArrayEquals(map.shortestPath(a, b, -1, false), cache.shortestPath(view, a, b, -1, false));
+        assertEquals(map.firstStep(a, b, -1, true), cache.firstStep(view, a, b, -1, true));
+        long misses = cache.misses();
+        cache.allDistance(map, a, -1, true);
+        assertEquals(misses, cache.misses());
+
+        // the board's next write stays in place
+        map.setPixel(5, 5, 3);
+        assertSame(cells, map.cells());
+        assertThrows(RuntimeException.class, () -> cache.allDistance(new MapOverlay(map), a, -1, true));
+    }
+}
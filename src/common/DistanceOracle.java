@@ -0,0 +1,254 @@
+package common;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A precomputed all pairs shortest distance table over the walkable cells of a {@link Map}
+ * (for one obstacle color and cyclic flag), answering distance and first step queries in O(1).
+ *
+ * Only walkable cells get a row and a column, so the table has m*m entries for m walkable cells.
+ * Distances are stored in one byte per pair when every distance fits (m <= 255), otherwise in a short.
+ * The next hop of every pair is stored as the direction (right, left, down, up) of the first step,
+ * which is the same step as {@link Map#firstStep(Pixel2D, Pixel2D, int, boolean)} returns.
+ *
+ * The rows are independent BFS trees, so they are built in parallel (one BFS per source cell).
+ * The table is a snapshot of the walls, use {@link #matches(Map)} (cell by cell) or {@link #fits(Map)}
+ * (by obstacle hash) to check it still fits a board.
+ */
+public final class DistanceOracle {
+    /** Maps with more walkable cells than this are rejected (m*m must fit in an array). */
+    public static final int MAX_CELLS = 46340;
+    private static final int NO_HOP = 0xFF;
+
+    private final int _w, _h;
+    private final int _obsColor;
+    private final boolean _cyclic;
+    private final int _cells;
+    // the obstacle hash of the walls the table was built from (see Map#obstacleHash)
+    private final long _walls;
+    // _rank[c] is the row / column of cell c, -1 for an obstacle; _cell is the inverse
+    private final int[] _rank;
+    private final int[] _cell;
+    // exactly one of the distance tables is used, unreachable pairs hold the all ones value
+    private final byte[] _dist8;
+    private final short[] _dist16;
+    private final byte[] _hop;
+
+    /**
+     * Builds the table of a map.
+     *
+     * @param map      The map to build from.
+     * @param obsColor The color which is addressed as an obstacle.
+     * @param cyclic   Whether the paths may wrap around the map borders.
+     */
+    public DistanceOracle(Map map, int obsColor, boolean cyclic) {
+        _w = map.getWidth();
+        _h = map.getHeight();
+        _obsColor = obsColor;
+        _cyclic = cyclic;
+        _walls = map.obstacleHash(obsColor);
+
+        int n = map.size();
+        _rank = new int[n];
+        int m = 0;
+        for (int c = 0; c < n; c++) {
+            _rank[c] = map.getCell(c) == obsColor ? -1 : m++;
+        }
+        if (m > MAX_CELLS)
+            throw new RuntimeException("common.DistanceOracle error: " + m + " walkable cells, the limit is " + MAX_CELLS);
+        _cells = m;
+        _cell = new int[m];
+        for (int c = 0; c < n; c++) {
+            if (_rank[c] >= 0) _cell[_rank[c]] = c;
+        }
+
+        // a distance is at most m-1, so below 255 cells a byte holds it (0xFF is kept for unreachable)
+        int entries = m * m;
+        boolean narrow = m <= 255;
+        _dist8 = narrow ? new byte[entries] : null;
+        _dist16 = narrow ? null : new short[entries];
+        _hop = new byte[entries];
+
+        GridGraph graph = map.graph(obsColor, cyclic);
+        IntStream.range(0, m).parallel().forEach(row -> fillRow(graph, row));
+    }
+
+    /**
+     * Estimates the memory of the table of a map before building it: m*m distances and m*m next hops for m walkable
+     * cells, so a caller can fall back to per query searches when that is over its budget.
+     *
+     * @param map      A map.
+     * @param obsColor The color which is addressed as an obstacle.
+     * @return the bytes of the table, Long.MAX_VALUE if the map has more than {@link #MAX_CELLS} walkable cells.
+     */
+    public static long tableBytes(Map map, int obsColor) {
+        long m = 0;
+        for (int c = 0, n = map.size(); c < n; c++) {
+            if (map.getCell(c) != obsColor) m++;
+        }
+        if (m > MAX_CELLS) return Long.MAX_VALUE;
+        return m * m * (m <= 255 ? 2 : 3);
+    }
+
+    /**
+     * @param a A pixel.
+     * @param b A pixel.
+     * @return the length of the shortest path between a and b, -1 if there is none (or one is an obstacle).
+     */
+    public int distance(Pixel2D a, Pixel2D b) {
+        return distance(a.getX() * _h + a.getY(), b.getX() * _h + b.getY());
+    }
+
+    /**
+     * @param from A flat cell index (see {@link Map#index(int, int)}).
+     * @param to   A flat cell index.
+     * @return the length of the shortest path between the cells, -1 if there is none (or one is an obstacle).
+     */
+    public int distance(int from, int to) {
+        int ra = _rank[from], rb = _rank[to];
+        if (ra < 0 || rb < 0) return -1;
+        int k = ra * _cells + rb;
+        if (_dist8 != null) {
+            int d = _dist8[k] & 0xFF;
+            return d == 0xFF ? -1 : d;
+        }
+        int d = _dist16[k] & 0xFFFF;
+        return d == 0xFFFF ? -1 : d;
+    }
+
+    /**
+     * @param from A flat cell index.
+     * @param to   A flat cell index.
+     * @return the flat index of the first step from one cell towards the other,
+     * or -1 if there is no path or from equals to.
+     */
+    public int nextHop(int from, int to) {
+        int ra = _rank[from], rb = _rank[to];
+        if (ra < 0 || rb < 0) return -1;
+        int dir = _hop[ra * _cells + rb] & 0xFF;
+        return dir == NO_HOP ? -1 : step(from, dir);
+    }
+
+    /**
+     * @param from The start pixel.
+     * @param to   The target pixel.
+     * @return the pixel of the first step from one pixel towards the other, or null if there is none.
+     */
+    public Pixel2D nextStep(Pixel2D from, Pixel2D to) {
+        int hop = nextHop(from.getX() * _h + from.getY(), to.getX() * _h + to.getY());
+        return hop == -1 ? null : Index2D.of(hop / _h, hop % _h);
+    }
+
+    /**
+     * @param map A map.
+     * @return true iff the map has the shape and the obstacles this table was built from.
+     */
+    public boolean matches(Map map) {
+        if (map == null || map.getWidth() != _w || map.getHeight() != _h) return false;
+        for (int c = 0, n = _rank.length; c < n; c++) {
+            if ((map.getCell(c) == _obsColor) != (_rank[c] < 0)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Like {@link #matches(Map)} but compares the obstacle hashes instead of the cells, so it is O(1) on a map that
+     * keeps its hash up to date (a hash collision is possible in theory, at 64 bits it is not expected).
+     *
+     * @param map A map.
+     * @return true iff the map has the shape and the obstacle hash this table was built from.
+     */
+    public boolean fits(Map map) {
+        return map != null && map.getWidth() == _w && map.getHeight() == _h && map.obstacleHash(_obsColor) == _walls;
+    }
+
+    /**
+     * @return the number of walkable cells (rows of the table).
+     */
+    public int walkableCells() {
+        return _cells;
+    }
+
+    /**
+     * @return the obstacle color this table was built for.
+     */
+    public int getObsColor() {
+        return _obsColor;
+    }
+
+    /**
+     * @return true iff this table wraps around the map borders.
+     */
+    public boolean isCyclic() {
+        return _cyclic;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * Runs the BFS of one source cell and writes its row. The first step towards every cell
+     * is inherited down the BFS tree, so it is the step shortestPath would take.
+     */
+    private void fillRow(GridGraph graph, int row) {
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, _cyclic);
+        int[] queue = ws.queue, dist = ws.dist;
+        // parent doubles as the first step (a neighbour of the source) of every reached cell
+        int[] first = ws.parent;
+        int[] offsets = graph.offsets(), adj = graph.neighbours();
+        int base = row * _cells;
+        int src = _cell[row];
+
+        if (_dist8 != null) {
+            Arrays.fill(_dist8, base, base + _cells, (byte) 0xFF);
+        } else {
+            Arrays.fill(_dist16, base, base + _cells, (short) 0xFFFF);
+        }
+        Arrays.fill(_hop, base, base + _cells, (byte) NO_HOP);
+
+        int head = 0, tail = 0;
+        ws.visit(src, src);
+        dist[src] = 0;
+        queue[tail++] = src;
+        while (head < tail) {
+            int u = queue[head++];
+            int k = base + _rank[u];
+            if (_dist8 != null) _dist8[k] = (byte) dist[u];
+            else _dist16[k] = (short) dist[u];
+            if (u != src) _hop[k] = (byte) direction(src, first[u]);
+
+            for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                int v = adj[e];
+                if (!ws.isVisited(v)) {
+                    ws.visit(v, u == src ? v : first[u]);
+                    dist[v] = dist[u] + 1;
+                    queue[tail++] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the index (0 right, 1 left, 2 down, 3 up) of the neighbour 'to' of the cell 'from'.
+     */
+    private int direction(int from, int to) {
+        for (int dir = 0; dir < 4; dir++) {
+            if (step(from, dir) == to) return dir;
+        }
+        throw new RuntimeException("common.DistanceOracle error: " + to + " is not a neighbour of " + from);
+    }
+
+    /**
+     * @return the neighbour of a cell in the given direction (0 right, 1 left, 2 down, 3 up), wrapping if cyclic.
+     */
+    private int step(int cell, int dir) {
+        int x = cell / _h, y = cell % _h;
+        switch (dir) {
+            case 0: x = (x + 1) % _w; break;
+            case 1: x = (x - 1 + _w) % _w; break;
+            case 2: y = (y + 1) % _h; break;
+            default: y = (y - 1 + _h) % _h; break;
+        }
+        return x * _h + y;
+    }
+}
@@ -0,0 +1,72 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistanceOracleTest {
+
+    /**
+     * checks every pair against allDistance and firstStep, with and without the cyclic borders
+     */
+    @Test
+    void testAllPairs() {
+        Random rnd = new Random(9);
+        Map map = new Map(9, 7, 0);
+        for (int i = 0; i < 18; i++) {
+            map.setPixel(rnd.nextInt(9), rnd.nextInt(7), -1);
+        }
+
+        for (boolean cyclic : new boolean[] {false, true}) {
+            DistanceOracle oracle = new DistanceOracle(map, -1, cyclic);
+            assertTrue(oracle.matches(map));
+            assertTrue(oracle.fits(map));
+            assertTrue(oracle.fits(new Map(9, 7, map.toArray())));
+            for (int a = 0; a < map.size(); a++) {
+                Pixel2D pa = map.pixel(a);
+                Map2D dist = map.allDistance(pa, -1, cyclic);
+                for (int b = 0; b < map.size(); b++) {
+                    Pixel2D pb = map.pixel(b);
+                    assertEquals(dist.getPixel(pb), oracle.distance(a, b), pa + " -> " + pb);
+                    assertEquals(map.firstStep(pa, pb, -1, cyclic), oracle.nextHop(a, b), pa + " -> " + pb);
+                }
+            }
+        }
+    }
+
+    /**
+     * checks the short storage of a long corridor and that a wall change is detected
+     */
+    @Test
+    void testWideDistances() {
+        Map map = new Map(300, 1, 0);
+        DistanceOracle oracle = new DistanceOracle(map, -1, false);
+        assertEquals(300, oracle.walkableCells());
+        assertEquals(299, oracle.distance(new Index2D(0, 0), new Index2D(299, 0)));
+        assertEquals(new Index2D(1, 0), oracle.nextStep(new Index2D(0, 0), new Index2D(299, 0)));
+        assertNull(oracle.nextStep(new Index2D(5, 0), new Index2D(5, 0)));
+
+        map.setPixel(150, 0, -1);
+        assertFalse(oracle.matches(map));
+        assertFalse(oracle.fits(map));
+        assertFalse(oracle.fits(new Map(299, 1, 0)));
+        DistanceOracle walled = new DistanceOracle(map, -1, false);
+        assertEquals(-1, walled.distance(new Index2D(0, 0), new Index2D(299, 0)));
+        assertEquals(-1, walled.distance(new Index2D(0, 0), new Index2D(150, 0)));
+        assertEquals(-1, walled.nextHop(0, 299));
+    }
+
+    /**
+     * checks the size estimate of a table, and that it refuses a board past the cell limit
+     */
+    @Test
+    void testTableBytes() {
+        Map map = new Map(10, 10, 0);
+        map.setPixel(3, 3, -1);
+        assertEquals(2L * 99 * 99, DistanceOracle.tableBytes(map, -1));
+        assertEquals(3L * 300 * 300, DistanceOracle.tableBytes(new Map(300, 1, 0), -1));
+        assertEquals(Long.MAX_VALUE, DistanceOracle.tableBytes(new Map(512, 512, 0), -1));
+    }
+}
@@ -22,6 +22,7 @@ public class GameInfo {
     public static final int HUNT_RANGE = 2;
     public static final double MIN_TIME_EATABLE = 1.5;
     public static final int MAX_GREEN_DISTANCE = 7;
+    public static final int DANGER_PENALTY = 4; // extra step cost per cell closer than SAFETY_RANGE to a ghost
     public static final int MAP_SIZE = 15;
     public static final int MAP_SIZE_PX = 800;
     public static final int WALL = -1;
@@ -0,0 +1,109 @@
+package common;
+
+/**
+ * A compact adjacency table (CSR layout) of the walkable cells of a {@link Map},
+ * for a given obstacle color and cyclic flag.
+ * The walkable neighbours of cell c are neighbours()[offsets()[c] .. offsets()[c+1]-1],
+ * in the order right, left, down, up. Obstacle cells have no neighbours and are never listed as one.
+ *
+ * A graph is a snapshot of the walls at build time, use {@link Map#graph(int, boolean)} to get one
+ * that is kept in sync with the map.
+ */
+public final class GridGraph {
+    private final int _w, _h;
+    private final int _obsColor;
+    private final boolean _cyclic;
+    private final int[] _offsets;
+    private final int[] _neighbours;
+
+    /**
+     * Builds the adjacency table of a map.
+     *
+     * @param map      The map to build from.
+     * @param obsColor The color which is addressed as an obstacle.
+     * @param cyclic   Whether the neighbours wrap around the map borders.
+     */
+    GridGraph(Map map, int obsColor, boolean cyclic) {
+        _w = map.getWidth();
+        _h = map.getHeight();
+        _obsColor = obsColor;
+        _cyclic = cyclic;
+
+        int n = map.size();
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        int[] next = ws.next;
+
+        // first pass: count the walkable neighbours of every walkable cell
+        int[] offsets = new int[n + 1];
+        int edges = 0;
+        for (int c = 0; c < n; c++) {
+            offsets[c] = edges;
+            if (map.getCell(c) == obsColor) continue;
+            ws.neighbours(c, next);
+            for (int i = 0; i < 4; i++) {
+                if (next[i] != BfsWorkspace.NONE && map.getCell(next[i]) != obsColor) edges++;
+            }
+        }
+        offsets[n] = edges;
+
+        // second pass: fill the neighbour lists
+        int[] neighbours = new int[edges];
+        int k = 0;
+        for (int c = 0; c < n; c++) {
+            if (map.getCell(c) == obsColor) continue;
+            ws.neighbours(c, next);
+            for (int i = 0; i < 4; i++) {
+                if (next[i] != BfsWorkspace.NONE && map.getCell(next[i]) != obsColor) neighbours[k++] = next[i];
+            }
+        }
+        _offsets = offsets;
+        _neighbours = neighbours;
+    }
+
+    /**
+     * @return the CSR row offsets (length = number of cells + 1), do not modify.
+     */
+    public int[] offsets() {
+        return _offsets;
+    }
+
+    /**
+     * @return the concatenated neighbour lists, do not modify.
+     */
+    public int[] neighbours() {
+        return _neighbours;
+    }
+
+    /**
+     * @param cell A flat cell index.
+     * @return the number of walkable neighbours of the cell (0 for an obstacle).
+     */
+    public int degree(int cell) {
+        return _offsets[cell + 1] - _offsets[cell];
+    }
+
+    /**
+     * @return the obstacle color this graph was built for.
+     */
+    public int getObsColor() {
+        return _obsColor;
+    }
+
+    /**
+     * @return true iff this graph wraps around the map borders.
+     */
+    public boolean isCyclic() {
+        return _cyclic;
+    }
+
+    /**
+     * @param w      A map width.
+     * @param h      A map height.
+     * @param obsColor An obstacle color.
+     * @param cyclic A cyclic flag.
+     * @return true iff this graph was built for a map of that shape with those search parameters.
+     */
+    boolean matches(int w, int h, int obsColor, boolean cyclic) {
+        return _w == w && _h == h && _obsColor == obsColor && _cyclic == cyclic;
+    }
+}
@@ -0,0 +1,361 @@
+package common;
+
+/**
+ * The unweighted search kernels shared by the flat maps of this package ({@link Map}, {@link MapOverlay},
+ * {@link CompactMap}): BFS (to a cell or to the nearest cell of a color), A*, bidirectional BFS, all distances,
+ * and the paths built from the parents they leave in a {@link BfsWorkspace}.
+ *
+ * The cells are read either from a flat int array (a {@link Map}'s own cells, a plain array read) or,
+ * when that is null, through a {@link Cells} view (an overlay, a packed map). Keeping one copy of every kernel
+ * keeps the neighbour order (see {@link BfsWorkspace#neighbours(int, int, int, boolean, int[])}) and so the
+ * tie breaking between equal paths the same for every map.
+ */
+final class GridSearch {
+
+    /**
+     * Read access to the cells of a map by flat index (x*h+y).
+     */
+    interface Cells {
+        /**
+         * @param index A flat cell index.
+         * @return the value of the cell.
+         */
+        int get(int index);
+    }
+
+    private GridSearch() {
+    }
+
+    /**
+     * BFS from src to dst, or to the nearest cell of a color if byColor, recording parents in the workspace.
+     *
+     * @param ws       A workspace acquired for the map's shape.
+     * @param data     The cells of the map, or null to read them through cells.
+     * @param cells    The cells of the map when data is null.
+     * @param graph    The adjacency table of the walkable cells, or null.
+     * @param src      The flat index of the start cell (assumed not an obstacle).
+     * @param dst      The flat index of the target cell (ignored when byColor is set).
+     * @param byColor  Whether to stop at the first cell of the given color instead of dst.
+     * @param color    The target color (used only when byColor is set).
+     * @param obsColor The obstacle color.
+     * @return the reached target cell, or {@link BfsWorkspace#NONE} if there is none.
+     */
+    static int bfs(BfsWorkspace ws, int[] data, Cells cells, GridGraph graph, int src, int dst, boolean byColor,
+                   int color, int obsColor) {
+        int[] queue = ws.queue;
+        int[] next = ws.next;
+        int head = 0, tail = 0;
+
+        // mark start as visited
+        ws.visit(src, src);
+        queue[tail++] = src;
+
+        while (head < tail) {
+            int curr = queue[head++];
+
+            // if we reached the target, stop
+            if (byColor ? (curr != src && cell(data, cells, curr) == color) : curr == dst) {
+                return curr;
+            }
+
+            if (graph != null) {
+                // walk the cached adjacency list, it holds walkable neighbors only
+                int[] adj = graph.neighbours();
+                for (int k = graph.offsets()[curr], end = graph.offsets()[curr + 1]; k < end; k++) {
+                    int n = adj[k];
+                    if (!ws.isVisited(n)) {
+                        ws.visit(n, curr);
+                        queue[tail++] = n;
+                    }
+                }
+                continue;
+            }
+
+            ws.neighbours(curr, next);
+            for (int i = 0; i < 4; i++) {
+                int n = next[i];
+
+                // check if the neighbor is not an obstacle and hasn't been visited
+                if (n != BfsWorkspace.NONE && !ws.isVisited(n) && cell(data, cells, n) != obsColor) {
+                    ws.visit(n, curr);
+                    queue[tail++] = n;
+                }
+            }
+        }
+        return BfsWorkspace.NONE;
+    }
+
+    /**
+     * A* from src to dst with the (cyclic aware) Manhattan distance as heuristic, recording parents in the workspace.
+     * The heuristic is consistent on a 4-connected grid, so the first time dst is dequeued its path is a shortest one.
+     *
+     * @param ws       A workspace acquired for the map's shape.
+     * @param data     The cells of the map, or null to read them through cells.
+     * @param cells    The cells of the map when data is null.
+     * @param graph    The adjacency table of the walkable cells, or null.
+     * @param w        The map width.
+     * @param h        The map height.
+     * @param src      The flat index of the start cell (assumed not an obstacle).
+     * @param dst      The flat index of the target cell.
+     * @param obsColor The obstacle color.
+     * @param cyclic   Whether the neighbours wrap around the map borders.
+     * @return true iff dst was reached.
+     */
+    static boolean aStar(BfsWorkspace ws, int[] data, Cells cells, GridGraph graph, int w, int h, int src, int dst,
+                         int obsColor, boolean cyclic) {
+        IntMinHeap open = ws.heap();
+        int[] g = ws.dist;
+        int[] next = ws.next;
+        int tx = dst / h, ty = dst % h;
+
+        ws.visit(src, src);
+        g[src] = 0;
+        open.push(manhattan(src, w, h, tx, ty, cyclic), src);
+
+        while (!open.isEmpty()) {
+            int curr = open.pop();
+
+            // skip stale queue entries of cells which were already expanded
+            if (ws.isClosed(curr)) continue;
+            if (curr == dst) return true;
+            ws.close(curr);
+
+            int ng = g[curr] + 1;
+            int count = walkableNeighbours(ws, data, cells, graph, curr, obsColor, next);
+            for (int i = 0; i < count; i++) {
+                int n = next[i];
+                if (ws.isClosed(n)) continue;
+                if (!ws.isVisited(n) || ng < g[n]) {
+                    ws.visit(n, curr);
+                    g[n] = ng;
+                    open.push(ng + manhattan(n, w, h, tx, ty, cyclic), n);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bidirectional BFS between src and dst: each round expands one full level of the smaller frontier,
+     * and the search stops at the end of the first level in which the two trees touch
+     * (the best meeting edge of that level is a shortest path).
+     *
+     * @param fw       A workspace acquired for the map's shape (the forward tree).
+     * @param data     The cells of the map, or null to read them through cells.
+     * @param cells    The cells of the map when data is null.
+     * @param graph    The adjacency table of the walkable cells, or null.
+     * @param h        The map height.
+     * @param start    The starting pixel (used as the first element of the path).
+     * @param src      The flat index of the start cell (assumed not an obstacle).
+     * @param dst      The flat index of the target cell (assumed not an obstacle, not src).
+     * @param obsColor The obstacle color.
+     * @return the path from start to dst, or null if there is none.
+     */
+    static Pixel2D[] bidirectional(BfsWorkspace fw, int[] data, Cells cells, GridGraph graph, int h, Pixel2D start,
+                                   int src, int dst, int obsColor) {
+        BfsWorkspace bw = fw.reverse();
+        int[] next = fw.next;
+
+        fw.visit(src, src);
+        fw.dist[src] = 0;
+        fw.queue[0] = src;
+        bw.visit(dst, dst);
+        bw.dist[dst] = 0;
+        bw.queue[0] = dst;
+        int fHead = 0, fTail = 1, bHead = 0, bTail = 1;
+
+        int best = Integer.MAX_VALUE, meetF = BfsWorkspace.NONE, meetB = BfsWorkspace.NONE;
+        while (fHead < fTail && bHead < bTail) {
+            boolean forward = (fTail - fHead) <= (bTail - bHead);
+            BfsWorkspace a = forward ? fw : bw;
+            BfsWorkspace b = forward ? bw : fw;
+            int head = forward ? fHead : bHead;
+            int tail = forward ? fTail : bTail;
+
+            // expand exactly one level of the chosen side
+            int levelEnd = tail;
+            while (head < levelEnd) {
+                int u = a.queue[head++];
+                int count = walkableNeighbours(fw, data, cells, graph, u, obsColor, next);
+                for (int i = 0; i < count; i++) {
+                    int n = next[i];
+                    if (b.isVisited(n)) {
+                        int len = a.dist[u] + 1 + b.dist[n];
+                        if (len < best) {
+                            best = len;
+                            meetF = forward ? u : n;
+                            meetB = forward ? n : u;
+                        }
+                    }
+                    if (!a.isVisited(n)) {
+                        a.visit(n, u);
+                        a.dist[n] = a.dist[u] + 1;
+                        a.queue[tail++] = n;
+                    }
+                }
+            }
+            if (forward) {
+                fHead = head;
+                fTail = tail;
+            } else {
+                bHead = head;
+                bTail = tail;
+            }
+
+            if (best != Integer.MAX_VALUE) {
+                return joinPath(fw, bw, h, start, meetF, meetB, best + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * BFS from src over the whole map, writing the distance of every reached cell into dist.
+     *
+     * @param ws       A workspace acquired for the map's shape.
+     * @param data     The cells of the map, or null to read them through cells.
+     * @param cells    The cells of the map when data is null.
+     * @param src      The flat index of the start cell (assumed not an obstacle).
+     * @param obsColor The obstacle color.
+     * @param dist     The distances, all -1 on entry (it doubles as the visited set).
+     */
+    static void distances(BfsWorkspace ws, int[] data, Cells cells, int src, int obsColor, int[] dist) {
+        int[] queue = ws.queue, next = ws.next;
+        int head = 0, tail = 0;
+        dist[src] = 0;
+        queue[tail++] = src;
+        while (head < tail) {
+            int u = queue[head++];
+            ws.neighbours(u, next);
+            for (int i = 0; i < 4; i++) {
+                int v = next[i];
+                if (v != BfsWorkspace.NONE && dist[v] == -1 && cell(data, cells, v) != obsColor) {
+                    dist[v] = dist[u] + 1;
+                    queue[tail++] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reconstructs the path from dst back to src using the parents recorded by the last search,
+     * from the shared instances of {@link Index2D#of(int, int)} (the caller interns the shape).
+     *
+     * @param ws    The workspace of the search.
+     * @param h     The map height.
+     * @param start The starting pixel (used as the first element of the path).
+     * @param src   The flat index of the start cell.
+     * @param dst   The flat index of the end cell.
+     * @return the path from start to end.
+     */
+    static Pixel2D[] path(BfsWorkspace ws, int h, Pixel2D start, int src, int dst) {
+        int[] parent = ws.parent;
+
+        // count the path length first, so the array is allocated once in its final size
+        int len = 1;
+        for (int c = dst; c != src; c = parent[c]) {
+            len++;
+        }
+
+        // backtrack from end to start, filling the array from its end
+        Pixel2D[] path = new Pixel2D[len];
+        int c = dst;
+        for (int i = len - 1; i > 0; i--) {
+            path[i] = Index2D.of(c / h, c % h);
+            c = parent[c];
+        }
+        path[0] = start;
+        return path;
+    }
+
+    /**
+     * @param ws  The workspace of a search that reached dst.
+     * @param src The flat index of the start cell.
+     * @param dst The flat index of the reached cell (not src).
+     * @return the cell after src on the path to dst.
+     */
+    static int firstStep(BfsWorkspace ws, int src, int dst) {
+        // walk back from dst until the parent is src
+        int[] parent = ws.parent;
+        int c = dst;
+        while (parent[c] != src) {
+            c = parent[c];
+        }
+        return c;
+    }
+
+    /**
+     * Writes the walkable neighbours of a cell into out (right, left, down, up order).
+     *
+     * @param ws       A workspace acquired for the map's shape.
+     * @param data     The cells of the map, or null to read them through cells.
+     * @param cells    The cells of the map when data is null.
+     * @param graph    The adjacency table of the walkable cells, or null.
+     * @param cell     A flat cell index.
+     * @param obsColor The obstacle color.
+     * @param out      An array of at least 4 entries.
+     * @return the number of neighbours written.
+     */
+    static int walkableNeighbours(BfsWorkspace ws, int[] data, Cells cells, GridGraph graph, int cell,
+                                          int obsColor, int[] out) {
+        int count = 0;
+        if (graph != null) {
+            int[] adj = graph.neighbours();
+            for (int k = graph.offsets()[cell], end = graph.offsets()[cell + 1]; k < end; k++) {
+                out[count++] = adj[k];
+            }
+            return count;
+        }
+        ws.neighbours(cell, out);
+        for (int i = 0; i < 4; i++) {
+            int n = out[i];
+            if (n != BfsWorkspace.NONE && cell(data, cells, n) != obsColor) out[count++] = n;
+        }
+        return count;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    private static int cell(int[] data, Cells cells, int index) {
+        return data != null ? data[index] : cells.get(index);
+    }
+
+    /**
+     * Joins the two trees of a bidirectional search into one path: src..meetF from the forward tree
+     * followed by meetB..dst from the backward tree.
+     */
+    private static Pixel2D[] joinPath(BfsWorkspace fw, BfsWorkspace bw, int h, Pixel2D start, int meetF, int meetB,
+                                      int len) {
+        Pixel2D[] path = new Pixel2D[len];
+
+        // forward half, filled backwards from meetF
+        int i = fw.dist[meetF];
+        for (int c = meetF; i > 0; c = fw.parent[c]) {
+            path[i--] = Index2D.of(c / h, c % h);
+        }
+        path[0] = start;
+
+        // backward half, its parents lead to the target
+        i = fw.dist[meetF] + 1;
+        int c = meetB;
+        while (true) {
+            path[i++] = Index2D.of(c / h, c % h);
+            if (bw.parent[c] == c) break;
+            c = bw.parent[c];
+        }
+        return path;
+    }
+
+    /**
+     * The Manhattan distance between a cell and (tx,ty), measured around the borders when cyclic.
+     */
+    private static int manhattan(int cell, int w, int h, int tx, int ty, boolean cyclic) {
+        int dx = Math.abs(cell / h - tx);
+        int dy = Math.abs(cell % h - ty);
+        if (cyclic) {
+            dx = Math.min(dx, w - dx);
+            dy = Math.min(dy, h - dy);
+        }
+        return dx + dy;
+    }
+}
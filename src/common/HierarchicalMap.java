@@ -0,0 +1,510 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * A two level (HPA*) view of a large {@link Map} for fast path queries.
+ *
+ * The map is cut into square clusters of clusterSize cells. Along every border between two clusters the
+ * runs of cells that are walkable on both sides become entrances (one pair of cells in the middle of a
+ * short run, one at each end of a long one), and the entrance cells of a cluster are the nodes of the
+ * abstract graph. Two nodes of the same cluster are joined with their distance inside the cluster, and
+ * the two cells of an entrance are joined with a step of 1.
+ *
+ * A query connects the start and the target to the nodes of their clusters, runs A* on the abstract graph
+ * and returns the waypoints; the path between consecutive waypoints is refined (a BFS inside one cluster)
+ * only when it is asked for, so {@link #firstStep(Pixel2D, Pixel2D)} refines a single segment.
+ * Like every HPA*, the paths go through entrances and may be a few steps longer than the shortest ones.
+ *
+ * The walls are a snapshot taken at construction. Report changes with {@link #cellChanged(Pixel2D, boolean)}
+ * (or {@link #refresh(Map)}): only the borders and the abstract edges of the touched clusters are rebuilt,
+ * at the next query.
+ */
+public final class HierarchicalMap {
+    /** The cluster size used when none is given. */
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+    // a run of at least this many walkable cells gets an entrance at both ends
+    private static final int WIDE_ENTRANCE = 6;
+    private static final int INF = Integer.MAX_VALUE / 2;
+
+    private final int _w, _h, _c;
+    private final int _ncx, _ncy;
+    private final int _obsColor;
+    private final boolean _cyclic;
+    private final boolean[] _blocked;
+
+    // the entrance cells of every border (x borders first, then y borders), and how many entrances use a cell
+    private final int[][] _borderCells;
+    private final int[] _nodeRefs;
+    // the nodes of every cluster, the index of a node in its cluster, and the k*k distances inside the cluster
+    private final int[][] _clusterNodes;
+    private final int[] _local;
+    private final int[][] _clusterDist;
+    private final boolean[] _dirty;
+    private boolean _anyDirty;
+
+    // abstract search memory, g and parent are valid for cells stamped with the current epoch
+    private final int[] _g, _parent, _stamp, _closed;
+    private int _epoch;
+    private final IntMinHeap _heap = new IntMinHeap(256);
+
+    /**
+     * Builds the abstraction with the default cluster size.
+     *
+     * @param map      The map.
+     * @param obsColor The color which is addressed as an obstacle.
+     * @param cyclic   Whether the paths may wrap around the map borders.
+     */
+    public HierarchicalMap(Map map, int obsColor, boolean cyclic) {
+        this(map, obsColor, cyclic, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Builds the abstraction.
+     *
+     * @param map         The map.
+     * @param obsColor    The color which is addressed as an obstacle.
+     * @param cyclic      Whether the paths may wrap around the map borders.
+     * @param clusterSize The side of a cluster, in cells (at least 2).
+     */
+    public HierarchicalMap(Map map, int obsColor, boolean cyclic, int clusterSize) {
+        if (clusterSize < 2)
+            throw new RuntimeException("common.HierarchicalMap error: cluster size must be at least 2, got " + clusterSize);
+        _w = map.getWidth();
+        _h = map.getHeight();
+        _c = clusterSize;
+        _ncx = (_w + _c - 1) / _c;
+        _ncy = (_h + _c - 1) / _c;
+        _obsColor = obsColor;
+        _cyclic = cyclic;
+
+        int n = _w * _h;
+        _blocked = new boolean[n];
+        for (int c = 0; c < n; c++) {
+            _blocked[c] = map.getCell(c) == obsColor;
+        }
+        _borderCells = new int[2 * _ncx * _ncy][];
+        _nodeRefs = new int[n];
+        _clusterNodes = new int[_ncx * _ncy][];
+        _clusterDist = new int[_ncx * _ncy][];
+        _local = new int[n];
+        _dirty = new boolean[_ncx * _ncy];
+        _g = new int[n];
+        _parent = new int[n];
+        _stamp = new int[n];
+        _closed = new int[n];
+
+        for (int b = 0; b < _borderCells.length; b++) {
+            buildBorder(b);
+        }
+        for (int k = 0; k < _clusterNodes.length; k++) {
+            buildCluster(k);
+        }
+    }
+
+    /**
+     * Reports that a cell turned into an obstacle or stopped being one.
+     *
+     * @param p        The cell.
+     * @param obstacle true iff the cell is now an obstacle.
+     */
+    public void cellChanged(Pixel2D p, boolean obstacle) {
+        int cell = p.getX() * _h + p.getY();
+        if (_blocked[cell] == obstacle) return;
+        _blocked[cell] = obstacle;
+        _dirty[cluster(cell)] = true;
+        _anyDirty = true;
+    }
+
+    /**
+     * Compares the walls of a map (of the same size) with the snapshot and reports every difference.
+     *
+     * @param map The map.
+     */
+    public void refresh(Map map) {
+        if (map.getWidth() != _w || map.getHeight() != _h)
+            throw new RuntimeException("common.HierarchicalMap error: the map size changed");
+        for (int c = 0, n = _w * _h; c < n; c++) {
+            boolean obstacle = map.getCell(c) == _obsColor;
+            if (_blocked[c] != obstacle) {
+                _blocked[c] = obstacle;
+                _dirty[cluster(c)] = true;
+                _anyDirty = true;
+            }
+        }
+    }
+
+    /**
+     * Finds the abstract path between two cells: the start, the entrance cells it goes through, and the target.
+     *
+     * @param p1 The start.
+     * @param p2 The target.
+     * @return the waypoints as flat cell indices, or null if the target is not reachable.
+     */
+    public int[] waypoints(Pixel2D p1, Pixel2D p2) {
+        rebuildDirty();
+        int src = p1.getX() * _h + p1.getY();
+        int dst = p2.getX() * _h + p2.getY();
+        if (_blocked[src] || _blocked[dst]) return null;
+        if (src == dst) return new int[] {src};
+
+        // connect the start and the target to the nodes of their clusters
+        int ks = cluster(src), kd = cluster(dst);
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, _cyclic);
+        clusterBfs(ws, src, ks);
+        int[] startNodes = _clusterNodes[ks];
+        int[] fromSrc = new int[startNodes.length];
+        for (int i = 0; i < startNodes.length; i++) {
+            fromSrc[i] = ws.isVisited(startNodes[i]) ? ws.dist[startNodes[i]] : INF;
+        }
+        int best = ks == kd && ws.isVisited(dst) ? ws.dist[dst] : INF;
+        int bestNode = -1;
+
+        ws = BfsWorkspace.acquire(_w, _h, _cyclic);
+        clusterBfs(ws, dst, kd);
+        int[] goalNodes = _clusterNodes[kd];
+        int[] toDst = new int[goalNodes.length];
+        for (int i = 0; i < goalNodes.length; i++) {
+            toDst[i] = ws.isVisited(goalNodes[i]) ? ws.dist[goalNodes[i]] : INF;
+        }
+
+        // A* over the entrance cells, stopped once no open node can beat the best complete path
+        nextEpoch();
+        IntMinHeap heap = _heap;
+        heap.clear();
+        for (int i = 0; i < startNodes.length; i++) {
+            if (fromSrc[i] < INF) relax(startNodes[i], fromSrc[i], -1, dst);
+        }
+        int[] next = ws.next;
+        while (!heap.isEmpty()) {
+            int f = heap.peekKey();
+            int u = heap.pop();
+            if (f >= best) break;
+            if (_closed[u] == _epoch) continue;
+            _closed[u] = _epoch;
+            int g = _g[u];
+
+            int ku = cluster(u);
+            if (ku == kd) {
+                int t = toDst[_local[u]];
+                if (t < INF && g + t < best) {
+                    best = g + t;
+                    bestNode = u;
+                }
+            }
+
+            // the other nodes of the cluster
+            int[] nodes = _clusterNodes[ku];
+            int[] dist = _clusterDist[ku];
+            int row = _local[u] * nodes.length;
+            for (int j = 0; j < nodes.length; j++) {
+                int d = dist[row + j];
+                if (d < INF) relax(nodes[j], g + d, u, dst);
+            }
+
+            // the entrance cells next door
+            ws.neighbours(u, next);
+            for (int i = 0; i < 4; i++) {
+                int v = next[i];
+                if (v != BfsWorkspace.NONE && _nodeRefs[v] > 0 && !_blocked[v] && cluster(v) != ku) relax(v, g + 1, u, dst);
+            }
+        }
+        if (best >= INF) return null;
+        if (bestNode == -1) return new int[] {src, dst};
+
+        // walk the parents back from the last node (the start and the target may be nodes themselves)
+        int len = 2;
+        for (int u = bestNode; u != -1; u = _parent[u]) {
+            if (u != src && u != dst) len++;
+        }
+        int[] way = new int[len];
+        way[0] = src;
+        way[len - 1] = dst;
+        int i = len - 2;
+        for (int u = bestNode; u != -1; u = _parent[u]) {
+            if (u != src && u != dst) way[i--] = u;
+        }
+        return way;
+    }
+
+    /**
+     * Finds a path between two pixels and refines all of it.
+     *
+     * @param p1 The start.
+     * @param p2 The target.
+     * @return the path as consecutive pixels (p1 first, p2 last), or null if the target is not reachable.
+     */
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2) {
+        int[] way = waypoints(p1, p2);
+        if (way == null) return null;
+
+        // refine every segment into one growing array of cells
+        int[] cells = new int[Math.max(16, 2 * way.length)];
+        cells[0] = way[0];
+        int len = 1;
+        for (int i = 1; i < way.length; i++) {
+            int a = way[i - 1], b = way[i];
+            if (cluster(a) != cluster(b)) {
+                // an entrance: the cells are neighbours
+                if (len == cells.length) cells = Arrays.copyOf(cells, len * 2);
+                cells[len++] = b;
+                continue;
+            }
+            BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, _cyclic);
+            clusterBfs(ws, a, cluster(a));
+            int steps = ws.dist[b];
+            if (len + steps > cells.length) cells = Arrays.copyOf(cells, Math.max(cells.length * 2, len + steps));
+            int c = b;
+            for (int k = len + steps - 1; k >= len; k--) {
+                cells[k] = c;
+                c = ws.parent[c];
+            }
+            len += steps;
+        }
+
+        Pixel2D[] path = new Pixel2D[len];
+        for (int i = 0; i < len; i++) {
+            path[i] = Index2D.of(cells[i] / _h, cells[i] % _h);
+        }
+        path[0] = p1;
+        return path;
+    }
+
+    /**
+     * Finds the first step of a path between two pixels, refining only the first segment.
+     *
+     * @param p1 The start.
+     * @param p2 The target.
+     * @return the flat index of the neighbour of p1 to move to, or -1 if p2 is not reachable or equals p1.
+     */
+    public int firstStep(Pixel2D p1, Pixel2D p2) {
+        int[] way = waypoints(p1, p2);
+        if (way == null || way.length < 2) return -1;
+        int a = way[0], b = way[1];
+        if (cluster(a) != cluster(b)) return b;
+
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, _cyclic);
+        clusterBfs(ws, a, cluster(a));
+        int c = b;
+        while (ws.parent[c] != a) {
+            c = ws.parent[c];
+        }
+        return c;
+    }
+
+    /**
+     * @return the number of nodes (entrance cells) of the abstract graph.
+     */
+    public int nodeCount() {
+        rebuildDirty();
+        int count = 0;
+        for (int[] nodes : _clusterNodes) {
+            count += nodes.length;
+        }
+        return count;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    private int cluster(int cell) {
+        int x = cell / _h, y = cell - x * _h;
+        return (x / _c) * _ncy + y / _c;
+    }
+
+    private void nextEpoch() {
+        if (++_epoch == Integer.MAX_VALUE) {
+            Arrays.fill(_stamp, 0);
+            Arrays.fill(_closed, 0);
+            _epoch = 1;
+        }
+    }
+
+    /**
+     * Offers the cost g to node v (reached from u), queueing it with its A* key.
+     */
+    private void relax(int v, int g, int u, int dst) {
+        if (_stamp[v] == _epoch && _g[v] <= g) return;
+        _stamp[v] = _epoch;
+        _g[v] = g;
+        _parent[v] = u;
+        _heap.push(g + heuristic(v, dst), v);
+    }
+
+    /**
+     * @return the Manhattan distance between two cells (around the borders when cyclic), a lower bound of the path.
+     */
+    private int heuristic(int a, int b) {
+        int ax = a / _h, ay = a - ax * _h;
+        int bx = b / _h, by = b - bx * _h;
+        int dx = Math.abs(ax - bx), dy = Math.abs(ay - by);
+        if (_cyclic) {
+            dx = Math.min(dx, _w - dx);
+            dy = Math.min(dy, _h - dy);
+        }
+        return dx + dy;
+    }
+
+    /**
+     * Runs a BFS from a cell that never leaves its cluster, leaving distances and parents in the workspace.
+     */
+    private void clusterBfs(BfsWorkspace ws, int src, int k) {
+        int[] queue = ws.queue, dist = ws.dist, next = ws.next;
+        int head = 0, tail = 0;
+        ws.visit(src, src);
+        dist[src] = 0;
+        queue[tail++] = src;
+        while (head < tail) {
+            int u = queue[head++];
+            ws.neighbours(u, next);
+            for (int i = 0; i < 4; i++) {
+                int v = next[i];
+                if (v != BfsWorkspace.NONE && !_blocked[v] && !ws.isVisited(v) && cluster(v) == k) {
+                    ws.visit(v, u);
+                    dist[v] = dist[u] + 1;
+                    queue[tail++] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the borders of the dirty clusters, and the abstract edges of every cluster they touch.
+     */
+    private void rebuildDirty() {
+        if (!_anyDirty) return;
+        int clusters = _clusterNodes.length;
+        boolean[] touched = new boolean[clusters];
+        for (int k = 0; k < clusters; k++) {
+            if (!_dirty[k]) continue;
+            int i = k / _ncy, j = k % _ncy;
+            int left = (i - 1 + _ncx) % _ncx, down = (j - 1 + _ncy) % _ncy;
+            int[] borders = {i * _ncy + j, left * _ncy + j, _ncx * _ncy + i * _ncy + j, _ncx * _ncy + i * _ncy + down};
+            int[] across = {((i + 1) % _ncx) * _ncy + j, left * _ncy + j, i * _ncy + (j + 1) % _ncy, i * _ncy + down};
+            touched[k] = true;
+            for (int s = 0; s < 4; s++) {
+                if (!borderExists(borders[s])) continue;
+                buildBorder(borders[s]);
+                touched[across[s]] = true;
+            }
+            _dirty[k] = false;
+        }
+        for (int k = 0; k < clusters; k++) {
+            if (touched[k]) buildCluster(k);
+        }
+        _anyDirty = false;
+    }
+
+    /**
+     * @return true iff the border exists (the last column / row of clusters has one only when the map is cyclic).
+     */
+    private boolean borderExists(int b) {
+        int xBorders = _ncx * _ncy;
+        if (b < xBorders) return b / _ncy < _ncx - 1 || (_cyclic && _ncx > 1);
+        return (b - xBorders) % _ncy < _ncy - 1 || (_cyclic && _ncy > 1);
+    }
+
+    /**
+     * (Re)computes the entrances of a border: x border i*ncy+j is the right side of cluster (i,j),
+     * y border ncx*ncy + i*ncy+j is its upper side (higher y).
+     */
+    private void buildBorder(int b) {
+        int[] old = _borderCells[b];
+        if (old != null) {
+            for (int cell : old) {
+                _nodeRefs[cell]--;
+            }
+            _borderCells[b] = null;
+        }
+        if (!borderExists(b)) {
+            _borderCells[b] = new int[0];
+            return;
+        }
+
+        boolean xBorder = b < _ncx * _ncy;
+        int id = xBorder ? b : b - _ncx * _ncy;
+        int i = id / _ncy, j = id % _ncy;
+        // the two lines of cells facing each other, walked along t
+        int from, to, lineA, lineB;
+        if (xBorder) {
+            lineA = Math.min(_w, (i + 1) * _c) - 1;
+            lineB = i + 1 < _ncx ? lineA + 1 : 0;
+            from = j * _c;
+            to = Math.min(_h, (j + 1) * _c);
+        } else {
+            lineA = Math.min(_h, (j + 1) * _c) - 1;
+            lineB = j + 1 < _ncy ? lineA + 1 : 0;
+            from = i * _c;
+            to = Math.min(_w, (i + 1) * _c);
+        }
+
+        int[] cells = new int[2 * (to - from)];
+        int count = 0;
+        int runStart = -1;
+        for (int t = from; t <= to; t++) {
+            boolean open = false;
+            if (t < to) {
+                int a = xBorder ? lineA * _h + t : t * _h + lineA;
+                int c = xBorder ? lineB * _h + t : t * _h + lineB;
+                open = !_blocked[a] && !_blocked[c];
+            }
+            if (open && runStart == -1) runStart = t;
+            if (!open && runStart != -1) {
+                int len = t - runStart;
+                if (len < WIDE_ENTRANCE) {
+                    count = addEntrance(cells, count, xBorder, lineA, lineB, runStart + len / 2);
+                } else {
+                    count = addEntrance(cells, count, xBorder, lineA, lineB, runStart);
+                    count = addEntrance(cells, count, xBorder, lineA, lineB, t - 1);
+                }
+                runStart = -1;
+            }
+        }
+        _borderCells[b] = Arrays.copyOf(cells, count);
+    }
+
+    private int addEntrance(int[] cells, int count, boolean xBorder, int lineA, int lineB, int t) {
+        int a = xBorder ? lineA * _h + t : t * _h + lineA;
+        int c = xBorder ? lineB * _h + t : t * _h + lineB;
+        cells[count++] = a;
+        cells[count++] = c;
+        _nodeRefs[a]++;
+        _nodeRefs[c]++;
+        return count;
+    }
+
+    /**
+     * Collects the nodes of a cluster and computes the distances between them inside the cluster.
+     */
+    private void buildCluster(int k) {
+        int i = k / _ncy, j = k % _ncy;
+        int x0 = i * _c, x1 = Math.min(_w, x0 + _c);
+        int y0 = j * _c, y1 = Math.min(_h, y0 + _c);
+
+        int count = 0;
+        int[] nodes = new int[2 * (x1 - x0 + y1 - y0)];
+        for (int x = x0; x < x1; x++) {
+            for (int y = y0; y < y1; y++) {
+                // the entrance cells lie on the sides of the cluster
+                if (x != x0 && x != x1 - 1 && y != y0 && y != y1 - 1) continue;
+                int cell = x * _h + y;
+                if (_nodeRefs[cell] > 0) {
+                    _local[cell] = count;
+                    nodes[count++] = cell;
+                }
+            }
+        }
+        nodes = Arrays.copyOf(nodes, count);
+
+        int[] dist = new int[count * count];
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, _cyclic);
+        for (int a = 0; a < count; a++) {
+            if (a > 0) ws = BfsWorkspace.acquire(_w, _h, _cyclic);
+            clusterBfs(ws, nodes[a], k);
+            for (int b = 0; b < count; b++) {
+                dist[a * count + b] = ws.isVisited(nodes[b]) ? ws.dist[nodes[b]] : INF;
+            }
+        }
+        _clusterNodes[k] = nodes;
+        _clusterDist[k] = dist;
+    }
+}
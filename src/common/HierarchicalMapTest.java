@@ -0,0 +1,84 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalMapTest {
+
+    /**
+     * a random map with about a third of the cells walled
+     */
+    /**
+     * checks a path is made of walkable neighbours from start to end
+     */
+    private static void assertValid(Map map, Pixel2D[] path, Pixel2D start, Pixel2D end, boolean cyclic) {
+        assertEquals(start, path[0]);
+        assertEquals(end, path[path.length - 1]);
+        for (int i = 1; i < path.length; i++) {
+            int dx = Math.abs(path[i].getX() - path[i - 1].getX());
+            int dy = Math.abs(path[i].getY() - path[i - 1].getY());
+            if (cyclic) {
+                dx = Math.min(dx, map.getWidth() - dx);
+                dy = Math.min(dy, map.getHeight() - dy);
+            }
+            assertEquals(1, dx + dy, "step " + i);
+            assertNotEquals(-1, map.getPixel(path[i]));
+        }
+    }
+
+    /**
+     * checks reachability matches the BFS, and that the paths are valid and never shorter than the BFS ones
+     */
+    @Test
+    void testPaths() {
+        Random rnd = new Random(21);
+        for (boolean cyclic : new boolean[] {false, true}) {
+            Map map = TestMaps.randomMap(rnd, 45, 37, 0.33);
+            HierarchicalMap hpa = new HierarchicalMap(map, -1, cyclic, 8);
+            assertTrue(hpa.nodeCount() > 0);
+            for (int q = 0; q < 200; q++) {
+                Pixel2D a = map.pixel(rnd.nextInt(map.size()));
+                Pixel2D b = map.pixel(rnd.nextInt(map.size()));
+                Pixel2D[] bfs = map.shortestPath(a, b, -1, cyclic);
+                Pixel2D[] path = hpa.shortestPath(a, b);
+                if (bfs == null) {
+                    assertNull(path, a + " -> " + b);
+                    assertEquals(-1, hpa.firstStep(a, b));
+                    continue;
+                }
+                assertNotNull(path, a + " -> " + b);
+                assertValid(map, path, a, b, cyclic);
+                assertTrue(path.length >= bfs.length);
+                if (path.length > 1) assertEquals(map.index(path[1].getX(), path[1].getY()), hpa.firstStep(a, b));
+            }
+        }
+    }
+
+    /**
+     * checks that wall changes are picked up, by single cell reports and by refresh
+     */
+    @Test
+    void testUpdates() {
+        Map map = new Map(40, 10, 0);
+        HierarchicalMap hpa = new HierarchicalMap(map, -1, false, 8);
+        Pixel2D a = new Index2D(0, 5), b = new Index2D(39, 5);
+        assertValid(map, hpa.shortestPath(a, b), a, b, false);
+
+        // a wall across the map cuts it in two
+        for (int y = 0; y < 10; y++) {
+            map.setPixel(20, y, -1);
+            hpa.cellChanged(new Index2D(20, y), true);
+        }
+        assertNull(hpa.shortestPath(a, b));
+
+        // a door in the wall, reported by refresh
+        map.setPixel(20, 0, 0);
+        hpa.refresh(map);
+        Pixel2D[] path = hpa.shortestPath(a, b);
+        assertNotNull(path);
+        assertValid(map, path, a, b, false);
+    }
+}
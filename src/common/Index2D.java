@@ -1,7 +1,12 @@
 package common;
 
 public class Index2D implements Pixel2D {
-    private int _x, _y;
+    /** Interning is limited to maps of up to this many cells, larger maps get fresh instances. */
+    public static final int MAX_INTERNED = 1 << 20;
+    // _cache[x][y] is the shared instance of (x,y), grown on demand by intern(w,h)
+    private static volatile Index2D[][] _cache = new Index2D[0][0];
+
+    private final int _x, _y;
     public Index2D() {
         this(0,0);
     }
@@ -46,9 +51,117 @@ public class Index2D implements Pixel2D {
        /////// you do NOT need to add your code below ///////
         if(t instanceof Pixel2D) {
             Pixel2D p = (Pixel2D) t;
-            ans = (this.distance2D(p)==0);
+            ans = (this._x == p.getX() && this._y == p.getY());
         }
        ///////////////////////////////////
         return ans;
     }
+    @Override
+    public int hashCode() {
+        return 31 * _x + _y;
+    }
+
+    ////////////////////// Packed Coordinates ///////////////////////
+
+    /**
+     * Packs a coordinate into a single long (x in the high 32 bits, y in the low 32 bits).
+     * Any int pair is supported, so packed values can be used as primitive keys.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The packed coordinate.
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    /**
+     * @param p A pixel.
+     * @return The packed coordinate of p.
+     */
+    public static long pack(Pixel2D p) {
+        return pack(p.getX(), p.getY());
+    }
+
+    /**
+     * @param packed A packed coordinate.
+     * @return The x coordinate.
+     */
+    public static int unpackX(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    /**
+     * @param packed A packed coordinate.
+     * @return The y coordinate.
+     */
+    public static int unpackY(long packed) {
+        return (int) packed;
+    }
+
+    ////////////////////// Flyweight Cache ///////////////////////
+
+    /**
+     * Returns the shared instance of (x,y) if it was interned (see {@link #intern(int, int)}),
+     * otherwise a new instance. Index2D is immutable, so the shared instances are safe to hand out.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return An Index2D equal to (x,y).
+     */
+    public static Index2D of(int x, int y) {
+        Index2D[][] cache = _cache;
+        if (x >= 0 && x < cache.length) {
+            Index2D[] column = cache[x];
+            if (y >= 0 && y < column.length) return column[y];
+        }
+        return new Index2D(x, y);
+    }
+
+    /**
+     * @param packed A packed coordinate.
+     * @return The (shared if interned) Index2D of the packed coordinate.
+     */
+    public static Index2D of(long packed) {
+        return of(unpackX(packed), unpackY(packed));
+    }
+
+    /**
+     * Makes sure every cell of a w*h map has a shared instance, so {@link #of(int, int)} does not allocate for it.
+     * The table only grows, to cover every shape interned so far, and never past {@link #MAX_INTERNED} cells:
+     * a map that would take it over the limit is ignored (its cells outside the table get fresh instances),
+     * so two large maps never evict each other's instances. Callers intern once per map (see {@link Map#pixel(int)}).
+     *
+     * @param w The map width.
+     * @param h The map height.
+     */
+    public static void intern(int w, int h) {
+        Index2D[][] cache = _cache;
+        int oldW = cache.length;
+        int oldH = oldW == 0 ? 0 : cache[0].length;
+        if (w <= oldW && h <= oldH) return;
+        // the table never shrinks, so a map that does not fit now never will
+        if ((long) Math.max(w, oldW) * Math.max(h, oldH) > MAX_INTERNED) return;
+        synchronized (Index2D.class) {
+            cache = _cache;
+            oldW = cache.length;
+            oldH = oldW == 0 ? 0 : cache[0].length;
+            int nw = Math.max(w, oldW), nh = Math.max(h, oldH);
+            if ((nw == oldW && nh == oldH) || (long) nw * nh > MAX_INTERNED) return;
+
+            // publish a new table, keeping the existing instances
+            Index2D[][] grown = new Index2D[nw][nh];
+            for (int i = 0; i < nw; i++) {
+                int kept = 0;
+                if (i < oldW) {
+                    kept = oldH;
+                    System.arraycopy(cache[i], 0, grown[i], 0, kept);
+                }
+                for (int j = kept; j < nh; j++) {
+                    grown[i][j] = new Index2D(i, j);
+                }
+            }
+            _cache = grown;
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class Index2DTest {
+
+    /**
+     * checks equals and hashCode agree on the coordinates only
+     */
+    @Test
+    void testEqualsHashCode() {
+        Index2D a = new Index2D(3, 4);
+        Index2D b = new Index2D(3, 4);
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, new Index2D(4, 3));
+        assertNotEquals(a, "3,4");
+
+        // usable as a hash key
+        java.util.Map<Pixel2D, Integer> values = new java.util.HashMap<>();
+        values.put(a, 7);
+        assertEquals(7, values.get(b));
+    }
+
+    /**
+     * checks packing into a long round trips, also for negative values
+     */
+    @Test
+    void testPack() {
+        int[][] coords = {{0, 0}, {5, 9}, {-1, 3}, {7, -2}, {Integer.MAX_VALUE, Integer.MIN_VALUE}};
+        for (int[] c : coords) {
+            long packed = Index2D.pack(c[0], c[1]);
+            assertEquals(c[0], Index2D.unpackX(packed));
+            assertEquals(c[1], Index2D.unpackY(packed));
+            assertEquals(new Index2D(c[0], c[1]), Index2D.of(packed));
+        }
+        assertNotEquals(Index2D.pack(1, 2), Index2D.pack(2, 1));
+    }
+
+    /**
+     * checks the flyweight cache hands out one shared instance per interned cell
+     */
+    @Test
+    void testIntern() {
+        Index2D.intern(10, 10);
+        assertSame(Index2D.of(2, 9), Index2D.of(2, 9));
+        assertEquals(new Index2D(2, 9), Index2D.of(2, 9));
+
+        // outside of the interned area a new instance is returned
+        assertNotSame(Index2D.of(-1, 0), Index2D.of(-1, 0));
+
+        // map paths are built from the shared instances
+        Map map = new Map(10, 10, 0);
+        Pixel2D[] path = map.shortestPath(new Index2D(0, 0), new Index2D(0, 3), -1, false);
+        assertSame(Index2D.of(0, 3), path[3]);
+        assertSame(map.pixel(4, 5), Index2D.of(4, 5));
+
+        // shapes that cannot share the table under MAX_INTERNED do not evict the instances handed out before
+        Index2D kept = Index2D.of(1, 1);
+        Index2D.intern(2048, 256);
+        Index2D.intern(256, 2048);
+        Index2D.intern(2048, 256);
+        assertSame(kept, Index2D.of(1, 1));
+        assertSame(kept, new Map(256, 2048, 0).pixel(1, 1));
+    }
+}
@@ -0,0 +1,175 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from int keys to int values over primitive arrays (no boxing, no entry objects).
+ *
+ * The entries are kept in insertion order in two dense arrays ({@link #keyAt(int)}, {@link #valueAt(int)}),
+ * and an open addressing table (linear probing) maps a key to its entry. A slot of the table is live only if its
+ * stamp is the current one, so {@link #clear()} is O(1) and allocates nothing: one map can be reused every tick.
+ * There is no remove, the maps are meant to be filled and then cleared.
+ */
+public final class IntIntMap {
+    private int[] _keys, _values;
+    private int _size;
+    // the entry index of every slot, and the stamp that makes the slot live
+    private int[] _table, _stamps;
+    private int _stamp = 1;
+
+    /**
+     * Constructs an empty map.
+     */
+    public IntIntMap() {
+        this(16);
+    }
+
+    /**
+     * @param expected The number of entries expected, the map grows on demand.
+     */
+    public IntIntMap(int expected) {
+        expected = Math.max(expected, 4);
+        _keys = new int[expected];
+        _values = new int[expected];
+        int capacity = Integer.highestOneBit(expected * 2 - 1) << 1;
+        _table = new int[capacity];
+        _stamps = new int[capacity];
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return true iff the map holds no entries.
+     */
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * @param key A key.
+     * @return true iff the key has an entry.
+     */
+    public boolean containsKey(int key) {
+        return _stamps[slot(key)] == _stamp;
+    }
+
+    /**
+     * @param key     A key.
+     * @param missing The value returned if the key has no entry.
+     * @return the value of the key, or missing.
+     */
+    public int get(int key, int missing) {
+        int s = slot(key);
+        return _stamps[s] == _stamp ? _values[_table[s]] : missing;
+    }
+
+    /**
+     * Adds an entry, or replaces the value of an existing one (it keeps its place in the insertion order).
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    public void put(int key, int value) {
+        int s = slot(key);
+        if (_stamps[s] == _stamp) _values[_table[s]] = value;
+        else add(s, key, value);
+    }
+
+    /**
+     * Adds an entry only if the key has none, e.g. to remember the first value of a cell.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @return true iff the entry was added.
+     */
+    public boolean putIfAbsent(int key, int value) {
+        int s = slot(key);
+        if (_stamps[s] == _stamp) return false;
+        add(s, key, value);
+        return true;
+    }
+
+    /**
+     * @param i An entry index in [0,size()), in insertion order.
+     * @return the key of the entry.
+     */
+    public int keyAt(int i) {
+        return _keys[i];
+    }
+
+    /**
+     * @param i An entry index in [0,size()), in insertion order.
+     * @return the value of the entry.
+     */
+    public int valueAt(int i) {
+        return _values[i];
+    }
+
+    /**
+     * Removes all the entries in O(1), keeping the allocated arrays.
+     */
+    public void clear() {
+        _size = 0;
+        if (++_stamp == 0) {
+            // the stamps wrapped around: start over from clean slots
+            Arrays.fill(_stamps, 0);
+            _stamp = 1;
+        }
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * @return the slot of the key, or the free slot where it would go.
+     */
+    private int slot(int key) {
+        int mask = _table.length - 1;
+        int s = hash(key) & mask;
+        while (_stamps[s] == _stamp && _keys[_table[s]] != key) {
+            s = (s + 1) & mask;
+        }
+        return s;
+    }
+
+    private void add(int s, int key, int value) {
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, _size * 2);
+            _values = Arrays.copyOf(_values, _size * 2);
+        }
+        _keys[_size] = key;
+        _values[_size] = value;
+        _table[s] = _size;
+        _stamps[s] = _stamp;
+        _size++;
+        // keep the table at most half full
+        if (_size * 2 > _table.length) rehash(_table.length * 2);
+    }
+
+    private void rehash(int capacity) {
+        _table = new int[capacity];
+        _stamps = new int[capacity];
+        _stamp = 1;
+        int mask = capacity - 1;
+        for (int i = 0; i < _size; i++) {
+            int s = hash(_keys[i]) & mask;
+            while (_stamps[s] == _stamp) {
+                s = (s + 1) & mask;
+            }
+            _table[s] = i;
+            _stamps[s] = _stamp;
+        }
+    }
+
+    /**
+     * Spreads the key bits, flat cell indices of neighbouring cells would otherwise fill one run of slots.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,64 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntIntMapTest {
+
+    /**
+     * checks random puts and lookups against java.util.HashMap, across growth and many clears
+     */
+    @Test
+    void testAgainstHashMap() {
+        Random rnd = new Random(23);
+        IntIntMap map = new IntIntMap(2);
+        HashMap<Integer, Integer> ref = new HashMap<>();
+        for (int round = 0; round < 200; round++) {
+            map.clear();
+            ref.clear();
+            int n = rnd.nextInt(300);
+            for (int i = 0; i < n; i++) {
+                int k = rnd.nextInt(500) - 250, v = rnd.nextInt();
+                if (rnd.nextBoolean()) {
+                    map.put(k, v);
+                    ref.put(k, v);
+                } else {
+                    assertEquals(ref.putIfAbsent(k, v) == null, map.putIfAbsent(k, v));
+                }
+            }
+            assertEquals(ref.size(), map.size());
+            for (int k = -260; k < 260; k++) {
+                assertEquals(ref.containsKey(k), map.containsKey(k));
+                assertEquals(ref.getOrDefault(k, -7), (Integer) map.get(k, -7));
+            }
+            for (int i = 0; i < map.size(); i++) {
+                assertEquals(ref.get(map.keyAt(i)), (Integer) map.valueAt(i));
+            }
+        }
+    }
+
+    /**
+     * checks the entries come back in insertion order and a replaced value keeps its place
+     */
+    @Test
+    void testOrder() {
+        IntIntMap map = new IntIntMap();
+        map.put(30, 1);
+        map.put(10, 2);
+        map.put(20, 3);
+        map.put(10, 4);
+        assertFalse(map.putIfAbsent(30, 9));
+        assertEquals(3, map.size());
+        assertEquals(30, map.keyAt(0));
+        assertEquals(10, map.keyAt(1));
+        assertEquals(4, map.valueAt(1));
+        assertEquals(20, map.keyAt(2));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(30));
+    }
+}
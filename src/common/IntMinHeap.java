@@ -0,0 +1,102 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * A binary min heap of (int key, int value) pairs over primitive arrays.
+ * It is used as the open list of the A* and Dijkstra style searches, duplicates are allowed
+ * (stale entries are skipped by the caller), so there is no decrease-key.
+ */
+final class IntMinHeap {
+    private int[] _keys;
+    private int[] _values;
+    private int _size;
+
+    /**
+     * @param capacity The initial capacity, the heap grows on demand.
+     */
+    IntMinHeap(int capacity) {
+        capacity = Math.max(capacity, 16);
+        _keys = new int[capacity];
+        _values = new int[capacity];
+    }
+
+    /**
+     * @return the number of entries in the heap.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * @return true iff the heap holds no entries.
+     */
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * Removes all the entries, keeping the allocated arrays.
+     */
+    void clear() {
+        _size = 0;
+    }
+
+    /**
+     * Inserts an entry.
+     *
+     * @param key   The priority (smaller comes out first).
+     * @param value The payload, usually a flat cell index.
+     */
+    void push(int key, int value) {
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, _size * 2);
+            _values = Arrays.copyOf(_values, _size * 2);
+        }
+
+        // sift up
+        int i = _size++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (_keys[p] <= key) break;
+            _keys[i] = _keys[p];
+            _values[i] = _values[p];
+            i = p;
+        }
+        _keys[i] = key;
+        _values[i] = value;
+    }
+
+    /**
+     * @return the smallest key in the heap (the heap must not be empty).
+     */
+    int peekKey() {
+        return _keys[0];
+    }
+
+    /**
+     * Removes the entry with the smallest key.
+     *
+     * @return its value.
+     */
+    int pop() {
+        int ans = _values[0];
+        int key = _keys[--_size];
+        int value = _values[_size];
+
+        // sift the last entry down from the root
+        int i = 0;
+        int half = _size >>> 1;
+        while (i < half) {
+            int c = 2 * i + 1;
+            if (c + 1 < _size && _keys[c + 1] < _keys[c]) c++;
+            if (key <= _keys[c]) break;
+            _keys[i] = _keys[c];
+            _values[i] = _values[c];
+            i = c;
+        }
+        _keys[i] = key;
+        _values[i] = value;
+        return ans;
+    }
+}
@@ -0,0 +1,134 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * A reusable path buffer of flat cell indices (see {@link Map#index(int, int)}).
+ * It is filled by {@link Map#shortestPathCells(Pixel2D, Pixel2D, int, boolean, IntPath)} and can be
+ * passed to the next query again, so a caller that keeps one IntPath allocates nothing per decision.
+ *
+ * The direction codes match the game's convention (MyPacmanGame): UP is y+1, DOWN is y-1,
+ * RIGHT is x+1 and LEFT is x-1, with the wrap around the borders of a cyclic map taken into account.
+ */
+public final class IntPath {
+    public static final int NONE = -1;
+    public static final int UP = 1;
+    public static final int LEFT = 2;
+    public static final int DOWN = 3;
+    public static final int RIGHT = 4;
+
+    private int[] _cells;
+    private int _length;
+    private int _h = 1;
+
+    /**
+     * Constructs an empty path.
+     */
+    public IntPath() {
+        _cells = new int[16];
+    }
+
+    /**
+     * @return the number of cells in the path (0 when there is no path).
+     */
+    public int length() {
+        return _length;
+    }
+
+    /**
+     * @param i A position in [0,length()).
+     * @return the flat index of the i-th cell.
+     */
+    public int get(int i) {
+        if (i < 0 || i >= _length)
+            throw new RuntimeException("IntPath error: index " + i + " out of [0," + _length + ")");
+        return _cells[i];
+    }
+
+    /**
+     * @param i A position in [0,length()).
+     * @return the x coordinate of the i-th cell.
+     */
+    public int getX(int i) {
+        return get(i) / _h;
+    }
+
+    /**
+     * @param i A position in [0,length()).
+     * @return the y coordinate of the i-th cell.
+     */
+    public int getY(int i) {
+        return get(i) % _h;
+    }
+
+    /**
+     * @return the flat index of the cell after the start, or {@link #NONE} if the path has no step.
+     */
+    public int nextStep() {
+        return _length > 1 ? _cells[1] : NONE;
+    }
+
+    /**
+     * @return the direction code of the first step (UP, LEFT, DOWN, RIGHT), or {@link #NONE} if the path has no step.
+     */
+    public int direction() {
+        return _length > 1 ? direction(_cells[0], _cells[1], _h) : NONE;
+    }
+
+    /**
+     * @return a copy of the cells of the path.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(_cells, _length);
+    }
+
+    /**
+     * Empties the path, keeping its buffer.
+     */
+    public void clear() {
+        _length = 0;
+    }
+
+    /**
+     * Computes the direction code of a single step between two neighbouring cells.
+     * A step of more than one cell along an axis is a wrap around the border of a cyclic map.
+     *
+     * @param from The flat index of the first cell.
+     * @param to   The flat index of the neighbouring cell.
+     * @param h    The height of the map.
+     * @return UP, LEFT, DOWN or RIGHT, or {@link #NONE} if from == to.
+     */
+    public static int direction(int from, int to, int h) {
+        int dx = to / h - from / h;
+        int dy = to % h - from % h;
+        if (dx == 1 || dx < -1) return RIGHT;
+        if (dx == -1 || dx > 1) return LEFT;
+        if (dy == 1 || dy < -1) return UP;
+        if (dy == -1 || dy > 1) return DOWN;
+        return NONE;
+    }
+
+    ////////////////////// Package Methods ///////////////////////
+
+    /**
+     * Prepares the buffer for a path of the given length on a map of height h.
+     *
+     * @param length The number of cells.
+     * @param h      The map height (to decode coordinates).
+     */
+    void reset(int length, int h) {
+        if (_cells.length < length) {
+            _cells = new int[Math.max(length, _cells.length * 2)];
+        }
+        _length = length;
+        _h = h;
+    }
+
+    /**
+     * @param i    A position in [0,length()).
+     * @param cell The flat index of the i-th cell.
+     */
+    void set(int i, int cell) {
+        _cells[i] = cell;
+    }
+}
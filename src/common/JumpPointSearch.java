@@ -0,0 +1,237 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * Jump point search on the 4-connected grid of a {@link Map}, used by
+ * {@link Map#shortestPath(Pixel2D, Pixel2D, int, boolean, SearchMode)} with {@link SearchMode#JUMP_POINT}.
+ *
+ * Among the shortest paths there is always one whose turns from a horizontal (x) move to a vertical (y) move
+ * happen only where the earlier turn is walled off (a "forced" neighbour). So the search:
+ * - runs along x without stopping until the target, a wall, or a cell with a forced vertical neighbour.
+ * - runs along y, stopping at the target or at a cell from which an x run finds a jump point.
+ * Only those jump points enter the A* open list, the cells in between are scanned but never queued.
+ * A search state is a (cell, arrival direction) pair, so the pruning of one arrival never hides another.
+ *
+ * On a cyclic map a run stops after a full turn around the map.
+ */
+final class JumpPointSearch {
+    private static final ThreadLocal<JumpPointSearch> LOCAL = ThreadLocal.withInitial(JumpPointSearch::new);
+    // the parent of the states reached straight from the start
+    private static final int START = -2;
+
+    private int[] _data;
+    private int _w, _h, _obsColor, _dst;
+    private boolean _cyclic;
+
+    // per state (cell*4 + direction): cost, parent state, and the epochs of the open and closed marks
+    private int[] _g = new int[0], _parent = new int[0], _stamp = new int[0], _closed = new int[0];
+    private int _epoch;
+    private final IntMinHeap _open = new IntMinHeap(256);
+    // the length of the last successful run
+    private int _steps;
+    private int _expanded;
+
+    private JumpPointSearch() {
+    }
+
+    /**
+     * @return the search memory of the calling thread.
+     */
+    static JumpPointSearch get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Finds a shortest path between two walkable cells.
+     *
+     * @param data     The cells in the layout of {@link Map}.
+     * @param w        The map width.
+     * @param h        The map height.
+     * @param src      The flat index of the start.
+     * @param dst      The flat index of the target (not src).
+     * @param obsColor The obstacle color.
+     * @param cyclic   Whether the paths may wrap around the map borders.
+     * @return the flat indices of the path cells (src first, dst last), or null if dst is not reachable.
+     */
+    int[] path(int[] data, int w, int h, int src, int dst, int obsColor, boolean cyclic) {
+        _data = data;
+        _w = w;
+        _h = h;
+        _obsColor = obsColor;
+        _dst = dst;
+        _cyclic = cyclic;
+        _expanded = 0;
+        int states = 4 * w * h;
+        if (_g.length < states) {
+            _g = new int[states];
+            _parent = new int[states];
+            _stamp = new int[states];
+            _closed = new int[states];
+            _epoch = 0;
+        }
+        if (++_epoch == Integer.MAX_VALUE) {
+            Arrays.fill(_stamp, 0);
+            Arrays.fill(_closed, 0);
+            _epoch = 1;
+        }
+        IntMinHeap open = _open;
+        open.clear();
+
+        // the start expands all four directions
+        _expanded++;
+        int sx = src / h, sy = src - sx * h;
+        for (int dir = 0; dir < 4; dir++) {
+            jumpFrom(sx, sy, dir, 0, START);
+        }
+
+        while (!open.isEmpty()) {
+            int s = open.pop();
+            if (_closed[s] == _epoch) continue;
+            _closed[s] = _epoch;
+            int cell = s >>> 2, dir = s & 3;
+            if (cell == dst) return expand(s);
+            _expanded++;
+
+            int x = cell / h, y = cell - x * h;
+            int g = _g[s];
+            jumpFrom(x, y, dir, g, s);
+            if (dir < 2) {
+                // arrived along x: keep going, and turn only into forced neighbours
+                int px = dir == 0 ? x - 1 : x + 1;
+                if (px < 0 || px >= w) px = (px + w) % w;
+                for (int vd = 2; vd < 4; vd++) {
+                    int ny = nextY(y, vd);
+                    if (ny != -1 && free(x, ny) && !free(px, ny)) jumpFrom(x, y, vd, g, s);
+                }
+            } else {
+                // arrived along y: keep going, and both x directions are natural
+                jumpFrom(x, y, 0, g, s);
+                jumpFrom(x, y, 1, g, s);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of states expanded by the last search (the start included).
+     */
+    int expanded() {
+        return _expanded;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * Jumps from (x,y) in a direction and offers the jump point found, if any.
+     */
+    private void jumpFrom(int x, int y, int dir, int g, int parent) {
+        int jp = dir < 2 ? jumpX(x, y, dir == 0 ? 1 : -1) : jumpY(x, y, dir == 2 ? 1 : -1);
+        if (jp == -1) return;
+        int s = jp * 4 + dir;
+        int ng = g + _steps;
+        if (_closed[s] == _epoch || (_stamp[s] == _epoch && _g[s] <= ng)) return;
+        _stamp[s] = _epoch;
+        _g[s] = ng;
+        _parent[s] = parent;
+        _open.push(ng + heuristic(jp), s);
+    }
+
+    /**
+     * Runs along x from (x,y) (the start cell excluded).
+     *
+     * @return the first jump point (the target or a cell with a forced neighbour), -1 if a wall or the border comes first.
+     */
+    private int jumpX(int x, int y, int dx) {
+        int yd = nextY(y, 2), yu = nextY(y, 3);
+        for (int steps = 1; steps < _w; steps++) {
+            int px = x;
+            x += dx;
+            if (x < 0 || x >= _w) {
+                if (!_cyclic) return -1;
+                x = x < 0 ? _w - 1 : 0;
+            }
+            int cell = x * _h + y;
+            if (_data[cell] == _obsColor) return -1;
+            if (cell == _dst
+                    || (yd != -1 && free(x, yd) && !free(px, yd))
+                    || (yu != -1 && free(x, yu) && !free(px, yu))) {
+                _steps = steps;
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Runs along y from (x,y) (the start cell excluded).
+     *
+     * @return the first jump point (the target or a cell with an x run that finds one), -1 if there is none.
+     */
+    private int jumpY(int x, int y, int dy) {
+        for (int steps = 1; steps < _h; steps++) {
+            y += dy;
+            if (y < 0 || y >= _h) {
+                if (!_cyclic) return -1;
+                y = y < 0 ? _h - 1 : 0;
+            }
+            int cell = x * _h + y;
+            if (_data[cell] == _obsColor) return -1;
+            if (cell == _dst || jumpX(x, y, 1) != -1 || jumpX(x, y, -1) != -1) {
+                _steps = steps;
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return y moved one cell in a y direction (2 down, 3 up), wrapping if cyclic, -1 outside the map.
+     */
+    private int nextY(int y, int dir) {
+        int ny = dir == 2 ? y + 1 : y - 1;
+        if (ny >= 0 && ny < _h) return ny;
+        return _cyclic ? (ny + _h) % _h : -1;
+    }
+
+    private boolean free(int x, int y) {
+        return _data[x * _h + y] != _obsColor;
+    }
+
+    /**
+     * @return the Manhattan distance from a cell to the target (around the borders when cyclic).
+     */
+    private int heuristic(int cell) {
+        int x = cell / _h, y = cell - x * _h;
+        int tx = _dst / _h, ty = _dst - tx * _h;
+        int dx = Math.abs(x - tx), dy = Math.abs(y - ty);
+        if (_cyclic) {
+            dx = Math.min(dx, _w - dx);
+            dy = Math.min(dy, _h - dy);
+        }
+        return dx + dy;
+    }
+
+    /**
+     * Expands the chain of jump points ending at the target state into consecutive cells.
+     */
+    private int[] expand(int goal) {
+        int[] cells = new int[_g[goal] + 1];
+        int i = cells.length - 1;
+        for (int s = goal; s != START; s = _parent[s]) {
+            int steps = _g[s] - (_parent[s] == START ? 0 : _g[_parent[s]]);
+            int cell = s >>> 2, dir = s & 3;
+            int x = cell / _h, y = cell - x * _h;
+            // walk back against the arrival direction
+            for (int k = 0; k < steps; k++) {
+                cells[i--] = x * _h + y;
+                if (dir == 0) x = x == 0 ? _w - 1 : x - 1;
+                else if (dir == 1) x = x == _w - 1 ? 0 : x + 1;
+                else if (dir == 2) y = y == 0 ? _h - 1 : y - 1;
+                else y = y == _h - 1 ? 0 : y + 1;
+            }
+            if (_parent[s] == START) cells[i] = x * _h + y;
+        }
+        return cells;
+    }
+}
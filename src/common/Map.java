@@ -1,16 +1,46 @@
 package common;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * This class represents a 2D map as a "screen" or a raster matrix or maze over integers.
+ * The cells are kept in a single flat int array, row-major with respect to the [x][y]
+ * layout of {@link #getMap()}: the cell (x,y) is stored at index x*getHeight()+y.
  * @author boaz.benmoshe
  *
  */
 public class Map implements Map2D {
-	private int[][] _map;
+	private int[] _data;
+	private int _w, _h;
 	private boolean _cyclicFlag = true;
+	// cached adjacency table, dropped whenever a cell changes its obstacle status
+	private GridGraph _graph;
+	// cached walkable bitset of the bitset BFS (for _freeColor), kept in sync by write()
+	private long[] _free;
+	private int _freeColor;
+	// cached component labels, kept up to date by write() (see components())
+	private Components _components;
+	// true while _data is shared with a snapshot (see snapshot()), the first write copies it
+	private boolean _shared;
+	// obstacle hashes (see obstacleHash()) of the first _hashCount colors of _hashColors, kept in sync by write()
+	private int[] _hashColors;
+	private long[] _hashes;
+	private int _hashCount;
+	// hash of the whole board (see boardHash()), kept in sync by write() once _boardHashed
+	private long _boardHash;
+	private boolean _boardHashed;
+	// the first old value of every cell written since startUndoLog(), while _logging
+	private IntIntMap _undoLog;
+	private boolean _logging;
+	// whether the shape was handed to Index2D.intern, done once by the first pixel() call
+	private boolean _interned;
+
+	/** The number of obstacle colors whose hash a map keeps up to date at once (see {@link #obstacleHash(int)}). */
+	public static final int HASHED_COLORS = 4;
+
+	/** From this many cells on, allDistance uses the bitset BFS (see {@link #allDistanceBitset(Pixel2D, int, boolean)}). */
+	public static final int BITSET_MIN_CELLS = 1 << 19;
 	
 	/**
 	 * Constructs a w*h 2D raster map with an init value v.
@@ -20,6 +50,14 @@ public class Map implements Map2D {
 	 */
 	public Map(int w, int h, int v) {
         init(w,h, v);
+    }
+	/**
+	 * Constructs a w*h 2D raster map with all the entries set to 0.
+	 * @param w
+	 * @param h
+	 */
+	public Map(int w, int h) {
+        this(w, h, 0);
     }
 	/**
 	 * Constructs a square map (size*size).
@@ -37,23 +75,60 @@ public class Map implements Map2D {
 		init(data);
 	}
 
+	/**
+	 * Constructs a w*h map from a flat row-major array (see {@link #init(int, int, int[])}).
+	 * @param w
+	 * @param h
+	 * @param data
+	 */
+	public Map(int w, int h, int[] data) {
+		init(w, h, data);
+	}
+
+	/**
+	 * Constructs a copy on write snapshot of a map: the two maps share the cells until one of them is written.
+	 * @param src the map to share.
+	 */
+	private Map(Map src) {
+		this._w = src._w;
+		this._h = src._h;
+		this._data = src._data;
+		this._cyclicFlag = src._cyclicFlag;
+		// the adjacency table is immutable, the other caches are updated in place so they are not shared
+		this._graph = src._graph;
+		this._shared = true;
+		src._shared = true;
+		if (src._hashCount > 0) {
+			this._hashColors = src._hashColors.clone();
+			this._hashes = src._hashes.clone();
+			this._hashCount = src._hashCount;
+		}
+		this._boardHash = src._boardHash;
+		this._boardHashed = src._boardHashed;
+		this._interned = src._interned;
+	}
+
 	@Override
 	public void init(int w, int h, int v) {
 		/////// add your code below ///////
 
         // edge cases
-        if (w <= 0 || h <= 0)
-            throw new RuntimeException("common.Map2D init error: wrong dimensions");
-
-        // create new map
-        this._map = new int[w][h];
-
-        // insert v to every 'cell'
-        for (int i = 0; i < w; i++) {
-            for (int j = 0; j < h; j++) {
-                this._map[i][j] = v;
-            }
-        }
+        checkDimensions(w, h);
+
+        // create new map and insert v to every 'cell'
+        this._w = w;
+        this._h = h;
+        this._data = new int[w * h];
+        this._graph = null;
+        this._free = null;
+        this._components = null;
+        this._shared = false;
+        this._hashCount = 0;
+        this._boardHashed = false;
+        this._logging = false;
+        this._interned = false;
+        if (v != 0)
+            Arrays.fill(this._data, v);
 
 		///////////////////////////////////
 	}
@@ -68,63 +143,259 @@ public class Map implements Map2D {
 
         // create new map -> width = array length and height = one of the elements in
         // array length
-        this._map = new int[arr.length][arr[0].length];
+        int w = arr.length;
+        int h = arr[0].length;
+        checkDimensions(w, h);
+        int[] data = new int[w * h];
 
-        // deep copy array to map
-        for (int i = 0; i < arr.length; i++) {
-            for (int j = 0; j < arr[i].length; j++) {
-                this._map[i][j] = arr[i][j];
-            }
+        // deep copy array to map, a whole column at a time
+        for (int i = 0; i < w; i++) {
+            if (arr[i] == null || arr[i].length != h)
+                throw new RuntimeException("common.Map2D init error: ragged array");
+            System.arraycopy(arr[i], 0, data, i * h, h);
         }
+        this._w = w;
+        this._h = h;
+        this._data = data;
+        this._graph = null;
+        this._free = null;
+        this._components = null;
+        this._shared = false;
+        this._hashCount = 0;
+        this._boardHashed = false;
+        this._logging = false;
+        this._interned = false;
 
 		///////////////////////////////////
 	}
 
+	/**
+	 * Bulk import: initializes this map as a w*h map from a flat array (deep copy).
+	 * The array is read row-major with respect to [x][y], i.e. data[x*h+y] is the value of (x,y).
+	 * @param w the width of the map.
+	 * @param h the height of the map.
+	 * @param data a flat array of exactly w*h values.
+	 * @throws RuntimeException if data == null or its length is not w*h.
+	 */
+	public void init(int w, int h, int[] data) {
+        checkDimensions(w, h);
+        if (data == null || data.length != w * h)
+            throw new RuntimeException("common.Map2D init error: data length does not match " + w + "*" + h);
+        this._w = w;
+        this._h = h;
+        this._data = data.clone();
+        this._graph = null;
+        this._free = null;
+        this._components = null;
+        this._shared = false;
+        this._hashCount = 0;
+        this._boardHashed = false;
+        this._logging = false;
+        this._interned = false;
+	}
+
+	/**
+	 * Loads a board of the same shape into this map in place: only the cells that differ are written,
+	 * so the cached search tables and the obstacle hashes follow the few cells a game tick changes
+	 * instead of being rebuilt. A board of another shape is a plain {@link #init(int[][])}.
+	 * @param arr the board, arr[x][y].
+	 * @return the number of cells written (all of them after an init).
+	 * @throws RuntimeException if arr is null, empty or ragged.
+	 */
+	public int load(int[][] arr) {
+        if (arr == null || arr.length == 0 || arr[0] == null)
+            throw new RuntimeException("common.Map2D load error: null or empty array");
+        if (_data == null || arr.length != _w || arr[0].length != _h) {
+            init(arr);
+            return _w * _h;
+        }
+        int changed = 0;
+        for (int x = 0; x < _w; x++) {
+            int[] col = arr[x];
+            if (col == null || col.length != _h)
+                throw new RuntimeException("common.Map2D load error: ragged array");
+            for (int y = 0, c = x * _h; y < _h; y++, c++) {
+                if (_data[c] != col[y]) {
+                    write(c, col[y]);
+                    changed++;
+                }
+            }
+        }
+        return changed;
+	}
+
 	@Override
 	public int[][] getMap() {
 		int[][] ans = null;
 		/////// add your code below ///////
 
         // edge cases
-        if (this._map == null)
+        if (this._data == null)
             return null;
 
-        // get length
-        int w = this.getWidth();
-        int h = this.getHeight();
+        // create new 2D array and deep copy map, a whole column at a time
+        ans = new int[_w][_h];
+        for (int i = 0; i < _w; i++) {
+            System.arraycopy(this._data, i * _h, ans[i], 0, _h);
+        }
 
-        // create new 2D array
-        ans = new int[w][h];
+		///////////////////////////////////
+		return ans;
+	}
 
-        // deep copy map
-        for (int i = 0; i < w; i++) {
-            for (int j = 0; j < h; j++) {
-                ans[i][j] = this._map[i][j];
+	/**
+	 * Bulk export: a flat deep copy of this map (same layout as {@link #init(int, int, int[])}).
+	 * @return a new array of getWidth()*getHeight() values.
+	 */
+	public int[] toArray() {
+        return this._data.clone();
+	}
+
+	/**
+	 * Bulk export into an existing array, so a caller can reuse one buffer across calls.
+	 * @param dest an array of at least getWidth()*getHeight() entries.
+	 * @throws RuntimeException if dest is null or too short.
+	 */
+	public void copyTo(int[] dest) {
+        if (dest == null || dest.length < this._data.length)
+            throw new RuntimeException("common.Map2D copyTo error: destination too small");
+        System.arraycopy(this._data, 0, dest, 0, this._data.length);
+	}
+
+	/**
+	 * Returns a copy of this map in O(1): the snapshot shares the cells with this map, and whichever of the two
+	 * is written first copies them (copy on write), so neither ever sees the other's later changes.
+	 * @return a new, independent map with the current content of this map.
+	 */
+	public Map snapshot() {
+        return new Map(this);
+	}
+
+	/**
+	 * Returns a Zobrist hash of the obstacle layout of this map: the XOR of a fixed random key per cell over the cells
+	 * of the given color. Two maps of the same size with the same obstacles have the same hash, whatever their other
+	 * cells, so it identifies the inputs of a search (see {@link DistanceCache}).
+	 * The first call for a color costs one pass over the map; after that, for up to {@link #HASHED_COLORS} colors,
+	 * the hash is kept up to date by every write in O(1) and this is a lookup.
+	 * @param obsColor the obstacle color.
+	 * @return the 64 bit hash of the cells of that color.
+	 */
+	public long obstacleHash(int obsColor) {
+        for (int i = 0; i < _hashCount; i++) {
+            if (_hashColors[i] == obsColor) return _hashes[i];
+        }
+        long hash = 0;
+        for (int c = 0; c < _data.length; c++) {
+            if (_data[c] == obsColor) hash ^= Zobrist.cell(c);
+        }
+        if (_hashColors == null) {
+            _hashColors = new int[HASHED_COLORS];
+            _hashes = new long[HASHED_COLORS];
+        }
+        // all the slots taken: the last one is reused
+        int slot = _hashCount < HASHED_COLORS ? _hashCount++ : HASHED_COLORS - 1;
+        _hashColors[slot] = obsColor;
+        _hashes[slot] = hash;
+        return hash;
+	}
+
+	/**
+	 * Returns a Zobrist hash of the whole board: the XOR of a fixed random key per (cell, value) over all the cells.
+	 * Two maps of the same size with the same cells have the same hash, so it fingerprints a board state
+	 * (e.g. for a transposition table) without copying it; see {@link #obstacleHash(int)} for the walls alone.
+	 * The first call costs one pass over the map, after that every write keeps the hash up to date in O(1).
+	 * @return the 64 bit hash of the board.
+	 */
+	public long boardHash() {
+        if (!_boardHashed) {
+            long hash = 0;
+            for (int c = 0; c < _data.length; c++) {
+                hash ^= Zobrist.cell(c, _data[c]);
             }
+            _boardHash = hash;
+            _boardHashed = true;
         }
+        return _boardHash;
+	}
 
-		///////////////////////////////////
-		return ans;
+	/**
+	 * Starts an undo log: from now on the first old value of every cell written by setPixel / setCell is recorded,
+	 * until {@link #undo()} restores them or {@link #discardUndoLog()} keeps the changes.
+	 * It is for callers that edit a map they own and may need to take the edit back (e.g. a what-if search
+	 * on a private copy); the log is a reused primitive map, so it allocates nothing once the map has been used.
+	 * fill and fillParallel are not logged and throw while the log is open, init closes it.
+	 * The agents paint their temporary walls in a {@link MapOverlay} instead, which never writes the board.
+	 * @throws RuntimeException if an undo log is already open (they do not nest).
+	 */
+	public void startUndoLog() {
+        if (_logging)
+            throw new RuntimeException("common.Map startUndoLog error: an undo log is already open");
+        if (_undoLog == null) _undoLog = new IntIntMap();
+        else _undoLog.clear();
+        _logging = true;
+	}
+
+	/**
+	 * Restores every cell written since {@link #startUndoLog()} and closes the log.
+	 * The restores go through the normal writes, so the cached search tables and the hashes follow them.
+	 * @return the number of restored cells.
+	 * @throws RuntimeException if no undo log is open.
+	 */
+	public int undo() {
+        if (!_logging)
+            throw new RuntimeException("common.Map undo error: no undo log is open");
+        _logging = false;
+        IntIntMap log = _undoLog;
+        int n = log.size();
+        for (int i = 0; i < n; i++) {
+            write(log.keyAt(i), log.valueAt(i));
+        }
+        log.clear();
+        return n;
+	}
+
+	/**
+	 * Closes the undo log and keeps the changes made since {@link #startUndoLog()} (does nothing if no log is open).
+	 */
+	public void discardUndoLog() {
+        _logging = false;
+        if (_undoLog != null) _undoLog.clear();
+	}
+
+	/**
+	 * @return true iff an undo log is open (see {@link #startUndoLog()}).
+	 */
+	public boolean isLogging() {
+        return _logging;
+	}
+
+	/**
+	 * Returns a read only view of this map without copying anything. The view follows the later changes of this map,
+	 * and every method of it that would modify the map throws; use {@link ReadOnlyMap#snapshot()} for a stable copy.
+	 * @return a read only view of this map.
+	 */
+	public ReadOnlyMap readOnly() {
+        return new ReadOnlyMap(this);
 	}
 
 	@Override
 	/////// add your code below ///////
 	public int getWidth() {
-        return (_map == null || _map.length == 0) ? 0:_map.length ;
+        return _w;
     }
 
 	@Override
 	/////// add your code below ///////
 	public int getHeight() {
-        return (this._map == null || this._map.length == 0 || this._map[0] == null) ? 0 : this._map[0].length;
+        return _h;
     }
 
 	@Override
 	/////// add your code below ///////
 	public int getPixel(int x, int y) {
-        if (x < 0 || x >= getWidth() || y < 0 || y >= getHeight())
+        if (x < 0 || x >= _w || y < 0 || y >= _h)
             throw new RuntimeException("common.Map2D getPixel error: out of bounds");
-        return _map[x][y];
+        return _data[x * _h + y];
     }
 
 	@Override
@@ -136,8 +407,8 @@ public class Map implements Map2D {
 	@Override
 	/////// add your code below ///////
 	public void setPixel(int x, int y, int v) {
-        if (x >= 0 && x < getWidth() && y >= 0 && y < getHeight())
-            this._map[x][y] = v;
+        if (x >= 0 && x < _w && y >= 0 && y < _h)
+            write(x * _h + y, v);
     }
 
 	@Override
@@ -148,6 +419,117 @@ public class Map implements Map2D {
         this.setPixel(p.getX(), p.getY(), v);
 	}
 
+    ////////////////////// Raw Index Access ///////////////////////
+
+	/**
+	 * @return the number of cells in this map (getWidth()*getHeight()).
+	 */
+	public int size() {
+        return _data.length;
+    }
+
+	/**
+	 * Computes the flat index of (x,y), no bounds check is done.
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return x*getHeight()+y
+	 */
+	public int index(int x, int y) {
+        return x * _h + y;
+    }
+
+	/**
+	 * @param index a flat cell index.
+	 * @return the x coordinate of the cell.
+	 */
+	public int indexX(int index) {
+        return index / _h;
+    }
+
+	/**
+	 * @param index a flat cell index.
+	 * @return the y coordinate of the cell.
+	 */
+	public int indexY(int index) {
+        return index % _h;
+    }
+
+	/**
+	 * Raw read access by flat index, bypassing the coordinate bounds check.
+	 * @param index a flat cell index in [0,size()).
+	 * @return the value of the cell.
+	 */
+	public int getCell(int index) {
+        return _data[index];
+    }
+
+	/**
+	 * Raw write access by flat index, bypassing the coordinate bounds check.
+	 * @param index a flat cell index in [0,size()).
+	 * @param v the new value of the cell.
+	 */
+	public void setCell(int index, int v) {
+        write(index, v);
+    }
+
+	/**
+	 * Returns the shared (flyweight) Index2D of a cell of this map, see {@link Index2D#of(int, int)}.
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return an immutable Index2D equal to (x,y).
+	 */
+	public Index2D pixel(int x, int y) {
+        if (!_interned) internPixels();
+        return Index2D.of(x, y);
+    }
+
+	/**
+	 * @param index a flat cell index.
+	 * @return the shared (flyweight) Index2D of the cell.
+	 */
+	public Index2D pixel(int index) {
+        if (!_interned) internPixels();
+        return Index2D.of(indexX(index), indexY(index));
+    }
+
+	/**
+	 * Returns the adjacency table of the walkable cells of this map, building it on first use.
+	 * The table is cached and rebuilt only after a cell turns into, or stops being, an obstacle of
+	 * that color; while it is cached shortestPath and allDistance with the same obsColor and cyclic flag
+	 * walk it instead of testing the neighbours of every cell.
+	 * Only one table is cached, asking for another obsColor or cyclic flag replaces it.
+	 * @param obsColor the color which is addressed as an obstacle.
+	 * @param cyclic whether the neighbours wrap around the map borders.
+	 * @return the (shared, read only) adjacency table.
+	 */
+	public GridGraph graph(int obsColor, boolean cyclic) {
+        GridGraph g = cachedGraph(obsColor, cyclic);
+        if (g == null) {
+            g = new GridGraph(this, obsColor, cyclic);
+            _graph = g;
+        }
+        return g;
+    }
+
+	/**
+	 * Returns the connected components of the walkable cells of this map, labeling them on first use.
+	 * The labels are cached and follow every later setPixel / setCell incrementally, while they are cached
+	 * the path searches with the same obsColor and cyclic flag answer an unreachable target in O(1).
+	 * Only one labelling is cached, asking for another obsColor or cyclic flag replaces it.
+	 * @param obsColor the color which is addressed as an obstacle.
+	 * @param cyclic whether the cells wrap around the map borders.
+	 * @return the (shared) component labels, read only for the callers.
+	 */
+	public Components components(int obsColor, boolean cyclic) {
+        Components c = _components;
+        if (c == null || !c.matches(_w, _h, obsColor, cyclic)) {
+            c = new Components(this, obsColor, cyclic);
+            _components = c;
+        }
+        return c;
+    }
+
+
 	@Override
 	/** 
 	 * Fills this map with the new color (new_v) starting from p.
@@ -158,49 +540,70 @@ public class Map implements Map2D {
 		/////// add your code below ///////
 
         // get details
-        int width = getWidth();
         int height = getHeight();
+        int start = index(xy.getX(), xy.getY());
         int oldColor = getPixel(xy.getX(), xy.getY());
 
         // if the color is already the new color, no need to fill
         if (oldColor == new_v)
             return ans;
+        checkNotLogging("fill");
+        dropCaches(oldColor, new_v);
+        own();
+
+        // scanline fill: every seed is grown into a whole vertical span (contiguous in _data),
+        // painted cells stop matching oldColor so no visited set is needed
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = start;
+        boolean cyclic = this._cyclicFlag;
+
+        while (top > 0) {
+            int c = stack[--top];
+            if (_data[c] != oldColor) continue;
+            int x = c / height;
+            int base = x * height;
+
+            // grow the span down (y-1) and up (y+1), wrapping around if cyclic
+            int lo = c - base, len = 1;
+            while (len < height) {
+                int y = lo > 0 ? lo - 1 : (cyclic ? height - 1 : -1);
+                if (y < 0 || _data[base + y] != oldColor) break;
+                lo = y;
+                len++;
+            }
+            int hi = c - base;
+            while (len < height) {
+                int y = hi < height - 1 ? hi + 1 : (cyclic ? 0 : -1);
+                if (y < 0 || _data[base + y] != oldColor) break;
+                hi = y;
+                len++;
+            }
 
-        Queue<Pixel2D> q = new LinkedList<>();
-
-        // for tracking visited pixels
-        boolean[][] visited = new boolean[width][height];
-
-        // add first pixel to queue and to visited list
-        q.add(xy);
-        visited[xy.getX()][xy.getY()] = true;
-
-        // right, left, down, up
-        int[] dx = { 1, -1, 0, 0 };
-        int[] dy = { 0, 0, 1, -1 };
-
-        while (!q.isEmpty()) {
-            // return and remove the head of the queue
-            Pixel2D curr = q.poll();
-
-            // paint with color the current pixel and increment count
-            setPixel(curr.getX(), curr.getY(), new_v);
-            ans++;
-
-            // check the four near neighbors
-            for (int i = 0; i < 4; i++) {
-                Pixel2D next = getNextPixel(curr, dx[i], dy[i], width, height, this._cyclicFlag);
-
-                if (next != null) {
-                    int nx = next.getX();
-                    int ny = next.getY();
-
-                    // check if the neighbor has the old color and hasn't been visited
-                    if (!visited[nx][ny] && getPixel(nx, ny) == oldColor) {
-
-                        // add pixel to queue and turn visited to true
-                        visited[nx][ny] = true;
-                        q.add(next);
+            // paint the span and count it
+            for (int i = 0, y = lo; i < len; i++, y = (y + 1 == height ? 0 : y + 1)) {
+                _data[base + y] = new_v;
+            }
+            ans += len;
+
+            // seed every run of oldColor next to the span in the left and right columns
+            for (int side = -1; side <= 1; side += 2) {
+                int nx = x + side;
+                if (nx < 0 || nx >= _w) {
+                    if (!cyclic) continue;
+                    nx = (nx + _w) % _w;
+                }
+                int nb = nx * height;
+                boolean inRun = false;
+                for (int i = 0, y = lo; i < len; i++, y = (y + 1 == height ? 0 : y + 1)) {
+                    if (_data[nb + y] == oldColor) {
+                        if (!inRun) {
+                            if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                            stack[top++] = nb + y;
+                            inRun = true;
+                        }
+                    } else {
+                        inRun = false;
                     }
                 }
             }
@@ -209,6 +612,54 @@ public class Map implements Map2D {
 		return ans;
 	}
 
+	/**
+	 * Fills the connected component of p with the new color, like {@link #fill(Pixel2D, int)}, using all the cores.
+	 * The map is split into strips of columns which are labeled in parallel (union find), the labels are merged
+	 * at the seams between the strips (and across the borders if the map is cyclic), and the strips are painted in parallel.
+	 * The work is proportional to the whole map, so it pays off for huge regions (e.g. recoloring imported bitmaps);
+	 * fill is cheaper for small ones.
+	 * @param xy the starting pixel.
+	 * @param new_v the new "color".
+	 * @return the number of "filled" pixels.
+	 */
+	public int fillParallel(Pixel2D xy, int new_v) {
+        int start = index(xy.getX(), xy.getY());
+        int oldColor = getPixel(xy.getX(), xy.getY());
+        if (oldColor == new_v) return 0;
+        checkNotLogging("fillParallel");
+        boolean cyclic = this._cyclicFlag;
+
+        int parts = Math.min(_w, Runtime.getRuntime().availableProcessors() * 4);
+        int strip = (_w + parts - 1) / parts;
+        int tiles = (_w + strip - 1) / strip;
+
+        // label every strip on its own, the unions touch only the strip's cells
+        UnionFind uf = new UnionFind(size());
+        IntStream.range(0, tiles).parallel()
+                .forEach(t -> labelStrip(uf, oldColor, t * strip, Math.min(_w, (t + 1) * strip), cyclic));
+
+        // merge the labels across the seams
+        for (int t = 1; t < tiles; t++) {
+            joinColumns(uf, oldColor, t * strip - 1, t * strip);
+        }
+        if (cyclic && _w > 1) joinColumns(uf, oldColor, _w - 1, 0);
+
+        int root = uf.find(start);
+        dropCaches(oldColor, new_v);
+        own();
+        return IntStream.range(0, tiles).parallel().map(t -> {
+            int count = 0;
+            for (int c = t * strip * _h, end = Math.min(_w, (t + 1) * strip) * _h; c < end; c++) {
+                if (_data[c] == oldColor && uf.root(c) == root) {
+                    _data[c] = new_v;
+                    count++;
+                }
+            }
+            return count;
+        }).sum();
+	}
+
+
 	@Override
 	/**
 	 * BFS like shortest the computation based on iterative raster implementation of BFS, see:
@@ -233,44 +684,198 @@ public class Map implements Map2D {
             return new Pixel2D[] { p1 };
         }
 
-        Queue<Pixel2D> q = new LinkedList<>();
-        q.add(p1);
+        // BFS over flat cell indices, the search memory is owned by this thread and reused
+        BfsWorkspace ws = BfsWorkspace.acquire(width, height, cyclic);
+        int src = index(p1.getX(), p1.getY());
+        int dst = index(p2.getX(), p2.getY());
+        if (bfs(ws, src, dst, false, 0, obsColor, cyclic) != BfsWorkspace.NONE) {
+            ans = reconstructPath(ws, p1, src, dst);
+        }
+		///////////////////////////////////
+		return ans;
+	}
 
-        // parent[x][y] stores the pixel we came from to reach (x, y)
-        Pixel2D[][] parent = new Pixel2D[width][height];
+	/**
+	 * Computes the shortest valid path between p1 and p2 (see {@link Map2D#shortestPath(Pixel2D, Pixel2D, int, boolean)})
+	 * with a selectable search strategy. A_STAR, BIDIRECTIONAL and JUMP_POINT return a path of the same (shortest) length as BFS,
+	 * but expand far fewer cells for distant targets; when several shortest paths exist they may pick another one.
+	 * @param p1 first coordinate (start point).
+	 * @param p2 second coordinate (end point).
+	 * @param obsColor the color which is addressed as an obstacle.
+	 * @param cyclic whether the path may wrap around the map borders.
+	 * @param mode the search strategy, null means BFS.
+	 * @return the shortest path as an array of consecutive pixels, if none - returns null.
+	 */
+	public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic, SearchMode mode) {
+        if (mode == null || mode == SearchMode.BFS) return shortestPath(p1, p2, obsColor, cyclic);
+        if (p1 == null || p2 == null) return null;
 
-        // mark start as visited
-        parent[p1.getX()][p1.getY()] = p1;
+        // check if start or end are valid (not obstacles)
+        if (getPixel(p1) == obsColor || getPixel(p2) == obsColor) return null;
+        if (p1.getX() == p2.getX() && p1.getY() == p2.getY()) return new Pixel2D[] { p1 };
+
+        int src = index(p1.getX(), p1.getY());
+        int dst = index(p2.getX(), p2.getY());
+        if (unreachable(src, dst, obsColor, cyclic)) return null;
+        if (mode == SearchMode.JUMP_POINT) {
+            int[] cells = JumpPointSearch.get().path(_data, _w, _h, src, dst, obsColor, cyclic);
+            if (cells == null) return null;
+            Pixel2D[] path = new Pixel2D[cells.length];
+            path[0] = p1;
+            for (int i = 1; i < cells.length; i++) {
+                path[i] = pixel(cells[i]);
+            }
+            return path;
+        }
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        if (mode == SearchMode.A_STAR) {
+            return GridSearch.aStar(ws, _data, null, cachedGraph(obsColor, cyclic), _w, _h, src, dst, obsColor, cyclic)
+                    ? reconstructPath(ws, p1, src, dst) : null;
+        }
+        if (!_interned) internPixels();
+        return GridSearch.bidirectional(ws, _data, null, cachedGraph(obsColor, cyclic), _h, p1, src, dst, obsColor);
+	}
 
-        int[] dx = { 1, -1, 0, 0 };
-        int[] dy = { 0, 0, 1, -1 };
+	/**
+	 * Computes the shortest valid path from start to the closest pixel (other than start) with the given color.
+	 * This is a single BFS which stops as soon as the first such pixel is dequeued, so a close target
+	 * costs only the few cells around start, not a scan of the whole map.
+	 * @param start the start point.
+	 * @param color the color of the wanted target.
+	 * @param obsColor the color which is addressed as an obstacle.
+	 * @param cyclic whether the path may wrap around the map borders.
+	 * @return the path from start to the closest target (the target is its last element), or null if none is reachable.
+	 */
+	public Pixel2D[] nearestPath(Pixel2D start, int color, int obsColor, boolean cyclic) {
+        if (start == null || color == obsColor || getPixel(start) == obsColor) return null;
 
-        while (!q.isEmpty()) {
-            Pixel2D curr = q.poll();
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        int src = index(start.getX(), start.getY());
+        int target = bfs(ws, src, BfsWorkspace.NONE, true, color, obsColor, cyclic);
+        return target == BfsWorkspace.NONE ? null : reconstructPath(ws, start, src, target);
+	}
 
-            // if we reached the target, stop and reconstruct the path
-            if (curr.equals(p2)) {
-                ans = reconstructPath(p1, p2, parent);
-                break;
-            }
+	/**
+	 * Computes the shortest valid path between p1 and p2 (same path as {@link #shortestPath(Pixel2D, Pixel2D, int, boolean)})
+	 * as flat cell indices, written into a caller owned buffer.
+	 * @param p1 first coordinate (start point).
+	 * @param p2 second coordinate (end point).
+	 * @param obsColor the color which is addressed as an obstacle.
+	 * @param cyclic whether the path may wrap around the map borders.
+	 * @param out the buffer to fill, it is emptied when there is no path.
+	 * @return true iff a path was found.
+	 */
+	public boolean shortestPathCells(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic, IntPath out) {
+        out.clear();
+        if (p1 == null || p2 == null) return false;
+        if (getPixel(p1) == obsColor || getPixel(p2) == obsColor) return false;
+
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        int src = index(p1.getX(), p1.getY());
+        int dst = index(p2.getX(), p2.getY());
+        if (bfs(ws, src, dst, false, 0, obsColor, cyclic) == BfsWorkspace.NONE) return false;
+
+        // count the cells, then write them from the end back to the start
+        int[] parent = ws.parent;
+        int len = 1;
+        for (int c = dst; c != src; c = parent[c]) {
+            len++;
+        }
+        out.reset(len, _h);
+        int c = dst;
+        for (int i = len - 1; i >= 0; i--) {
+            out.set(i, c);
+            c = parent[c];
+        }
+        return true;
+	}
 
-            for (int i = 0; i < 4; i++) {
-                Pixel2D next = getNextPixel(curr, dx[i], dy[i], width, height, cyclic);
+	/**
+	 * Computes the shortest valid path between p1 and p2 as flat cell indices.
+	 * @param p1 first coordinate (start point).
+	 * @param p2 second coordinate (end point).
+	 * @param obsColor the color which is addressed as an obstacle.
+	 * @param cyclic whether the path may wrap around the map borders.
+	 * @return the cells of the path from p1 to p2, if none - returns null.
+	 */
+	public int[] shortestPathCells(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        IntPath path = new IntPath();
+        return shortestPathCells(p1, p2, obsColor, cyclic, path) ? path.toArray() : null;
+	}
 
-                if (next != null) {
-                    int nx = next.getX();
-                    int ny = next.getY();
+	/**
+	 * Computes only the first step of a shortest valid path from p1 to p2, without building the path
+	 * (the step is always shortestPath(p1,p2,..)[1]).
+	 * @param p1 the start point.
+	 * @param p2 the target point.
+	 * @param obsColor the color which is addressed as an obstacle.
+	 * @param cyclic whether the path may wrap around the map borders.
+	 * @return the flat index of the neighbour of p1 to move to, or -1 if p2 is not reachable or p1 equals p2.
+	 */
+	public int firstStep(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        if (p1 == null || p2 == null) return BfsWorkspace.NONE;
+        if (getPixel(p1) == obsColor || getPixel(p2) == obsColor) return BfsWorkspace.NONE;
 
-                    // check if the neighbor is not an obstacle and hasn't been visited
-                    if (parent[nx][ny] == null && getPixel(nx, ny) != obsColor) {
-                        parent[nx][ny] = curr;
-                        q.add(next);
-                    }
-                }
-            }
-        }
-		///////////////////////////////////
-		return ans;
+        int src = index(p1.getX(), p1.getY());
+        int dst = index(p2.getX(), p2.getY());
+        if (src == dst) return BfsWorkspace.NONE;
+
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        if (bfs(ws, src, dst, false, 0, obsColor, cyclic) == BfsWorkspace.NONE) return BfsWorkspace.NONE;
+        return GridSearch.firstStep(ws, src, dst);
+	}
+
+	/**
+	 * Computes the cheapest path between two pixels over a cost grid: a step into the cell c costs cost[c].
+	 * With costs of 1 everywhere this is a shortest path; adding a penalty near a danger (e.g. cost = 1 + penalty
+	 * by the distance from the nearest ghost) lets a path trade length against risk instead of being walled off.
+	 * It runs a 0-1 BFS when all the costs are 0 or 1, otherwise Dijkstra with a bucket queue (Dial's algorithm)
+	 * for costs up to 4096 and with a binary heap above, all over primitive arrays that are reused from one search
+	 * to the next. The path costs are ints, so the largest cost times (getWidth()*getHeight() - 1) must stay below
+	 * Integer.MAX_VALUE: no path can then overflow, whatever the costs.
+	 * @param p1 the first pixel.
+	 * @param p2 the second pixel.
+	 * @param obsColor the color representing obstacles.
+	 * @param cyclic whether the path may wrap around the map borders.
+	 * @param cost the cost of entering every cell, by flat index (getWidth()*getHeight() values, none negative).
+	 * @return the cheapest path (p1 first, p2 last), or null if there is none.
+	 * @throws RuntimeException if the cost grid does not fit the map, holds a negative cost or a cost so large
+	 * that a path cost could overflow.
+	 */
+	public Pixel2D[] cheapestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic, int[] cost) {
+        int maxCost = maxCost(cost, "cheapestPath");
+        if (p1 == null || p2 == null) return null;
+        if (getPixel(p1) == obsColor || getPixel(p2) == obsColor) return null;
+        if (p1.getX() == p2.getX() && p1.getY() == p2.getY()) return new Pixel2D[] { p1 };
+
+        int src = index(p1.getX(), p1.getY());
+        int dst = index(p2.getX(), p2.getY());
+        if (unreachable(src, dst, obsColor, cyclic)) return null;
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        int end = WeightedSearch.get().search(ws, _data, src, dst, false, 0, obsColor, cost, maxCost);
+        return end == BfsWorkspace.NONE ? null : reconstructPath(ws, p1, src, dst);
+	}
+
+	/**
+	 * Computes the cheapest path from a pixel to a cell of the given color over a cost grid
+	 * (see {@link #cheapestPath(Pixel2D, Pixel2D, int, boolean, int[])}), the weighted {@link #nearestPath}.
+	 * @param start the starting pixel.
+	 * @param color the color to reach (the start itself does not count).
+	 * @param obsColor the color representing obstacles.
+	 * @param cyclic whether the path may wrap around the map borders.
+	 * @param cost the cost of entering every cell, by flat index (bounded as in cheapestPath).
+	 * @return the cheapest path (start first), or null if no cell of that color is reachable.
+	 * @throws RuntimeException if the cost grid does not fit the map, holds a negative cost or a cost so large
+	 * that a path cost could overflow.
+	 */
+	public Pixel2D[] cheapestNearestPath(Pixel2D start, int color, int obsColor, boolean cyclic, int[] cost) {
+        int maxCost = maxCost(cost, "cheapestNearestPath");
+        if (start == null || color == obsColor || getPixel(start) == obsColor) return null;
+
+        int src = index(start.getX(), start.getY());
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        int target = WeightedSearch.get().search(ws, _data, src, BfsWorkspace.NONE, true, color, obsColor, cost, maxCost);
+        return target == BfsWorkspace.NONE ? null : reconstructPath(ws, start, src, target);
 	}
 
 	@Override
@@ -309,39 +914,51 @@ public class Map implements Map2D {
             return ans;
         }
 
-        // BFS queue and visited tracking
-        Queue<Pixel2D> q = new LinkedList<>();
-        boolean[][] visited = new boolean[width][height];
-
-        // start point has distance 0
-        q.add(start);
-        ans.setPixel(start, 0);
-        visited[start.getX()][start.getY()] = true;
+        // large maps expand whole words of cells per step
+        if (size() >= BITSET_MIN_CELLS) {
+            BitsetBfs.distances(walkableBits(obsColor), width, height, index(start.getX(), start.getY()), cyclic, ((Map) ans)._data);
+            return ans;
+        }
 
-        // directions: right, left, down, up
-        int[] dx = { 1, -1, 0, 0 };
-        int[] dy = { 0, 0, 1, -1 };
+        // BFS over flat cell indices: the result array doubles as the visited set (-1 = not reached yet)
+        BfsWorkspace ws = BfsWorkspace.acquire(width, height, cyclic);
+        int[] dist = ((Map) ans)._data;
+        int[] queue = ws.queue;
+        int[] next = ws.next;
+        int head = 0, tail = 0;
 
-        while (!q.isEmpty()) {
-            // get current pixel and its distance
-            Pixel2D curr = q.poll();
-            int currDistance = ans.getPixel(curr);
+        // start point has distance 0
+        int src = index(start.getX(), start.getY());
+        dist[src] = 0;
+        queue[tail++] = src;
+
+        GridGraph graph = cachedGraph(obsColor, cyclic);
+        while (head < tail) {
+            int curr = queue[head++];
+            int currDistance = dist[curr];
+
+            if (graph != null) {
+                // walk the cached adjacency list, it holds walkable neighbors only
+                int[] adj = graph.neighbours();
+                for (int k = graph.offsets()[curr], end = graph.offsets()[curr + 1]; k < end; k++) {
+                    int n = adj[k];
+                    if (dist[n] == -1) {
+                        dist[n] = currDistance + 1;
+                        queue[tail++] = n;
+                    }
+                }
+                continue;
+            }
 
             // check all four neighbors
+            ws.neighbours(curr, next);
             for (int i = 0; i < 4; i++) {
-                Pixel2D next = getNextPixel(curr, dx[i], dy[i], width, height, cyclic);
-
-                if (next != null) {
-                    int nx = next.getX();
-                    int ny = next.getY();
-
-                    // if neighbor is not visited and not an obstacle
-                    if (!visited[nx][ny] && getPixel(nx, ny) != obsColor) {
-                        // set distance and mark as visited
-                        ans.setPixel(nx, ny, currDistance + 1);
-                        visited[nx][ny] = true;
-                        q.add(next);
-                    }
+                int n = next[i];
+
+                // if neighbor is not visited and not an obstacle
+                if (n != BfsWorkspace.NONE && dist[n] == -1 && _data[n] != obsColor) {
+                    dist[n] = currDistance + 1;
+                    queue[tail++] = n;
                 }
             }
         }
@@ -349,67 +966,340 @@ public class Map implements Map2D {
 		return ans;
 	}
 
+	/**
+	 * Computes, in a single BFS from all the sources at once, the distance of every cell from its nearest source
+	 * and which source that is (the multi source version of {@link #allDistance(Pixel2D, int, boolean)}).
+	 * Ties go to the source listed first. Sources that are obstacles or outside the map are ignored.
+	 * @param sources the source pixels (e.g. the ghosts).
+	 * @param obsColor the color representing obstacles.
+	 * @param cyclic whether the distances wrap around the map borders.
+	 * @param owner if not null (and of the same size), receives for every cell the index in sources of its nearest source, -1 if none.
+	 * @return a new map with the distance to the nearest source, -1 for unreachable cells.
+	 */
+	public Map2D multiSourceDistance(Pixel2D[] sources, int obsColor, boolean cyclic, Map2D owner) {
+        Map ans = new Map(_w, _h, -1);
+        if (owner != null) {
+            if (owner.getWidth() != _w || owner.getHeight() != _h)
+                throw new RuntimeException("common.Map2D multiSourceDistance error: owner map has a different size");
+        }
+        // a common.Map owner is reset in place, so a caller can pass the same one every tick
+        int[] own = owner instanceof Map ? ((Map) owner).cells() : null;
+        if (own != null) Arrays.fill(own, -1);
+        else if (owner != null) owner.init(_w, _h, -1);
+        if (sources == null) return ans;
+
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        int[] dist = ans._data;
+        int[] from = ws.parent;
+        int[] queue = ws.queue;
+        int[] next = ws.next;
+        int head = 0, tail = 0;
+
+        // all the sources start in the queue at distance 0, from[] carries the source index down the BFS
+        for (int i = 0; i < sources.length; i++) {
+            Pixel2D p = sources[i];
+            if (!isInside(p)) continue;
+            int c = index(p.getX(), p.getY());
+            if (_data[c] == obsColor || dist[c] != -1) continue;
+            dist[c] = 0;
+            from[c] = i;
+            queue[tail++] = c;
+        }
+
+        GridGraph graph = cachedGraph(obsColor, cyclic);
+        while (head < tail) {
+            int curr = queue[head++];
+            int d = dist[curr] + 1;
+            int count = GridSearch.walkableNeighbours(ws, _data, null, graph, curr, obsColor, next);
+            for (int i = 0; i < count; i++) {
+                int n = next[i];
+                if (dist[n] == -1) {
+                    dist[n] = d;
+                    from[n] = from[curr];
+                    queue[tail++] = n;
+                }
+            }
+        }
+
+        // write the owners of the reached cells
+        if (owner != null) {
+            for (int i = 0; i < tail; i++) {
+                int c = queue[i];
+                if (own != null) own[c] = from[c];
+                else owner.setPixel(c / _h, c % _h, from[c]);
+            }
+        }
+        return ans;
+	}
+
+	/**
+	 * Computes a separate distance map for every source, running the searches in parallel
+	 * (one BFS per source, e.g. one per ghost).
+	 * @param sources the source pixels.
+	 * @param obsColor the color representing obstacles.
+	 * @param cyclic whether the distances wrap around the map borders.
+	 * @return the distance map of every source, in the order of sources.
+	 */
+	public Map2D[] allDistances(Pixel2D[] sources, int obsColor, boolean cyclic) {
+        Map2D[] ans = new Map2D[sources.length];
+        // build the adjacency table once, all the searches then read it concurrently
+        graph(obsColor, cyclic);
+        IntStream.range(0, sources.length).parallel()
+                .forEach(i -> ans[i] = allDistance(sources[i], obsColor, cyclic));
+        return ans;
+	}
+
+	/**
+	 * Computes the same distance map as {@link #allDistance(Pixel2D, int, boolean)} using the bitset BFS
+	 * (the walls and the frontier are long[] bitsets, a BFS level is expanded 64 cells at a time),
+	 * whatever the size of the map. allDistance switches to it by itself from {@link #BITSET_MIN_CELLS} cells on.
+	 * @param start the source (starting) point.
+	 * @param obsColor the color representing obstacles.
+	 * @param cyclic whether the distances wrap around the map borders.
+	 * @return a new map with all the shortest path distances from the starting point, -1 for unreachable cells.
+	 */
+	public Map2D allDistanceBitset(Pixel2D start, int obsColor, boolean cyclic) {
+        Map ans = new Map(_w, _h, -1);
+        if (getPixel(start.getX(), start.getY()) == obsColor) return ans;
+        BitsetBfs.distances(walkableBits(obsColor), _w, _h, index(start.getX(), start.getY()), cyclic, ans._data);
+        return ans;
+	}
+
+    ////////////////////// Package Methods ///////////////////////
+
+    /**
+     * Gives the searches of this package direct access to the cells (no copy).
+     * Writes through the array bypass the invalidation of the cached search tables, so they are dropped here;
+     * it is meant for result maps (distance maps) that are not searched themselves.
+     *
+     * @return the backing array of the map.
+     */
+    int[] cells() {
+        own();
+        _graph = null;
+        _free = null;
+        _components = null;
+        _hashCount = 0;
+        _boardHashed = false;
+        return _data;
+    }
+
+    /**
+     * @param obsColor The obstacle color of a search.
+     * @param cyclic   The cyclic flag of a search.
+     * @return the cached component labels if they fit the search (none are built), otherwise null.
+     */
+    Components cachedComponents(int obsColor, boolean cyclic) {
+        Components c = _components;
+        return c != null && c.matches(_w, _h, obsColor, cyclic) ? c : null;
+    }
+
     ////////////////////// Private Methods ///////////////////////
 
     /**
-     * Computes the next neighbor pixel based on the given direction (dx, dy). If
-     * the map is cyclic, it wraps around the boundaries using modulo. If not
-     * cyclic, it returns null if the neighbor is outside the map boundaries. *
+     * @return true iff cached component labels prove there is no path between the two cells.
+     */
+    private boolean unreachable(int src, int dst, int obsColor, boolean cyclic) {
+        Components c = cachedComponents(obsColor, cyclic);
+        return c != null && !c.connected(src, dst);
+    }
+
+    /**
+     * Drops the cached search tables whose obstacle status of the repainted cells changes,
+     * for bulk writes to _data that do not go through write().
      *
-     * @param curr   The current pixel.
-     * @param dx     The change in x direction.
-     * @param dy     The change in y direction.
-     * @param width  The map width.
-     * @param height The map height.
-     * @param cyclic Whether the map is cyclic.
-     * @return A new common.Pixel2D representing the neighbor, or null if out of bounds.
+     * @param oldColor The color being replaced.
+     * @param newColor The new color.
      */
-    private Pixel2D getNextPixel(Pixel2D curr, int dx, int dy, int width, int height, boolean cyclic) {
+    private void dropCaches(int oldColor, int newColor) {
+        GridGraph g = _graph;
+        if (g != null && (oldColor == g.getObsColor()) != (newColor == g.getObsColor())) _graph = null;
+        if (_free != null && (oldColor == _freeColor) != (newColor == _freeColor)) _free = null;
+        Components comps = _components;
+        if (comps != null && (oldColor == comps.getObsColor()) != (newColor == comps.getObsColor())) _components = null;
+        _hashCount = 0;
+        _boardHashed = false;
+    }
 
-        // get the next pixel
-        int nx = curr.getX() + dx;
-        int ny = curr.getY() + dy;
+    /**
+     * Unions the 4-connected cells of the given color in the columns [x0,x1) (a raster scan,
+     * each cell is joined with the cells below and to the left of it, and across the y border if cyclic).
+     */
+    private void labelStrip(UnionFind uf, int color, int x0, int x1, boolean cyclic) {
+        for (int x = x0; x < x1; x++) {
+            int base = x * _h;
+            for (int y = 0; y < _h; y++) {
+                int c = base + y;
+                if (_data[c] != color) continue;
+                if (y > 0 && _data[c - 1] == color) uf.union(c, c - 1);
+                if (x > x0 && _data[c - _h] == color) uf.union(c, c - _h);
+            }
+            if (cyclic && _h > 1 && _data[base] == color && _data[base + _h - 1] == color) {
+                uf.union(base, base + _h - 1);
+            }
+        }
+    }
 
-        if (cyclic) {
-            nx = (nx + width) % width;
-            ny = (ny + height) % height;
+    /**
+     * Unions the cells of the given color that face each other in columns a and b.
+     */
+    private void joinColumns(UnionFind uf, int color, int a, int b) {
+        int ba = a * _h, bb = b * _h;
+        for (int y = 0; y < _h; y++) {
+            if (_data[ba + y] == color && _data[bb + y] == color) uf.union(ba + y, bb + y);
         }
-        else {
-            // boundary check
-            if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
-                return null;
-            }
+    }
+
+    /**
+     * @param obsColor An obstacle color.
+     * @return the walkable bitset of the map for that color, built on first use and then kept up to date by write().
+     */
+    private long[] walkableBits(int obsColor) {
+        if (_free == null || _freeColor != obsColor) {
+            _free = BitsetBfs.walkable(_data, _w, _h, obsColor);
+            _freeColor = obsColor;
         }
-        return new Index2D(nx, ny);
+        return _free;
     }
 
     /**
-     * Reconstructs the path from p2 back to p1 using the parent map.
+     * Writes a cell, dropping the cached adjacency table if the cell's obstacle status changed,
+     * updating the board hashes and recording the old value in the open undo log.
      *
-     * @param p1     The starting pixel.
-     * @param p2     The ending pixel.
-     * @param parent The parent map.
+     * @param index The flat cell index.
+     * @param v     The new value.
+     */
+    private void write(int index, int v) {
+        own();
+        GridGraph g = _graph;
+        if (g != null && (_data[index] == g.getObsColor()) != (v == g.getObsColor())) {
+            _graph = null;
+        }
+        long[] free = _free;
+        if (free != null && (_data[index] == _freeColor) != (v == _freeColor)) {
+            int x = index / _h, y = index - x * _h;
+            free[x * BitsetBfs.wordsPerColumn(_h) + (y >>> 6)] ^= 1L << y;
+        }
+        Components comps = _components;
+        if (comps != null && (_data[index] == comps.getObsColor()) != (v == comps.getObsColor())) {
+            comps.setObstacle(index, v == comps.getObsColor());
+        }
+        int old = _data[index];
+        if (_logging) _undoLog.putIfAbsent(index, old);
+        if (_hashCount > 0 && old != v) {
+            long key = Zobrist.cell(index);
+            for (int i = 0; i < _hashCount; i++) {
+                if (_hashColors[i] == old || _hashColors[i] == v) _hashes[i] ^= key;
+            }
+        }
+        if (_boardHashed && old != v) {
+            _boardHash ^= Zobrist.cell(index, old) ^ Zobrist.cell(index, v);
+        }
+        _data[index] = v;
+    }
+
+    /**
+     * Validates a cost grid of the weighted searches: no negative cost, and no path cost (at most
+     * size - 1 steps of the largest cost) past Integer.MAX_VALUE.
      *
-     * @return An array of common.Pixel2D representing the path from start to end.
+     * @return the largest cost.
      */
-    private Pixel2D[] reconstructPath(Pixel2D p1, Pixel2D p2, Pixel2D[][] parent) {
-        LinkedList<Pixel2D> pathList = new LinkedList<>();
-        Pixel2D curr = p2;
+    private int maxCost(int[] cost, String method) {
+        if (cost == null || cost.length != _data.length)
+            throw new RuntimeException("common.Map2D " + method + " error: the cost grid does not fit " + _w + "*" + _h);
+        int max = 0;
+        for (int c : cost) {
+            if (c < 0) throw new RuntimeException("common.Map2D " + method + " error: negative cost " + c);
+            if (c > max) max = c;
+        }
+        if ((long) max * (_data.length - 1) >= Integer.MAX_VALUE)
+            throw new RuntimeException("common.Map2D " + method + " error: cost " + max + " can overflow a path cost on "
+                    + _w + "*" + _h);
+        return max;
+    }
 
-        // backtrack from end to start
-        while (curr != null && !curr.equals(p1)) {
+    /**
+     * Interns the shape of this map once (see {@link Index2D#intern(int, int)}), so pixel() only reads the table.
+     */
+    private void internPixels() {
+        Index2D.intern(_w, _h);
+        _interned = true;
+    }
 
-            // add to the front to keep start-to-end order
-            pathList.addFirst(curr);
+    /**
+     * Throws if an undo log is open, for the bulk writes it cannot record.
+     */
+    private void checkNotLogging(String method) {
+        if (_logging)
+            throw new RuntimeException("common.Map " + method + " error: not supported while an undo log is open");
+    }
 
-            // update curr to be his parent
-            curr = parent[curr.getX()][curr.getY()];
+    /**
+     * Takes a private copy of the cells if they are shared with a snapshot, before any write.
+     */
+    private void own() {
+        if (_shared) {
+            _data = _data.clone();
+            _shared = false;
         }
+    }
 
-        // add the start pixel
-        pathList.addFirst(p1);
+    /**
+     * @param obsColor The obstacle color of a search.
+     * @param cyclic   The cyclic flag of a search.
+     * @return the cached adjacency table if it fits the search, otherwise null.
+     */
+    private GridGraph cachedGraph(int obsColor, boolean cyclic) {
+        GridGraph g = _graph;
+        return (g != null && g.matches(_w, _h, obsColor, cyclic)) ? g : null;
+    }
 
-        // convert the list to a fixed-size array
-        return pathList.toArray(new Pixel2D[0]);
+    /**
+     * Validates the dimensions of a new map, the cell count must fit in a single int array.
+     *
+     * @param w The map width.
+     * @param h The map height.
+     */
+    private static void checkDimensions(int w, int h) {
+        if (w <= 0 || h <= 0)
+            throw new RuntimeException("common.Map2D init error: wrong dimensions");
+        if ((long) w * h > Integer.MAX_VALUE - 8)
+            throw new RuntimeException("common.Map2D init error: map too large (" + w + "*" + h + ")");
+    }
+
+    /**
+     * The BFS of {@link GridSearch} over this map's cells, after a cached component labelling had its chance to answer
+     * a hopeless search without a single step.
+     *
+     * @param ws       A workspace acquired for this map's shape.
+     * @param src      The flat index of the start cell (assumed not an obstacle).
+     * @param dst      The flat index of the target cell (ignored when byColor is set).
+     * @param byColor  Whether to stop at the first cell of the given color instead of dst.
+     * @param color    The target color (used only when byColor is set).
+     * @param obsColor The obstacle color.
+     * @param cyclic   Whether the neighbours wrap around the map borders.
+     * @return the reached target cell, or {@link BfsWorkspace#NONE} if there is none.
+     */
+    private int bfs(BfsWorkspace ws, int src, int dst, boolean byColor, int color, int obsColor, boolean cyclic) {
+        Components comps = cachedComponents(obsColor, cyclic);
+        if (comps != null && (byColor ? comps.size(comps.component(src)) <= 1 : !comps.connected(src, dst))) {
+            return BfsWorkspace.NONE;
+        }
+        return GridSearch.bfs(ws, _data, null, cachedGraph(obsColor, cyclic), src, dst, byColor, color, obsColor);
+    }
+
+    /**
+     * Reconstructs the path from dst back to src using the parents recorded by the last search.
+     *
+     * @param ws    The workspace of the search.
+     * @param start The starting pixel (used as the first element of the path).
+     * @param src   The flat index of the start cell.
+     * @param dst   The flat index of the end cell.
+     *
+     * @return An array of common.Pixel2D representing the path from start to end.
+     */
+    private Pixel2D[] reconstructPath(BfsWorkspace ws, Pixel2D start, int src, int dst) {
+        if (!_interned) internPixels();
+        return GridSearch.path(ws, _h, start, src, dst);
     }
 }
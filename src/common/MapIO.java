@@ -0,0 +1,325 @@
+package common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads and writes maps in a compact binary level format, and converts the old Java serialized .bit files.
+ *
+ * A level file is little endian:
+ * <pre>
+ * offset  size  field
+ *  0      4     magic, the bytes "PMBF"
+ *  4      2     version (1)
+ *  6      1     flags, bit 0 = cyclic
+ *  7      1     cell encoding: 0 = RLE, 1 = PACKED
+ *  8      4     width
+ * 12      4     height
+ * 16      4     palette size p
+ * 20      4*p   palette, the distinct cell values in increasing order
+ * ...           the cells as palette indices, in the layout of {@link Map} (cell (x,y) at index x*h+y):
+ *               RLE:    (run length, index) pairs, both unsigned LEB128 varints
+ *               PACKED: ceil(log2(p)) bits per cell, packed from the low bit up in little endian longs
+ * </pre>
+ * The writer picks the smaller encoding. The reader maps the file and writes the cells straight into the
+ * new map's array.
+ */
+public final class MapIO {
+    /** The first 4 bytes of a level file ("PMBF"). */
+    public static final int MAGIC = 0x46424D50;
+    /** The format version written by this class. */
+    public static final int VERSION = 1;
+    /** The longest array (row or column count) accepted in a .bit file. */
+    public static final int MAX_BIT_SIDE = 1 << 14;
+    /** The most bytes read from a .bit file. */
+    public static final long MAX_BIT_BYTES = 64L << 20;
+    private static final int RLE = 0, PACKED = 1;
+    private static final int HEADER_SIZE = 20;
+
+    private MapIO() {
+    }
+
+    /**
+     * Writes a map to a level file (created or overwritten).
+     *
+     * @param file The file.
+     * @param map  The map.
+     */
+    public static void write(Path file, Map2D map) {
+        ByteBuffer buf = encode(map);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("common.MapIO write error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a level file.
+     *
+     * @param file The file.
+     * @return the map, with the cyclic flag of the file.
+     */
+    public static Map read(Path file) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return decode(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        } catch (IOException e) {
+            throw new RuntimeException("common.MapIO read error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Encodes a map in the level format.
+     *
+     * @param map The map.
+     * @return a buffer holding the whole file, positioned at 0.
+     */
+    public static ByteBuffer encode(Map2D map) {
+        int w = map.getWidth(), h = map.getHeight();
+        int n = w * h;
+        int[] cells = new int[n];
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                cells[x * h + y] = map.getPixel(x, y);
+            }
+        }
+
+        // the palette, and every cell replaced by its palette index
+        int[] palette = cells.clone();
+        Arrays.sort(palette);
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || palette[i] != palette[p - 1]) palette[p++] = palette[i];
+        }
+        palette = Arrays.copyOf(palette, p);
+        for (int c = 0; c < n; c++) {
+            cells[c] = Arrays.binarySearch(palette, cells[c]);
+        }
+
+        // the size of both encodings
+        int bits = bitsPerCell(p);
+        long packedSize = ((long) n * bits + 63) / 64 * 8;
+        long rleSize = 0;
+        for (int c = 0; c < n; ) {
+            int run = 1;
+            while (c + run < n && cells[c + run] == cells[c]) run++;
+            rleSize += varintSize(run) + varintSize(cells[c]);
+            c += run;
+        }
+        int encoding = rleSize < packedSize ? RLE : PACKED;
+        long size = HEADER_SIZE + 4L * p + Math.min(rleSize, packedSize);
+        if (size > Integer.MAX_VALUE - 8)
+            throw new RuntimeException("common.MapIO write error: the map is too large for a level file");
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC);
+        buf.putShort((short) VERSION);
+        buf.put((byte) (map.isCyclic() ? 1 : 0));
+        buf.put((byte) encoding);
+        buf.putInt(w);
+        buf.putInt(h);
+        buf.putInt(p);
+        for (int v : palette) {
+            buf.putInt(v);
+        }
+        if (encoding == RLE) {
+            for (int c = 0; c < n; ) {
+                int run = 1;
+                while (c + run < n && cells[c + run] == cells[c]) run++;
+                putVarint(buf, run);
+                putVarint(buf, cells[c]);
+                c += run;
+            }
+        } else if (bits > 0) {
+            LongBuffer words = buf.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            long word = 0;
+            int used = 0;
+            for (int c = 0; c < n; c++) {
+                long v = cells[c];
+                word |= v << used;
+                used += bits;
+                if (used >= 64) {
+                    words.put(word);
+                    used -= 64;
+                    // the high bits of a cell that crossed the word border
+                    word = used == 0 ? 0 : v >>> (bits - used);
+                }
+            }
+            if (used > 0) words.put(word);
+            buf.position(buf.limit());
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Decodes a level file.
+     *
+     * @param buf The whole file, from its current position.
+     * @return the map, with the cyclic flag of the file.
+     */
+    public static Map decode(ByteBuffer buf) {
+        buf = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() < HEADER_SIZE) throw error("truncated header");
+        if (buf.getInt() != MAGIC) throw error("not a level file");
+        int version = buf.getShort();
+        if (version != VERSION) throw error("unsupported version " + version);
+        boolean cyclic = (buf.get() & 1) != 0;
+        int encoding = buf.get();
+        int w = buf.getInt(), h = buf.getInt(), p = buf.getInt();
+        if (w <= 0 || h <= 0 || (long) w * h > Integer.MAX_VALUE - 8) throw error("wrong dimensions " + w + "*" + h);
+        int n = w * h;
+        if (p <= 0 || p > n || buf.remaining() < 4L * p) throw error("bad palette size " + p);
+        int[] palette = new int[p];
+        for (int i = 0; i < p; i++) {
+            palette[i] = buf.getInt();
+        }
+
+        Map map = new Map(w, h, 0);
+        map.setCyclic(cyclic);
+        int[] cells = map.cells();
+        try {
+            if (encoding == RLE) {
+                for (int c = 0; c < n; ) {
+                    int run = getVarint(buf), index = getVarint(buf);
+                    if (run <= 0 || run > n - c || index < 0 || index >= p) throw error("bad run at cell " + c);
+                    Arrays.fill(cells, c, c + run, palette[index]);
+                    c += run;
+                }
+            } else if (encoding == PACKED) {
+                int bits = bitsPerCell(p);
+                if (bits == 0) {
+                    Arrays.fill(cells, palette[0]);
+                } else {
+                    if (buf.remaining() < ((long) n * bits + 63) / 64 * 8) throw error("truncated cells");
+                    LongBuffer words = buf.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+                    long mask = (1L << bits) - 1;
+                    long word = words.get();
+                    int used = 0;
+                    for (int c = 0; c < n; c++) {
+                        long v = word >>> used;
+                        used += bits;
+                        if (used >= 64) {
+                            used -= 64;
+                            word = words.hasRemaining() ? words.get() : 0;
+                            if (used > 0) v |= word << (bits - used);
+                        }
+                        int index = (int) (v & mask);
+                        if (index >= p) throw error("bad palette index at cell " + c);
+                        cells[c] = palette[index];
+                    }
+                }
+            } else {
+                throw error("unknown cell encoding " + encoding);
+            }
+        } catch (java.nio.BufferUnderflowException e) {
+            throw error("truncated cells");
+        }
+        return map;
+    }
+
+    /**
+     * Reads an old .bit level: a Java serialized int[][] (as written by ObjectOutputStream).
+     * Only int arrays are accepted by the deserialization filter, anything else in the stream is rejected
+     * before it is instantiated. Arrays longer than {@link #MAX_BIT_SIDE} and streams longer than
+     * {@link #MAX_BIT_BYTES} are rejected too, so a corrupt length cannot allocate gigabytes.
+     *
+     * @param file The .bit file.
+     * @return the map.
+     */
+    public static Map readBit(Path file) {
+        try (InputStream in = Files.newInputStream(file); ObjectInputStream ois = new ObjectInputStream(in)) {
+            ois.setObjectInputFilter(MapIO::bitFilter);
+            Object o = ois.readObject();
+            if (!(o instanceof int[][])) throw error("not an int[][] level");
+            return new Map((int[][]) o);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("common.MapIO read error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Converts an old .bit level to a level file.
+     *
+     * @param bit The .bit file.
+     * @param out The level file to write.
+     */
+    public static void convertBit(Path bit, Path out) {
+        write(out, readBit(bit));
+    }
+
+    /**
+     * Converts .bit levels from the command line: every argument a.bit is written to a.pmb.
+     *
+     * @param args The .bit files.
+     */
+    public static void main(String[] args) {
+        for (String arg : args) {
+            Path bit = Paths.get(arg);
+            String name = bit.getFileName().toString();
+            Path out = bit.resolveSibling((name.endsWith(".bit") ? name.substring(0, name.length() - 4) : name) + ".pmb");
+            convertBit(bit, out);
+            System.out.println(bit + " -> " + out);
+        }
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * Accepts only int[] and int[][] (and limits the depth, array lengths, references and stream size),
+     * so a .bit file cannot instantiate any other class or allocate more than its own size allows.
+     */
+    private static ObjectInputFilter.Status bitFilter(ObjectInputFilter.FilterInfo info) {
+        if (info.depth() > 2 || info.arrayLength() > MAX_BIT_SIDE || info.references() > MAX_BIT_SIDE + 2
+                || info.streamBytes() > MAX_BIT_BYTES) return ObjectInputFilter.Status.REJECTED;
+        Class<?> c = info.serialClass();
+        if (c == null) return ObjectInputFilter.Status.UNDECIDED;
+        return c == int[][].class || c == int[].class ? ObjectInputFilter.Status.ALLOWED : ObjectInputFilter.Status.REJECTED;
+    }
+
+    private static int bitsPerCell(int paletteSize) {
+        return paletteSize <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+
+    private static int varintSize(int v) {
+        int size = 1;
+        while ((v >>>= 7) != 0) size++;
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer buf, int v) {
+        while ((v & ~0x7F) != 0) {
+            buf.put((byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    private static int getVarint(ByteBuffer buf) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buf.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw error("bad varint");
+    }
+
+    private static RuntimeException error(String message) {
+        return new RuntimeException("common.MapIO read error: " + message);
+    }
+}
@@ -0,0 +1,136 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapIOTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * checks random maps (few and many colors, negative values, runs and noise) survive a write and read
+     */
+    @Test
+    void testRoundTrip() {
+        Random rnd = new Random(20);
+        int[] colors = {1, 2, 3, 7, 40, 300};
+        for (int i = 0; i < 40; i++) {
+            int w = 1 + rnd.nextInt(60), h = 1 + rnd.nextInt(60);
+            int k = colors[i % colors.length];
+            boolean runs = i % 2 == 0;
+            Map map = new Map(w, h, 0);
+            int v = -1;
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) {
+                    if (!runs || rnd.nextInt(12) == 0) v = rnd.nextInt(k) * 37 - 5;
+                    map.setPixel(x, y, v);
+                }
+            }
+            map.setCyclic(i % 3 == 0);
+            Path file = dir.resolve("m" + i + ".pmb");
+            MapIO.write(file, map);
+            Map back = MapIO.read(file);
+            assertArrayEquals(map.getMap(), back.getMap());
+            assertEquals(map.isCyclic(), back.isCyclic());
+        }
+    }
+
+    /**
+     * checks the writer picks RLE for long runs and bit packing for noise, and both are much smaller than int cells
+     */
+    @Test
+    void testEncodingSize() {
+        Map empty = new Map(200, 100, GameInfo.EMPTY);
+        assertTrue(MapIO.encode(empty).remaining() < 40);
+
+        Random rnd = new Random(7);
+        Map noise = new Map(200, 100, 0);
+        for (int x = 0; x < 200; x++) {
+            for (int y = 0; y < 100; y++) {
+                noise.setPixel(x, y, rnd.nextInt(4) - 1);
+            }
+        }
+        // 2 bits per cell
+        int size = MapIO.encode(noise).remaining();
+        assertTrue(size <= 20 + 16 + 200 * 100 / 4 + 8, "size " + size);
+        assertArrayEquals(noise.getMap(), MapIO.decode(MapIO.encode(noise)).getMap());
+    }
+
+    /**
+     * checks a serialized int[][] converts to the same map, and that the shipped level reads
+     */
+    @Test
+    void testConvertBit() throws Exception {
+        int[][] arr = new int[9][6];
+        for (int x = 0; x < 9; x++) {
+            for (int y = 0; y < 6; y++) {
+                arr[x][y] = (x * 7 + y) % 4 - 1;
+            }
+        }
+        Path bit = dir.resolve("a.bit");
+        try (OutputStream out = Files.newOutputStream(bit); ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(arr);
+        }
+        Path pmb = dir.resolve("a.pmb");
+        MapIO.convertBit(bit, pmb);
+        assertArrayEquals(arr, MapIO.read(pmb).getMap());
+
+        Path shipped = Path.of("test.pmb");
+        if (Files.exists(shipped)) {
+            Map level = MapIO.read(shipped);
+            assertEquals(23, level.getWidth());
+            assertEquals(22, level.getHeight());
+        }
+    }
+
+    /**
+     * checks other serialized classes and broken level files are rejected
+     */
+    @Test
+    void testRejects() throws Exception {
+        Path bit = dir.resolve("list.bit");
+        try (OutputStream out = Files.newOutputStream(bit); ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(new ArrayList<>(java.util.List.of(1, 2)));
+        }
+        assertThrows(RuntimeException.class, () -> MapIO.readBit(bit));
+
+        ByteBuffer good = MapIO.encode(new Map(4, 4, 1));
+        byte[] bytes = new byte[good.remaining()];
+        good.get(bytes);
+        byte[] magic = bytes.clone();
+        magic[0] = 'X';
+        assertThrows(RuntimeException.class, () -> MapIO.decode(ByteBuffer.wrap(magic)));
+        byte[] version = bytes.clone();
+        version[4] = 9;
+        assertThrows(RuntimeException.class, () -> MapIO.decode(ByteBuffer.wrap(version)));
+        byte[] truncated = java.util.Arrays.copyOf(bytes, bytes.length - 1);
+        assertThrows(RuntimeException.class, () -> MapIO.decode(ByteBuffer.wrap(truncated)));
+
+        // an RLE run whose palette index varint decodes to -1
+        ByteBuffer negative = ByteBuffer.allocate(64).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        negative.putInt(MapIO.MAGIC).putShort((short) MapIO.VERSION).put((byte) 0).put((byte) 0);
+        negative.putInt(2).putInt(2).putInt(1).putInt(5);
+        negative.put((byte) 4).put(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+        negative.flip();
+        RuntimeException e = assertThrows(RuntimeException.class, () -> MapIO.decode(negative));
+        assertTrue(e.getMessage().startsWith("common.MapIO read error: bad run"));
+
+        // an array length over the limit is rejected before it is allocated
+        Path huge = dir.resolve("huge.bit");
+        try (OutputStream out = Files.newOutputStream(huge); ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(new int[MapIO.MAX_BIT_SIDE + 1][]);
+        }
+        assertThrows(RuntimeException.class, () -> MapIO.readBit(huge));
+    }
+}
@@ -0,0 +1,312 @@
+package common;
+
+/**
+ * A writable view of a base map that keeps its writes to itself: a sparse set of cell overrides on top of a base
+ * {@link Map2D} that is never modified.
+ *
+ * It is meant for hypothetical blockings, e.g. a planner that walls off the cells around a ghost for one search:
+ * setPixel writes an override, the reads and the searches (BFS, A*, bidirectional BFS, nearest color, distances) see
+ * the base with the overrides applied, and {@link #clear()} drops them. The searches are the kernels of {@link Map}
+ * (see GridSearch) reading the cells through the overlay, so they return the same paths as the painted map would.
+ * Jump point search reads a Map's flat array directly and is not available on an overlay.
+ *
+ * Overrides that only add walls can only split the components of the base, never join them, so while the base
+ * {@link Map} has cached component labels (see {@link Map#components(int, boolean)}) a target in another component
+ * of the base is answered unreachable in O(1), as on the map itself. An override that opens a wall of the base
+ * turns that check off.
+ *
+ * Only cell values are overridden. Step costs are out of scope: the weighted searches
+ * ({@link Map#cheapestPath(Pixel2D, Pixel2D, int, boolean, int[])}) take a cost grid owned by the caller on every call,
+ * so a cost is overridden by writing that grid.
+ *
+ * Nothing of the base is copied: the overrides are a reused {@link IntIntMap} plus a bitset of the overridden cells
+ * (one bit per cell) that keeps the lookup of the other cells a plain read of the base. Every planner (or thread)
+ * uses its own overlay, so many can search one shared board at once; the base must not change meanwhile.
+ */
+public final class MapOverlay implements Map2D {
+    private Map2D _base;
+    // the base as a flat map (for Map and ReadOnlyMap bases), or null
+    private Map _flat;
+    private int _w, _h;
+    private final IntIntMap _overrides = new IntIntMap();
+    private long[] _overridden;
+    // the overlaid cells as the search kernels read them
+    private final GridSearch.Cells _cells = this::getCell;
+
+    /**
+     * @param base The base map, it is never written.
+     */
+    public MapOverlay(Map2D base) {
+        reset(base);
+    }
+
+    /**
+     * Drops the overrides and puts the overlay on top of another base (e.g. the board of the next tick).
+     * The memory of the overlay is reused as long as the size does not grow.
+     *
+     * @param base The new base map, it is never written.
+     */
+    public void reset(Map2D base) {
+        if (base == null)
+            throw new RuntimeException("common.MapOverlay error: null base map");
+        clear();
+        _base = base;
+        _flat = base instanceof Map ? (Map) base : base instanceof ReadOnlyMap ? ((ReadOnlyMap) base).map() : null;
+        _w = base.getWidth();
+        _h = base.getHeight();
+        Index2D.intern(_w, _h);
+        int words = (int) (((long) _w * _h + 63) >>> 6);
+        if (_overridden == null || _overridden.length < words) _overridden = new long[words];
+    }
+
+    /**
+     * Drops every override, the overlay shows the base again.
+     */
+    public void clear() {
+        for (int i = 0; i < _overrides.size(); i++) {
+            int c = _overrides.keyAt(i);
+            _overridden[c >>> 6] &= ~(1L << c);
+        }
+        _overrides.clear();
+    }
+
+    /**
+     * @return the base map.
+     */
+    public Map2D getBase() {
+        return _base;
+    }
+
+    /**
+     * @return the number of overridden cells.
+     */
+    public int overrides() {
+        return _overrides.size();
+    }
+
+    /**
+     * @param index A flat cell index (x*getHeight()+y) in [0,getWidth()*getHeight()).
+     * @return the value of the cell, overridden or from the base.
+     */
+    public int getCell(int index) {
+        if ((_overridden[index >>> 6] & (1L << index)) != 0) return _overrides.get(index, 0);
+        return _flat != null ? _flat.getCell(index) : _base.getPixel(index / _h, index % _h);
+    }
+
+    /**
+     * Overrides a cell by flat index, bypassing the coordinate bounds check.
+     *
+     * @param index A flat cell index in [0,getWidth()*getHeight()).
+     * @param v     The new value of the cell.
+     */
+    public void setCell(int index, int v) {
+        _overrides.put(index, v);
+        _overridden[index >>> 6] |= 1L << index;
+    }
+
+    @Override
+    public void init(int w, int h, int v) {
+        throw new RuntimeException("common.MapOverlay init error: an overlay keeps the size of its base, use reset");
+    }
+
+    @Override
+    public void init(int[][] arr) {
+        throw new RuntimeException("common.MapOverlay init error: an overlay keeps the size of its base, use reset");
+    }
+
+    @Override
+    public int[][] getMap() {
+        int[][] ans = _base.getMap();
+        for (int i = 0; i < _overrides.size(); i++) {
+            int c = _overrides.keyAt(i);
+            ans[c / _h][c % _h] = _overrides.valueAt(i);
+        }
+        return ans;
+    }
+
+    @Override
+    public int getWidth() {
+        return _w;
+    }
+
+    @Override
+    public int getHeight() {
+        return _h;
+    }
+
+    @Override
+    public int getPixel(int x, int y) {
+        if (x < 0 || x >= _w || y < 0 || y >= _h)
+            throw new RuntimeException("common.Map2D getPixel error: out of bounds");
+        return getCell(x * _h + y);
+    }
+
+    @Override
+    public int getPixel(Pixel2D p) {
+        return getPixel(p.getX(), p.getY());
+    }
+
+    @Override
+    public void setPixel(int x, int y, int v) {
+        if (x >= 0 && x < _w && y >= 0 && y < _h) setCell(x * _h + y, v);
+    }
+
+    @Override
+    public void setPixel(Pixel2D p, int v) {
+        if (p == null)
+            throw new RuntimeException("common.Map2D setPixel error: null pixel");
+        setPixel(p.getX(), p.getY(), v);
+    }
+
+    @Override
+    public boolean isInside(Pixel2D p) {
+        return !(p == null || p.getX() < 0 || p.getX() >= _w || p.getY() < 0 || p.getY() >= _h);
+    }
+
+    @Override
+    public boolean isCyclic() {
+        return _base.isCyclic();
+    }
+
+    @Override
+    public void setCyclic(boolean cy) {
+        throw new RuntimeException("common.MapOverlay setCyclic error: the flag belongs to the base map");
+    }
+
+    @Override
+    public int fill(Pixel2D xy, int new_v) {
+        int start = xy.getX() * _h + xy.getY();
+        int oldColor = getPixel(xy.getX(), xy.getY());
+        if (oldColor == new_v) return 0;
+
+        // depth first, every painted cell becomes an override and no longer matches oldColor
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, isCyclic());
+        int[] stack = ws.queue, next = ws.next;
+        int top = 0, ans = 0;
+        setCell(start, new_v);
+        stack[top++] = start;
+        while (top > 0) {
+            int c = stack[--top];
+            ans++;
+            ws.neighbours(c, next);
+            for (int i = 0; i < 4; i++) {
+                int n = next[i];
+                if (n != BfsWorkspace.NONE && getCell(n) == oldColor) {
+                    setCell(n, new_v);
+                    stack[top++] = n;
+                }
+            }
+        }
+        return ans;
+    }
+
+    @Override
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        return shortestPath(p1, p2, obsColor, cyclic, SearchMode.BFS);
+    }
+
+    /**
+     * The shortest path with the overrides applied, by BFS (also for a null mode), A* or bidirectional BFS.
+     *
+     * @param p1       The source.
+     * @param p2       The destination.
+     * @param obsColor The obstacle color.
+     * @param cyclic   Whether the path may wrap around the map borders.
+     * @param mode     The search to run.
+     * @return the path, or null if there is none.
+     * @throws RuntimeException for {@link SearchMode#JUMP_POINT}, which needs the flat cells of a {@link Map}.
+     */
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic, SearchMode mode) {
+        if (mode == SearchMode.JUMP_POINT)
+            throw new RuntimeException("common.MapOverlay shortestPath error: JUMP_POINT needs the flat cells of a Map");
+        if (p1 == null || p2 == null) return null;
+        if (getPixel(p1) == obsColor || getPixel(p2) == obsColor) return null;
+        if (p1.getX() == p2.getX() && p1.getY() == p2.getY()) return new Pixel2D[] {p1};
+
+        int src = p1.getX() * _h + p1.getY();
+        int dst = p2.getX() * _h + p2.getY();
+        Components comps = baseComponents(obsColor, cyclic);
+        if (comps != null && !comps.connected(src, dst)) return null;
+
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        if (mode == SearchMode.BIDIRECTIONAL) {
+            return GridSearch.bidirectional(ws, null, _cells, null, _h, p1, src, dst, obsColor);
+        }
+        boolean found = mode == SearchMode.A_STAR
+                ? GridSearch.aStar(ws, null, _cells, null, _w, _h, src, dst, obsColor, cyclic)
+                : GridSearch.bfs(ws, null, _cells, null, src, dst, false, 0, obsColor) != BfsWorkspace.NONE;
+        return found ? GridSearch.path(ws, _h, p1, src, dst) : null;
+    }
+
+    /**
+     * The path to the nearest cell of a color with the overrides applied (see {@link Map#nearestPath}).
+     *
+     * @param start    The source.
+     * @param color    The color to reach.
+     * @param obsColor The obstacle color.
+     * @param cyclic   Whether the path may wrap around the map borders.
+     * @return the path, or null if no cell of that color is reachable.
+     */
+    public Pixel2D[] nearestPath(Pixel2D start, int color, int obsColor, boolean cyclic) {
+        if (start == null || color == obsColor || getPixel(start) == obsColor) return null;
+        int src = start.getX() * _h + start.getY();
+        Components comps = baseComponents(obsColor, cyclic);
+        if (comps != null && comps.size(comps.component(src)) <= 1) return null;
+
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        int target = GridSearch.bfs(ws, null, _cells, null, src, BfsWorkspace.NONE, true, color, obsColor);
+        return target == BfsWorkspace.NONE ? null : GridSearch.path(ws, _h, start, src, target);
+    }
+
+    /**
+     * The first step of a shortest path with the overrides applied (see {@link Map#firstStep}).
+     *
+     * @param p1       The source.
+     * @param p2       The destination.
+     * @param obsColor The obstacle color.
+     * @param cyclic   Whether the path may wrap around the map borders.
+     * @return the flat index of the first step, -1 if there is none.
+     */
+    public int firstStep(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        if (p1 == null || p2 == null) return BfsWorkspace.NONE;
+        if (getPixel(p1) == obsColor || getPixel(p2) == obsColor) return BfsWorkspace.NONE;
+        int src = p1.getX() * _h + p1.getY();
+        int dst = p2.getX() * _h + p2.getY();
+        if (src == dst) return BfsWorkspace.NONE;
+        Components comps = baseComponents(obsColor, cyclic);
+        if (comps != null && !comps.connected(src, dst)) return BfsWorkspace.NONE;
+
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        if (GridSearch.bfs(ws, null, _cells, null, src, dst, false, 0, obsColor) == BfsWorkspace.NONE) {
+            return BfsWorkspace.NONE;
+        }
+        return GridSearch.firstStep(ws, src, dst);
+    }
+
+    @Override
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
+        Map ans = new Map(_w, _h, -1);
+        if (getPixel(start) == obsColor) return ans;
+
+        BfsWorkspace ws = BfsWorkspace.acquire(_w, _h, cyclic);
+        GridSearch.distances(ws, null, _cells, start.getX() * _h + start.getY(), obsColor, ans.cells());
+        return ans;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * The cached component labels of the base for a search, if they hold for the overlay too: no override may open
+     * a cell that is an obstacle in the base (an override that is itself an obstacle only splits a component).
+     *
+     * @return the labels, or null if the base has none for this search or an override opens a wall.
+     */
+    private Components baseComponents(int obsColor, boolean cyclic) {
+        Components comps = _flat == null ? null : _flat.cachedComponents(obsColor, cyclic);
+        if (comps == null) return null;
+        for (int i = 0; i < _overrides.size(); i++) {
+            if (_overrides.valueAt(i) != obsColor && _flat.getCell(_overrides.keyAt(i)) == obsColor) return null;
+        }
+        return comps;
+    }
+}
@@ -0,0 +1,142 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapOverlayTest {
+
+    /**
+     * checks the searches of an overlay equal the searches of a painted copy, and the base is never written
+     */
+    @Test
+    void testSameAsPainted() {
+        Random rnd = new Random(24);
+        for (int round = 0; round < 60; round++) {
+            int w = 2 + rnd.nextInt(30), h = 2 + rnd.nextInt(30);
+            boolean cyclic = round % 2 == 0;
+            Map base = TestMaps.randomMap(rnd, w, h, 0.3, 3);
+            // half the bases have component labels, which the overlay checks while its overrides only add walls
+            if (round % 4 < 2) base.components(-1, cyclic);
+            int[][] before = base.getMap();
+            MapOverlay overlay = new MapOverlay(round % 3 == 0 ? base.readOnly() : base);
+            Map painted = new Map(before);
+            for (int i = 0; i < 1 + rnd.nextInt(12); i++) {
+                int x = rnd.nextInt(w), y = rnd.nextInt(h), v = rnd.nextInt(3) == 0 ? 0 : -1;
+                overlay.setPixel(x, y, v);
+                painted.setPixel(x, y, v);
+            }
+            assertArrayEquals(painted.getMap(), overlay.getMap());
+
+            for (int q = 0; q < 10; q++) {
+                Pixel2D a = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                Pixel2D b = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                assertArrayEquals(painted.shortestPath(a, b, -1, cyclic), overlay.shortestPath(a, b, -1, cyclic));
+                assertArrayEquals(painted.nearestPath(a, 3, -1, cyclic), overlay.nearestPath(a, 3, -1, cyclic));
+                assertEquals(painted.firstStep(a, b, -1, cyclic), overlay.firstStep(a, b, -1, cyclic));
+                // the same kernels as the Map, so the same paths, not only the same lengths
+                for (SearchMode mode : new SearchMode[] {SearchMode.A_STAR, SearchMode.BIDIRECTIONAL}) {
+                    assertArrayEquals(painted.shortestPath(a, b, -1, cyclic, mode), overlay.shortestPath(a, b, -1, cyclic, mode));
+                }
+                Pixel2D[] star = overlay.shortestPath(a, b, -1, cyclic, SearchMode.A_STAR);
+                Pixel2D[] bfs = painted.shortestPath(a, b, -1, cyclic);
+                assertEquals(bfs == null ? -1 : bfs.length, star == null ? -1 : star.length);
+                assertArrayEquals(painted.allDistance(a, -1, cyclic).getMap(), overlay.allDistance(a, -1, cyclic).getMap());
+            }
+            assertArrayEquals(before, base.getMap());
+            assertThrows(RuntimeException.class,
+                    () -> overlay.shortestPath(new Index2D(0, 0), new Index2D(1, 1), -1, cyclic, SearchMode.JUMP_POINT));
+
+            overlay.clear();
+            assertEquals(0, overlay.overrides());
+            assertArrayEquals(before, overlay.getMap());
+        }
+    }
+
+    /**
+     * checks the base's component labels answer for an overlay of walls, and are ignored once an override opens a wall
+     */
+    @Test
+    void testBaseComponents() {
+        // two rooms split by a wall column, the labels of the base see them apart
+        Map base = new Map(9, 5, 0);
+        base.setCyclic(false);
+        for (int y = 0; y < 5; y++) {
+            base.setPixel(4, y, -1);
+        }
+        base.setPixel(7, 2, 3);
+        base.components(-1, false);
+        Pixel2D a = new Index2D(1, 2), b = new Index2D(7, 2);
+        MapOverlay overlay = new MapOverlay(base.readOnly());
+        overlay.setPixel(2, 2, -1);
+        assertNull(overlay.shortestPath(a, b, -1, false));
+        assertNull(overlay.nearestPath(a, 3, -1, false));
+        assertEquals(-1, overlay.firstStep(a, b, -1, false));
+        assertNotNull(overlay.shortestPath(a, new Index2D(3, 2), -1, false));
+
+        // a door in the wall joins the rooms on the overlay only
+        overlay.setPixel(4, 2, 0);
+        assertEquals(9, overlay.shortestPath(a, b, -1, false).length);
+        assertNotEquals(-1, overlay.firstStep(a, b, -1, false));
+        assertEquals(b, overlay.nearestPath(a, 3, -1, false)[8]);
+        assertNull(base.shortestPath(a, b, -1, false));
+    }
+
+    /**
+     * checks two threads can search one base through their own overlays at the same time
+     */
+    @Test
+    void testConcurrentOverlays() throws Exception {
+        Map base = new Map(40, 40, 0);
+        base.setCyclic(false);
+        Pixel2D a = new Index2D(0, 0), b = new Index2D(39, 39);
+        int[] lengths = new int[2];
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < 2; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                MapOverlay overlay = new MapOverlay(base);
+                for (int i = 0; i < 200; i++) {
+                    overlay.clear();
+                    // thread 0 walls off column 20 but row 0, thread 1 leaves the map open
+                    if (id == 0) {
+                        for (int y = 1; y < 40; y++) overlay.setPixel(20, y, -1);
+                    }
+                    lengths[id] = overlay.shortestPath(a, b, -1, false).length;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(79, lengths[1]);
+        assertEquals(79, lengths[0]);
+        assertEquals(0, base.obstacleHash(-1));
+    }
+
+    /**
+     * checks reset moves the overlay to another base, and fill writes overrides only
+     */
+    @Test
+    void testResetAndFill() {
+        Map small = new Map(3, 3, 0);
+        MapOverlay overlay = new MapOverlay(small);
+        overlay.setPixel(1, 1, -1);
+        assertEquals(0, overlay.fill(new Index2D(0, 0), 0));
+        assertEquals(8, overlay.fill(new Index2D(0, 0), 5));
+        assertEquals(-1, overlay.getPixel(1, 1));
+        assertEquals(0, small.getPixel(0, 0));
+
+        Map big = new Map(70, 5, 2);
+        overlay.reset(big);
+        assertEquals(0, overlay.overrides());
+        assertEquals(2, overlay.getPixel(69, 4));
+        overlay.setPixel(69, 4, 1);
+        overlay.setPixel(70, 0, 1);
+        assertEquals(1, overlay.getPixel(69, 4));
+        assertEquals(1, overlay.overrides());
+        assertThrows(RuntimeException.class, () -> overlay.setCyclic(false));
+        assertThrows(RuntimeException.class, () -> overlay.init(2, 2, 0));
+    }
+}
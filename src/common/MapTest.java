@@ -0,0 +1,709 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapTest {
+
+    /**
+     * a small 5x4 maze used by most of the tests (-1 = wall)
+     */
+    private static int[][] maze() {
+        return new int[][] {
+                {0, 0, 0, 0},
+                {0, -1, -1, 0},
+                {0, 0, -1, 0},
+                {-1, 0, -1, 0},
+                {0, 0, 0, 0}
+        };
+    }
+
+    /**
+     * checks that init(int[][]) and getMap() round trip a deep copy
+     */
+    @Test
+    void testInitAndGetMap() {
+        int[][] arr = maze();
+        Map map = new Map(arr);
+
+        assertEquals(5, map.getWidth());
+        assertEquals(4, map.getHeight());
+        assertArrayEquals(arr, map.getMap());
+
+        // changing the source array must not change the map
+        arr[0][0] = 7;
+        assertEquals(0, map.getPixel(0, 0));
+    }
+
+    /**
+     * checks that a ragged or empty array is rejected
+     */
+    @Test
+    void testInitErrors() {
+        assertThrows(RuntimeException.class, () -> new Map(new int[][] {{1, 2}, {3}}));
+        assertThrows(RuntimeException.class, () -> new Map(new int[0][0]));
+        assertThrows(RuntimeException.class, () -> new Map(0, 3, 1));
+        assertThrows(RuntimeException.class, () -> new Map(2, 2, new int[3]));
+    }
+
+    /**
+     * checks the flat import / export and the raw index accessors
+     */
+    @Test
+    void testFlatAccess() {
+        Map map = new Map(maze());
+        int[] flat = map.toArray();
+        assertEquals(map.size(), flat.length);
+
+        Map copy = new Map(5, 4, flat);
+        assertArrayEquals(map.getMap(), copy.getMap());
+
+        int idx = map.index(3, 2);
+        assertEquals(3, map.indexX(idx));
+        assertEquals(2, map.indexY(idx));
+        assertEquals(map.getPixel(3, 2), map.getCell(idx));
+
+        map.setCell(idx, 9);
+        assertEquals(9, map.getPixel(3, 2));
+
+        int[] dest = new int[map.size()];
+        map.copyTo(dest);
+        assertEquals(9, dest[idx]);
+    }
+
+    /**
+     * checks bounds handling of getPixel / setPixel
+     */
+    @Test
+    void testPixelBounds() {
+        Map map = new Map(3, 2, 1);
+        assertThrows(RuntimeException.class, () -> map.getPixel(3, 0));
+        assertThrows(RuntimeException.class, () -> map.getPixel(0, -1));
+
+        // out of bounds writes are ignored
+        map.setPixel(5, 5, 4);
+        assertEquals(1, map.getPixel(2, 1));
+    }
+
+    /**
+     * checks allDistance on the maze, with and without the cyclic borders
+     */
+    @Test
+    void testAllDistance() {
+        Map map = new Map(maze());
+        Map2D dist = map.allDistance(new Index2D(0, 0), -1, false);
+
+        assertEquals(0, dist.getPixel(0, 0));
+        assertEquals(3, dist.getPixel(0, 3));
+        assertEquals(7, dist.getPixel(4, 3));
+        assertEquals(-1, dist.getPixel(1, 1));
+
+        // with cyclic borders (4,0) is a neighbor of (0,0)
+        Map2D cyc = map.allDistance(new Index2D(0, 0), -1, true);
+        assertEquals(1, cyc.getPixel(4, 0));
+        assertEquals(2, cyc.getPixel(4, 3));
+
+        // an obstacle start reaches nothing
+        Map2D none = map.allDistance(new Index2D(1, 1), -1, false);
+        assertEquals(-1, none.getPixel(0, 0));
+    }
+
+    /**
+     * checks shortestPath returns a valid shortest path of consecutive pixels
+     */
+    @Test
+    void testShortestPath() {
+        Map map = new Map(maze());
+        Pixel2D start = new Index2D(0, 0);
+        Pixel2D end = new Index2D(4, 3);
+
+        Pixel2D[] path = map.shortestPath(start, end, -1, false);
+        assertNotNull(path);
+        assertEquals(8, path.length);
+        assertEquals(start, path[0]);
+        assertEquals(end, path[path.length - 1]);
+        for (int i = 1; i < path.length; i++) {
+            int dx = Math.abs(path[i].getX() - path[i - 1].getX());
+            int dy = Math.abs(path[i].getY() - path[i - 1].getY());
+            assertEquals(1, dx + dy);
+            assertNotEquals(-1, map.getPixel(path[i]));
+        }
+
+        // same pixel, obstacle end and a walled off target
+        assertEquals(1, map.shortestPath(start, start, -1, false).length);
+        assertNull(map.shortestPath(start, new Index2D(1, 1), -1, false));
+        map.setPixel(3, 3, -1);
+        map.setPixel(4, 2, -1);
+        assertNull(map.shortestPath(start, end, -1, false));
+    }
+
+    /**
+     * checks the cached adjacency table and that it is dropped only on wall changes
+     */
+    @Test
+    void testGraph() {
+        Map map = new Map(maze());
+        GridGraph g = map.graph(-1, false);
+
+        // (0,0) has two walkable neighbors, walls have none
+        assertEquals(2, g.degree(map.index(0, 0)));
+        assertEquals(0, g.degree(map.index(1, 1)));
+        assertSame(g, map.graph(-1, false));
+
+        // painting a non wall value keeps the table, a wall drops it
+        map.setPixel(0, 1, 5);
+        assertSame(g, map.graph(-1, false));
+        map.setPixel(0, 1, -1);
+        GridGraph g2 = map.graph(-1, false);
+        assertNotSame(g, g2);
+        assertEquals(1, g2.degree(map.index(0, 0)));
+
+        // searches use the table and still see the new wall
+        Map2D dist = map.allDistance(new Index2D(0, 0), -1, false);
+        assertEquals(11, dist.getPixel(0, 3));
+        assertEquals(12, map.shortestPath(new Index2D(0, 0), new Index2D(0, 3), -1, false).length);
+    }
+
+    /**
+     * checks nearestPath stops at the closest pixel of the wanted color
+     */
+    @Test
+    void testNearestPath() {
+        Map map = new Map(maze());
+        map.setPixel(4, 0, 2);
+        map.setPixel(0, 3, 2);
+        Pixel2D start = new Index2D(0, 0);
+
+        Pixel2D[] path = map.nearestPath(start, 2, -1, false);
+        assertNotNull(path);
+        assertEquals(4, path.length);
+        assertEquals(new Index2D(0, 3), path[path.length - 1]);
+
+        // the start pixel itself is not a target
+        map.setPixel(0, 0, 2);
+        assertEquals(new Index2D(0, 3), map.nearestPath(start, 2, -1, false)[3]);
+
+        // with cyclic borders (4,0) is right next to the start
+        assertEquals(2, map.nearestPath(start, 2, -1, true).length);
+
+        // no reachable target
+        assertNull(map.nearestPath(start, 8, -1, false));
+    }
+
+    /**
+     * checks A* and bidirectional search find paths as short as the BFS ones
+     */
+    @Test
+    void testSearchModes() {
+        Map map = new Map(maze());
+        Pixel2D start = new Index2D(0, 0);
+
+        for (boolean cyclic : new boolean[] {false, true}) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                for (int y = 0; y < map.getHeight(); y++) {
+                    Pixel2D end = new Index2D(x, y);
+                    Pixel2D[] bfs = map.shortestPath(start, end, -1, cyclic);
+                    for (SearchMode mode : SearchMode.values()) {
+                        Pixel2D[] path = map.shortestPath(start, end, -1, cyclic, mode);
+                        if (bfs == null) {
+                            assertNull(path);
+                        } else {
+                            assertEquals(bfs.length, path.length, mode + " to " + end);
+                            assertEquals(end, path[path.length - 1]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * checks jump point search against the BFS on random maps, and that it expands few cells in corridors
+     */
+    @Test
+    void testJumpPoint() {
+        java.util.Random rnd = new java.util.Random(15);
+        int[][] shapes = {{1, 9}, {9, 1}, {2, 2}, {3, 7}, {12, 10}, {31, 17}};
+        for (int[] shape : shapes) {
+            Map map = TestMaps.randomMap(rnd, shape[0], shape[1], 0.33);
+            for (boolean cyclic : new boolean[] {false, true}) {
+                for (int round = 0; round < 100; round++) {
+                    Pixel2D a = map.pixel(rnd.nextInt(map.size()));
+                    Pixel2D b = map.pixel(rnd.nextInt(map.size()));
+                    Pixel2D[] bfs = map.shortestPath(a, b, -1, cyclic);
+                    Pixel2D[] jps = map.shortestPath(a, b, -1, cyclic, SearchMode.JUMP_POINT);
+                    if (bfs == null) {
+                        assertNull(jps);
+                        continue;
+                    }
+                    assertEquals(bfs.length, jps.length, a + " -> " + b);
+                    assertEquals(a, jps[0]);
+                    assertEquals(b, jps[jps.length - 1]);
+                    for (int i = 1; i < jps.length; i++) {
+                        assertNotEquals(-1, map.getPixel(jps[i]));
+                        assertEquals(1, map.allDistance(jps[i - 1], -1, cyclic).getPixel(jps[i]));
+                    }
+                }
+            }
+        }
+
+        // long corridors: the BFS expands every cell closer than the target, jump point search only the turns
+        Map corridors = new Map(60, 60, 0);
+        for (int x = 2; x < 60; x += 4) {
+            for (int y = 0; y < 60; y++) {
+                if (y != (x % 8 == 2 ? 59 : 0)) corridors.setPixel(x, y, -1);
+            }
+        }
+        Pixel2D a = new Index2D(0, 0), b = new Index2D(59, 59);
+        Pixel2D[] path = corridors.shortestPath(a, b, -1, false, SearchMode.JUMP_POINT);
+        assertEquals(corridors.shortestPath(a, b, -1, false).length, path.length);
+        int reached = 0;
+        Map2D dist = corridors.allDistance(a, -1, false);
+        for (int c = 0; c < corridors.size(); c++) {
+            int d = dist.getPixel(c / 60, c % 60);
+            if (d >= 0 && d < path.length - 1) reached++;
+        }
+        assertTrue(JumpPointSearch.get().expanded() * 5 < reached,
+                JumpPointSearch.get().expanded() + " expanded, the BFS expands " + reached);
+    }
+
+    /**
+     * checks that snapshots share nothing visible with their map, and that read only views follow it
+     */
+    @Test
+    void testSnapshot() {
+        Map map = new Map(maze());
+        int[][] before = map.getMap();
+        Map snap = map.snapshot();
+        assertArrayEquals(before, snap.getMap());
+
+        // writes on either side stay on that side
+        map.setPixel(0, 0, 9);
+        assertEquals(before[0][0], snap.getPixel(0, 0));
+        snap.setPixel(1, 1, 8);
+        assertEquals(before[1][1], map.getPixel(1, 1));
+        Map snap2 = snap.snapshot();
+        snap2.fill(new Index2D(0, 0), 7);
+        assertEquals(8, snap.getPixel(1, 1));
+        assertArrayEquals(before[0], snap.snapshot().getMap()[0]);
+
+        // cached search tables are not shared either
+        Map open = new Map(5, 5, 0);
+        open.components(-1, false);
+        open.graph(-1, false);
+        Map walled = open.snapshot();
+        for (int y = 0; y < 5; y++) walled.setPixel(2, y, -1);
+        assertNull(walled.shortestPath(new Index2D(0, 0), new Index2D(4, 4), -1, false));
+        assertEquals(9, open.shortestPath(new Index2D(0, 0), new Index2D(4, 4), -1, false).length);
+
+        // the view reads the live map and refuses writes
+        ReadOnlyMap view = map.readOnly();
+        assertEquals(9, view.getPixel(0, 0));
+        map.setPixel(0, 0, 4);
+        assertEquals(4, view.getPixel(0, 0));
+        assertThrows(RuntimeException.class, () -> view.setPixel(0, 0, 1));
+        assertThrows(RuntimeException.class, () -> view.fill(new Index2D(0, 0), 1));
+        assertThrows(RuntimeException.class, () -> view.init(2, 2, 0));
+        Map frozen = view.snapshot();
+        map.setPixel(0, 0, 5);
+        assertEquals(4, frozen.getPixel(0, 0));
+    }
+
+    /**
+     * checks the primitive path buffer and the first step query
+     */
+    @Test
+    void testPathCells() {
+        Map map = new Map(maze());
+        Pixel2D start = new Index2D(0, 0);
+        Pixel2D end = new Index2D(4, 3);
+        Pixel2D[] path = map.shortestPath(start, end, -1, false);
+
+        IntPath cells = new IntPath();
+        assertTrue(map.shortestPathCells(start, end, -1, false, cells));
+        assertEquals(path.length, cells.length());
+        for (int i = 0; i < path.length; i++) {
+            assertEquals(map.index(path[i].getX(), path[i].getY()), cells.get(i));
+            assertEquals(path[i].getX(), cells.getX(i));
+            assertEquals(path[i].getY(), cells.getY(i));
+        }
+        assertEquals(cells.get(1), cells.nextStep());
+        assertEquals(IntPath.direction(cells.get(0), cells.get(1), map.getHeight()), cells.direction());
+        assertArrayEquals(cells.toArray(), map.shortestPathCells(start, end, -1, false));
+
+        // the first step is the second cell of the path
+        assertEquals(cells.get(1), map.firstStep(start, end, -1, false));
+        assertEquals(IntPath.RIGHT, IntPath.direction(map.index(0, 0), map.index(1, 0), map.getHeight()));
+        assertEquals(-1, map.firstStep(start, start, -1, false));
+        assertEquals(-1, map.firstStep(start, new Index2D(1, 1), -1, false));
+
+        // cyclic wrap to the left of (0,0)
+        assertEquals(IntPath.LEFT, IntPath.direction(map.index(0, 0), map.index(4, 0), map.getHeight()));
+        assertEquals(IntPath.DOWN, IntPath.direction(map.index(0, 0), map.index(0, 3), map.getHeight()));
+
+        // no path empties the buffer
+        assertFalse(map.shortestPathCells(start, new Index2D(1, 1), -1, false, cells));
+        assertEquals(0, cells.length());
+        assertEquals(IntPath.NONE, cells.direction());
+    }
+
+    /**
+     * checks the multi source distances and owners against one allDistance per source
+     */
+    @Test
+    void testMultiSourceDistance() {
+        Map map = new Map(maze());
+        Pixel2D[] sources = {new Index2D(0, 0), new Index2D(4, 3), new Index2D(1, 1)};
+
+        // one owner map for both calls: it is reset in place
+        Map2D owner = new Map(5, 4, 0);
+        for (boolean cyclic : new boolean[] {true, false}) {
+            Map2D dist = map.multiSourceDistance(sources, -1, cyclic, owner);
+            Map2D[] each = map.allDistances(sources, -1, cyclic);
+            for (int x = 0; x < 5; x++) {
+                for (int y = 0; y < 4; y++) {
+                    int best = -1, who = -1;
+                    for (int i = 0; i < each.length; i++) {
+                        int d = each[i].getPixel(x, y);
+                        if (d != -1 && (best == -1 || d < best)) {
+                            best = d;
+                            who = i;
+                        }
+                    }
+                    assertEquals(best, dist.getPixel(x, y));
+                    if (best != -1) {
+                        // the owner is one of the nearest sources
+                        assertEquals(best, each[owner.getPixel(x, y)].getPixel(x, y));
+                    } else {
+                        assertEquals(-1, owner.getPixel(x, y));
+                    }
+                }
+            }
+        }
+
+        // ties go to the first source: (0,2) is 2 away from both (0,0) and (0,4)
+        Map open = new Map(1, 5, 0);
+        Map2D line = new Map(1, 5, 0);
+        open.multiSourceDistance(new Pixel2D[] {new Index2D(0, 0), new Index2D(0, 4)}, -1, false, line);
+        assertEquals(0, line.getPixel(0, 2));
+        assertEquals(1, line.getPixel(0, 3));
+    }
+
+    /**
+     * checks the bitset BFS gives the queue BFS distances, around word borders and after wall edits
+     */
+    @Test
+    void testBitsetDistance() {
+        java.util.Random rnd = new java.util.Random(11);
+        int[][] shapes = {{1, 1}, {7, 1}, {1, 70}, {5, 63}, {6, 64}, {4, 65}, {9, 130}};
+        for (int[] shape : shapes) {
+            Map map = TestMaps.randomMap(rnd, shape[0], shape[1], 0.25);
+            for (boolean cyclic : new boolean[] {false, true}) {
+                for (int round = 0; round < 5; round++) {
+                    Pixel2D start = map.pixel(rnd.nextInt(map.size()));
+                    Map2D bits = map.allDistanceBitset(start, -1, cyclic);
+                    assertArrayEquals(map.allDistance(start, -1, cyclic).getMap(), bits.getMap(),
+                            shape[0] + "x" + shape[1] + " from " + start);
+
+                    // toggle a wall, the cached bitset has to follow
+                    int c = rnd.nextInt(map.size());
+                    map.setCell(c, map.getCell(c) == -1 ? 0 : -1);
+                }
+            }
+        }
+
+        // large maps take the bitset path inside allDistance
+        Map big = new Map(1024, 512, 0);
+        assertTrue(big.size() >= Map.BITSET_MIN_CELLS);
+        Map2D dist = big.allDistance(new Index2D(0, 0), -1, true);
+        assertEquals(512 + 256, dist.getPixel(512, 256));
+        assertEquals(2, dist.getPixel(1023, 511));
+    }
+
+    /**
+     * checks the scanline fill and the parallel fill paint the same region, with and without the cyclic borders
+     */
+    @Test
+    void testFill() {
+        Map map = new Map(maze());
+        assertEquals(0, map.fill(new Index2D(0, 0), 0));
+        map.setCyclic(false);
+        assertEquals(15, map.fill(new Index2D(0, 0), 5));
+        assertEquals(5, map.getPixel(4, 3));
+        assertEquals(-1, map.getPixel(1, 1));
+
+        java.util.Random rnd = new java.util.Random(5);
+        for (boolean cyclic : new boolean[] {false, true}) {
+            for (int round = 0; round < 20; round++) {
+                int w = 1 + rnd.nextInt(90), h = 1 + rnd.nextInt(40);
+                Map a = new Map(w, h, 0);
+                for (int i = 0; i < w * h * 2 / 5; i++) {
+                    a.setCell(rnd.nextInt(w * h), 1);
+                }
+                a.setCyclic(cyclic);
+                Map b = new Map(w, h, a.toArray());
+                b.setCyclic(cyclic);
+
+                Pixel2D p = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                int v = a.getPixel(p) == 1 ? 7 : 9;
+                assertEquals(a.fill(p, v), b.fillParallel(p, v), w + "x" + h);
+                assertArrayEquals(a.getMap(), b.getMap());
+            }
+        }
+    }
+
+    /**
+     * checks the obstacle hashes follow random writes, fills and snapshots, and match a map built from scratch
+     */
+    @Test
+    void testObstacleHash() {
+        java.util.Random rnd = new java.util.Random(21);
+        Map map = new Map(30, 20, 0);
+        long empty = map.obstacleHash(-1);
+        assertEquals(0, empty);
+        for (int c = 0; c < 4; c++) map.obstacleHash(c);
+        for (int i = 0; i < 2000; i++) {
+            map.setCell(rnd.nextInt(600), rnd.nextInt(5) - 1);
+            if (i % 500 == 0) map.fill(new Index2D(rnd.nextInt(30), rnd.nextInt(20)), 3);
+            if (i % 97 == 0) {
+                Map fresh = new Map(30, 20, map.toArray());
+                for (int c = -1; c < 4; c++) {
+                    assertEquals(fresh.obstacleHash(c), map.obstacleHash(c), "color " + c);
+                }
+            }
+        }
+
+        Map snap = map.snapshot();
+        long walls = map.obstacleHash(-1);
+        int cell = 0;
+        while (map.getCell(cell) == -1) cell++;
+        snap.setCell(cell, -1);
+        assertNotEquals(walls, snap.obstacleHash(-1));
+        assertEquals(walls, map.obstacleHash(-1));
+        // a non obstacle write keeps the hash, undoing the wall restores it
+        snap.setCell(cell, 7);
+        assertEquals(walls, snap.obstacleHash(-1));
+    }
+
+    /**
+     * checks loading boards in place writes only the changed cells and keeps the hashes and searches right
+     */
+    @Test
+    void testLoad() {
+        java.util.Random rnd = new java.util.Random(8);
+        int[][] board = new int[15][12];
+        Map map = new Map(board);
+        map.obstacleHash(-1);
+        for (int tick = 0; tick < 200; tick++) {
+            int changes = rnd.nextInt(4);
+            java.util.HashSet<Integer> cells = new java.util.HashSet<>();
+            for (int i = 0; i < changes; i++) {
+                int x = rnd.nextInt(15), y = rnd.nextInt(12), v = rnd.nextInt(3) - 1;
+                if (board[x][y] != v) cells.add(x * 12 + y);
+                board[x][y] = v;
+            }
+            assertEquals(cells.size(), map.load(board));
+            Map fresh = new Map(board);
+            assertArrayEquals(fresh.getMap(), map.getMap());
+            assertEquals(fresh.obstacleHash(-1), map.obstacleHash(-1));
+            Pixel2D a = new Index2D(0, 0), b = new Index2D(14, 11);
+            assertArrayEquals(fresh.allDistance(a, -1, true).getMap(), map.allDistance(a, -1, true).getMap());
+            Pixel2D[] p1 = fresh.shortestPath(a, b, -1, true), p2 = map.shortestPath(a, b, -1, true);
+            assertEquals(p1 == null ? -1 : p1.length, p2 == null ? -1 : p2.length);
+        }
+        assertEquals(6, map.load(new int[2][3]));
+        assertEquals(3, map.getHeight());
+        assertThrows(RuntimeException.class, () -> map.load(new int[][]{{1, 2}, {3}}));
+    }
+
+    /**
+     * checks the board hash follows writes and snapshots, matches a map built from scratch, and sees every cell
+     */
+    @Test
+    void testBoardHash() {
+        java.util.Random rnd = new java.util.Random(22);
+        Map map = new Map(25, 16, 0);
+        long start = map.boardHash();
+        assertEquals(start, new Map(25, 16, 0).boardHash());
+        for (int i = 0; i < 2000; i++) {
+            map.setCell(rnd.nextInt(400), rnd.nextInt(6) - 1);
+            if (i % 97 == 0) assertEquals(new Map(25, 16, map.toArray()).boardHash(), map.boardHash());
+        }
+
+        Map snap = map.snapshot();
+        long hash = map.boardHash();
+        int old = snap.getCell(7);
+        snap.setCell(7, old + 1);
+        assertNotEquals(hash, snap.boardHash());
+        assertEquals(hash, map.boardHash());
+        snap.setCell(7, old);
+        assertEquals(hash, snap.boardHash());
+
+        // moving a value between two cells changes the hash (the keys depend on the cell)
+        Map a = new Map(4, 4, 0), b = new Map(4, 4, 0);
+        a.setCell(1, 5);
+        b.setCell(2, 5);
+        assertNotEquals(a.boardHash(), b.boardHash());
+        map.fill(new Index2D(0, 0), 9);
+        assertEquals(new Map(25, 16, map.toArray()).boardHash(), map.boardHash());
+    }
+
+    /**
+     * checks undo restores the first value of every written cell, with the caches and hashes, and keep commits
+     */
+    @Test
+    void testUndoLog() {
+        Map map = new Map(maze());
+        map.setCyclic(false);
+        Components comps = map.components(-1, false);
+        long hash = map.boardHash(), walls = map.obstacleHash(-1);
+        int[][] before = map.getMap();
+        Pixel2D[] path = map.shortestPath(new Index2D(0, 0), new Index2D(4, 3), -1, false);
+
+        map.startUndoLog();
+        assertThrows(RuntimeException.class, map::startUndoLog);
+        map.setPixel(2, 0, -1);
+        map.setPixel(2, 0, 5);
+        map.setPixel(2, 0, -1);
+        map.setPixel(0, 3, -1);
+        assertThrows(RuntimeException.class, () -> map.fill(new Index2D(0, 0), 3));
+        assertNull(map.shortestPath(new Index2D(0, 0), new Index2D(4, 3), -1, false));
+        assertEquals(2, map.undo());
+        assertFalse(map.isLogging());
+
+        assertArrayEquals(before, map.getMap());
+        assertEquals(hash, map.boardHash());
+        assertEquals(walls, map.obstacleHash(-1));
+        assertTrue(map.components(-1, false).connected(0, map.index(4, 3)));
+        assertSame(comps, map.components(-1, false));
+        assertArrayEquals(path, map.shortestPath(new Index2D(0, 0), new Index2D(4, 3), -1, false));
+        assertThrows(RuntimeException.class, map::undo);
+
+        map.startUndoLog();
+        map.setPixel(0, 0, 7);
+        map.discardUndoLog();
+        assertEquals(7, map.getPixel(0, 0));
+        map.startUndoLog();
+        assertEquals(0, map.undo());
+    }
+
+    /**
+     * checks the 0-1 BFS, the bucket Dijkstra and the heap Dijkstra (large costs) find paths as cheap as a reference
+     * Dijkstra, to a cell and to a color
+     */
+    @Test
+    void testCheapestPath() {
+        java.util.Random rnd = new java.util.Random(25);
+        for (int round = 0; round < 80; round++) {
+            int w = 1 + rnd.nextInt(25), h = 1 + rnd.nextInt(25), n = w * h;
+            boolean cyclic = round % 2 == 0;
+            int maxCost = round % 3 == 0 ? 1 : round % 3 == 1 ? 1 + rnd.nextInt(12) : 1 + rnd.nextInt(1 << 20);
+            Map map = new Map(w, h, 0);
+            int[] cost = new int[n];
+            for (int c = 0; c < n; c++) {
+                if (rnd.nextInt(4) == 0) map.setCell(c, -1);
+                else if (rnd.nextInt(15) == 0) map.setCell(c, 3);
+                cost[c] = rnd.nextInt(maxCost + 1);
+            }
+            for (int q = 0; q < 8; q++) {
+                int src = rnd.nextInt(n), dst = rnd.nextInt(n);
+                Pixel2D a = map.pixel(src), b = map.pixel(dst);
+                long[] ref = dijkstra(map, src, cost, cyclic);
+
+                Pixel2D[] path = map.cheapestPath(a, b, -1, cyclic, cost);
+                if (map.getCell(src) == -1 || map.getCell(dst) == -1 || ref[dst] == Long.MAX_VALUE) {
+                    assertNull(path);
+                } else {
+                    assertEquals(ref[dst], pathCost(map, path, cost, cyclic));
+                    assertEquals(b, path[path.length - 1]);
+                }
+
+                Pixel2D[] near = map.cheapestNearestPath(a, 3, -1, cyclic, cost);
+                long best = Long.MAX_VALUE;
+                for (int c = 0; c < n; c++) {
+                    if (c != src && map.getCell(c) == 3) best = Math.min(best, ref[c]);
+                }
+                if (map.getCell(src) == -1 || best == Long.MAX_VALUE) {
+                    assertNull(near);
+                } else {
+                    assertEquals(3, map.getPixel(near[near.length - 1]));
+                    assertEquals(best, pathCost(map, near, cost, cyclic));
+                }
+            }
+        }
+
+        // unit costs give the BFS lengths, and bad grids are rejected
+        Map map = new Map(maze());
+        int[] ones = new int[20];
+        java.util.Arrays.fill(ones, 1);
+        Pixel2D a = new Index2D(0, 0), b = new Index2D(4, 3);
+        assertEquals(map.shortestPath(a, b, -1, false).length, map.cheapestPath(a, b, -1, false, ones).length);
+        ones[3] = -1;
+        assertThrows(RuntimeException.class, () -> map.cheapestPath(a, b, -1, false, ones));
+        assertThrows(RuntimeException.class, () -> map.cheapestPath(a, b, -1, false, new int[5]));
+
+        // costs that could overflow a path cost are rejected before anything is allocated
+        Map line = new Map(3, 1, 0);
+        Pixel2D l0 = new Index2D(0, 0), l2 = new Index2D(2, 0);
+        int[] big = {1, 1_000_000_000, 1_000_000_000};
+        assertEquals(3, line.cheapestPath(l0, l2, -1, false, big).length);
+        big[2] = Integer.MAX_VALUE;
+        RuntimeException e = assertThrows(RuntimeException.class, () -> line.cheapestPath(l0, l2, -1, false, big));
+        assertTrue(e.getMessage().startsWith("common.Map2D cheapestPath error: cost"));
+        big[1] = big[2] = 1_100_000_000;
+        assertThrows(RuntimeException.class, () -> line.cheapestNearestPath(l0, 5, -1, false, big));
+    }
+
+    /**
+     * a plain Dijkstra over the cells (O(n^2)), the cost of the cheapest path from src to every cell
+     */
+    private static long[] dijkstra(Map map, int src, int[] cost, boolean cyclic) {
+        int n = map.size(), w = map.getWidth(), h = map.getHeight();
+        long[] dist = new long[n];
+        java.util.Arrays.fill(dist, Long.MAX_VALUE);
+        boolean[] done = new boolean[n];
+        if (map.getCell(src) == -1) return dist;
+        dist[src] = 0;
+        while (true) {
+            int u = -1;
+            for (int c = 0; c < n; c++) {
+                if (!done[c] && dist[c] != Long.MAX_VALUE && (u == -1 || dist[c] < dist[u])) u = c;
+            }
+            if (u == -1) return dist;
+            done[u] = true;
+            int x = u / h, y = u % h;
+            int[][] steps = {{x + 1, y}, {x - 1, y}, {x, y + 1}, {x, y - 1}};
+            for (int[] s : steps) {
+                int nx = s[0], ny = s[1];
+                if (cyclic) {
+                    nx = (nx + w) % w;
+                    ny = (ny + h) % h;
+                } else if (nx < 0 || nx >= w || ny < 0 || ny >= h) {
+                    continue;
+                }
+                int v = nx * h + ny;
+                if (map.getCell(v) != -1 && dist[u] + cost[v] < dist[v]) dist[v] = dist[u] + cost[v];
+            }
+        }
+    }
+
+    /**
+     * checks a path is made of walkable neighbouring steps, and returns its cost
+     */
+    private static long pathCost(Map map, Pixel2D[] path, int[] cost, boolean cyclic) {
+        long sum = 0;
+        int w = map.getWidth(), h = map.getHeight();
+        for (int i = 1; i < path.length; i++) {
+            int dx = Math.abs(path[i].getX() - path[i - 1].getX());
+            int dy = Math.abs(path[i].getY() - path[i - 1].getY());
+            if (cyclic) {
+                dx = Math.min(dx, w - dx);
+                dy = Math.min(dy, h - dy);
+            }
+            assertEquals(1, dx + dy);
+            assertNotEquals(-1, map.getPixel(path[i]));
+            sum += cost[map.index(path[i].getX(), path[i].getY())];
+        }
+        return sum;
+    }
+}
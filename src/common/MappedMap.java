@@ -0,0 +1,658 @@
+package common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A {@link Map2D} whose cells live in a memory mapped file instead of the Java heap.
+ *
+ * Opening a map reads only the header, the cells are paged in by the OS when they are touched, so a huge level
+ * starts at once and costs no GC work. The file is mapped in chunks of 1GB, and the cells are addressed by
+ * long indices ({@link #getCell(long)}), so a map may have more than 2^31 cells.
+ *
+ * The file is a 32 byte header followed by the cells in the layout of {@link Map} (cell (x,y) at index x*h+y),
+ * all little endian:
+ * <pre>
+ * offset  size  field
+ *  0      4     magic, the bytes "PMAP"
+ *  4      2     version (1)
+ *  6      1     bytes per cell: 1 (RAW8, values -128..127) or 4 (RAW32, any int)
+ *  7      1     flags, bit 0 = cyclic
+ *  8      4     width
+ * 12      4     height
+ * 16      16    reserved (zero)
+ * </pre>
+ * The searches keep their queue on the heap (it holds one BFS frontier, not the map), and their distances in
+ * a second mapped file: {@link #allDistance(Pixel2D, int, boolean, Path)} writes them where the caller asks,
+ * the {@link Map2D} methods use a temporary file next to the map.
+ */
+public final class MappedMap implements Map2D, AutoCloseable {
+    /** The first 4 bytes of a map file ("PMAP"). */
+    public static final int MAGIC = 0x50414D50;
+    /** The file format version written by this class. */
+    public static final int VERSION = 1;
+    /** The size of the header, the cells start at this offset. */
+    public static final int HEADER_SIZE = 32;
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    private static final long NONE = -1;
+
+    private final Path _file;
+    private final boolean _writable;
+    private FileChannel _channel;
+    private MappedByteBuffer[] _chunks;
+    private int _w, _h, _cellBytes;
+    private boolean _cyclicFlag;
+
+    private MappedMap(Path file, boolean writable) {
+        _file = file;
+        _writable = writable;
+    }
+
+    /**
+     * Creates (or overwrites) a map file and maps it.
+     *
+     * @param file     The file.
+     * @param w        The width.
+     * @param h        The height.
+     * @param v        The init value of every cell.
+     * @param encoding {@link CellEncoding#BYTE} (RAW8) or {@link CellEncoding#INT} (RAW32).
+     * @return the writable map.
+     */
+    public static MappedMap create(Path file, int w, int h, int v, CellEncoding encoding) {
+        MappedMap map = new MappedMap(file, true);
+        map._cellBytes = cellBytes(encoding);
+        map._cyclicFlag = true;
+        map.checkValue(v, "create");
+        try {
+            map._channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException("common.MappedMap create error: " + e.getMessage(), e);
+        }
+        map.resize(w, h, v);
+        return map;
+    }
+
+    /**
+     * Writes a map into a new map file.
+     *
+     * @param file     The file.
+     * @param src      The map to copy.
+     * @param encoding {@link CellEncoding#BYTE} (RAW8) or {@link CellEncoding#INT} (RAW32).
+     * @return the writable copy.
+     */
+    public static MappedMap copyOf(Path file, Map2D src, CellEncoding encoding) {
+        MappedMap map = create(file, src.getWidth(), src.getHeight(), 0, encoding);
+        for (int x = 0; x < map._w; x++) {
+            for (int y = 0; y < map._h; y++) {
+                map.setCell((long) x * map._h + y, src.getPixel(x, y));
+            }
+        }
+        map.setCyclic(src.isCyclic());
+        return map;
+    }
+
+    /**
+     * Maps an existing map file, reading only its header.
+     *
+     * @param file     The file.
+     * @param writable Whether the map may be modified (the changes go to the file).
+     * @return the map.
+     */
+    public static MappedMap open(Path file, boolean writable) {
+        MappedMap map = new MappedMap(file, writable);
+        try {
+            map._channel = writable
+                    ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(file, StandardOpenOption.READ);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (map._channel.read(header) < 0) break;
+            }
+            if (header.hasRemaining()) throw new RuntimeException("common.MappedMap open error: truncated header");
+            if (header.getInt(0) != MAGIC) throw new RuntimeException("common.MappedMap open error: not a map file");
+            if (header.getShort(4) != VERSION)
+                throw new RuntimeException("common.MappedMap open error: unsupported version " + header.getShort(4));
+            map._cellBytes = header.get(6);
+            if (map._cellBytes != 1 && map._cellBytes != 4)
+                throw new RuntimeException("common.MappedMap open error: bad cell size " + map._cellBytes);
+            map._cyclicFlag = (header.get(7) & 1) != 0;
+            map._w = header.getInt(8);
+            map._h = header.getInt(12);
+            if (map._w <= 0 || map._h <= 0) throw new RuntimeException("common.MappedMap open error: wrong dimensions");
+            if (map._channel.size() < map.fileSize(map._w, map._h))
+                throw new RuntimeException("common.MappedMap open error: the file is shorter than its cells");
+            map.mapChunks();
+        } catch (IOException e) {
+            map.release();
+            throw new RuntimeException("common.MappedMap open error: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            map.release();
+            throw e;
+        }
+        return map;
+    }
+
+    /**
+     * @return the number of cells (getWidth()*getHeight()).
+     */
+    public long size() {
+        return (long) _w * _h;
+    }
+
+    /**
+     * @return the encoding of the cells, {@link CellEncoding#BYTE} or {@link CellEncoding#INT}.
+     */
+    public CellEncoding getEncoding() {
+        return _cellBytes == 1 ? CellEncoding.BYTE : CellEncoding.INT;
+    }
+
+    /**
+     * @return the backing file.
+     */
+    public Path getFile() {
+        return _file;
+    }
+
+    /**
+     * @param index A flat cell index in [0,size()).
+     * @return the value of the cell.
+     */
+    public int getCell(long index) {
+        long off = HEADER_SIZE + index * _cellBytes;
+        MappedByteBuffer chunk = _chunks[(int) (off >>> CHUNK_BITS)];
+        int pos = (int) (off & CHUNK_MASK);
+        return _cellBytes == 1 ? chunk.get(pos) : chunk.getInt(pos);
+    }
+
+    /**
+     * @param index A flat cell index in [0,size()).
+     * @param v     The new value of the cell.
+     * @throws RuntimeException if the map is read only, or v does not fit the encoding.
+     */
+    public void setCell(long index, int v) {
+        checkWritable("setCell");
+        checkValue(v, "setCell");
+        store(index, v);
+    }
+
+    /**
+     * Writes the changed pages back to the file.
+     */
+    public void force() {
+        if (_writable && _chunks != null) {
+            for (MappedByteBuffer chunk : _chunks) {
+                chunk.force();
+            }
+        }
+    }
+
+    /**
+     * Writes the changes back and closes the file. The map must not be used afterwards
+     * (the pages stay mapped until the buffers are garbage collected).
+     */
+    @Override
+    public void close() {
+        force();
+        release();
+    }
+
+    @Override
+    public void init(int w, int h, int v) {
+        checkWritable("init");
+        checkValue(v, "init");
+        resize(w, h, v);
+    }
+
+    @Override
+    public void init(int[][] arr) {
+        if (arr == null || arr.length == 0 || arr[0] == null)
+            throw new RuntimeException("common.Map2D init error: null or empty array");
+        int h = arr[0].length;
+        for (int[] column : arr) {
+            if (column == null || column.length != h)
+                throw new RuntimeException("common.Map2D init error: ragged array");
+            for (int v : column) {
+                checkValue(v, "init");
+            }
+        }
+        init(arr.length, h, 0);
+        for (int x = 0; x < _w; x++) {
+            for (int y = 0; y < _h; y++) {
+                store((long) x * _h + y, arr[x][y]);
+            }
+        }
+    }
+
+    /**
+     * Copies the whole map to the heap, so it is limited to maps of less than 2^31 cells.
+     */
+    @Override
+    public int[][] getMap() {
+        if (size() > Integer.MAX_VALUE - 8)
+            throw new RuntimeException("common.MappedMap getMap error: " + _w + "*" + _h + " cells do not fit the heap arrays");
+        int[][] ans = new int[_w][_h];
+        for (int x = 0; x < _w; x++) {
+            long base = (long) x * _h;
+            for (int y = 0; y < _h; y++) {
+                ans[x][y] = getCell(base + y);
+            }
+        }
+        return ans;
+    }
+
+    @Override
+    public int getWidth() {
+        return _w;
+    }
+
+    @Override
+    public int getHeight() {
+        return _h;
+    }
+
+    @Override
+    public int getPixel(int x, int y) {
+        if (x < 0 || x >= _w || y < 0 || y >= _h)
+            throw new RuntimeException("common.Map2D getPixel error: out of bounds");
+        return getCell((long) x * _h + y);
+    }
+
+    @Override
+    public int getPixel(Pixel2D p) {
+        return getPixel(p.getX(), p.getY());
+    }
+
+    @Override
+    public void setPixel(int x, int y, int v) {
+        checkWritable("setPixel");
+        checkValue(v, "setPixel");
+        if (x >= 0 && x < _w && y >= 0 && y < _h)
+            store((long) x * _h + y, v);
+    }
+
+    @Override
+    public void setPixel(Pixel2D p, int v) {
+        if (p == null)
+            throw new RuntimeException("common.Map2D setPixel error: null pixel");
+        setPixel(p.getX(), p.getY(), v);
+    }
+
+    @Override
+    public boolean isInside(Pixel2D p) {
+        return !(p == null || p.getX() < 0 || p.getX() >= _w || p.getY() < 0 || p.getY() >= _h);
+    }
+
+    @Override
+    public boolean isCyclic() {
+        return _cyclicFlag;
+    }
+
+    /**
+     * Sets the cyclic flag, which is kept in the header of a writable map.
+     */
+    @Override
+    public void setCyclic(boolean cy) {
+        _cyclicFlag = cy;
+        if (_writable) _chunks[0].put(7, (byte) (cy ? 1 : 0));
+    }
+
+    @Override
+    public int fill(Pixel2D xy, int new_v) {
+        checkWritable("fill");
+        checkValue(new_v, "fill");
+        long start = (long) xy.getX() * _h + xy.getY();
+        int oldColor = getPixel(xy.getX(), xy.getY());
+        if (oldColor == new_v) return 0;
+        boolean cyclic = _cyclicFlag;
+
+        // scanline fill over vertical spans (contiguous in the file), like Map.fill
+        LongQueue stack = new LongQueue();
+        stack.push(start);
+        int ans = 0;
+        while (!stack.isEmpty()) {
+            long c = stack.pop();
+            if (getCell(c) != oldColor) continue;
+            long x = c / _h;
+            long base = x * _h;
+
+            int lo = (int) (c - base), len = 1;
+            while (len < _h) {
+                int y = lo > 0 ? lo - 1 : (cyclic ? _h - 1 : -1);
+                if (y < 0 || getCell(base + y) != oldColor) break;
+                lo = y;
+                len++;
+            }
+            int hi = (int) (c - base);
+            while (len < _h) {
+                int y = hi < _h - 1 ? hi + 1 : (cyclic ? 0 : -1);
+                if (y < 0 || getCell(base + y) != oldColor) break;
+                hi = y;
+                len++;
+            }
+            for (int i = 0, y = lo; i < len; i++, y = (y + 1 == _h ? 0 : y + 1)) {
+                store(base + y, new_v);
+            }
+            ans += len;
+
+            // seed every run of oldColor next to the span in the left and right columns
+            for (int side = -1; side <= 1; side += 2) {
+                long nx = x + side;
+                if (nx < 0 || nx >= _w) {
+                    if (!cyclic) continue;
+                    nx = (nx + _w) % _w;
+                }
+                long nb = nx * _h;
+                boolean inRun = false;
+                for (int i = 0, y = lo; i < len; i++, y = (y + 1 == _h ? 0 : y + 1)) {
+                    if (getCell(nb + y) == oldColor) {
+                        if (!inRun) stack.push(nb + y);
+                        inRun = true;
+                    } else {
+                        inRun = false;
+                    }
+                }
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * Computes a shortest path with a BFS whose distances go to a temporary file next to the map
+     * (deleted when done), then walks back from p2.
+     */
+    @Override
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        if (p1 == null || p2 == null) return null;
+        if (getPixel(p1) == obsColor || getPixel(p2) == obsColor) return null;
+        if (p1.getX() == p2.getX() && p1.getY() == p2.getY()) return new Pixel2D[] {p1};
+
+        long src = (long) p1.getX() * _h + p1.getY();
+        long dst = (long) p2.getX() * _h + p2.getY();
+        Path tmp = tempFile();
+        MappedMap dist = create(tmp, _w, _h, 0, CellEncoding.INT);
+        try {
+            // the scratch holds distance+1, so the zero filled new file is "not reached"
+            if (bfs(src, dst, obsColor, cyclic, dist, 1) == NONE) return null;
+            int len = dist.getCell(dst);
+            Pixel2D[] path = new Pixel2D[len];
+            long[] next = new long[4];
+            long c = dst;
+            for (int i = len - 1; i > 0; i--) {
+                path[i] = new Index2D((int) (c / _h), (int) (c % _h));
+                BfsWorkspace.neighbours(c, _w, _h, cyclic, next);
+                for (long n : next) {
+                    if (n != NONE && dist.getCell(n) == i) {
+                        c = n;
+                        break;
+                    }
+                }
+            }
+            path[0] = p1;
+            return path;
+        } finally {
+            dist.release();
+            deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Computes the distances into a temporary file next to the map, deleted when the JVM exits.
+     */
+    @Override
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
+        Path tmp = tempFile();
+        tmp.toFile().deleteOnExit();
+        return allDistance(start, obsColor, cyclic, tmp);
+    }
+
+    /**
+     * Computes the BFS distance of every cell from start (-1 for obstacles and unreachable cells)
+     * into a new RAW32 map file.
+     *
+     * @param start    The source.
+     * @param obsColor The color which is addressed as an obstacle.
+     * @param cyclic   Whether the paths may wrap around the map borders.
+     * @param out      The file to write the distances to (created or overwritten).
+     * @return the distance map, mapped over out.
+     */
+    public MappedMap allDistance(Pixel2D start, int obsColor, boolean cyclic, Path out) {
+        MappedMap dist = create(out, _w, _h, -1, CellEncoding.INT);
+        if (getPixel(start) != obsColor) {
+            bfs((long) start.getX() * _h + start.getY(), NONE, obsColor, cyclic, dist, 0);
+        }
+        return dist;
+    }
+
+    /**
+     * Writes the header of a map file at the start of a (little endian) buffer, with absolute puts.
+     *
+     * @param buf       The buffer.
+     * @param w         The width.
+     * @param h         The height.
+     * @param cellBytes The bytes per cell, 1 or 4.
+     * @param cyclic    The cyclic flag.
+     */
+    static void writeHeader(ByteBuffer buf, int w, int h, int cellBytes, boolean cyclic) {
+        buf.putInt(0, MAGIC);
+        buf.putShort(4, (short) VERSION);
+        buf.put(6, (byte) cellBytes);
+        buf.put(7, (byte) (cyclic ? 1 : 0));
+        buf.putInt(8, w);
+        buf.putInt(12, h);
+    }
+
+    /**
+     * Computes the same distances as {@link #allDistance(Pixel2D, int, boolean, Path)} tile by tile, keeping at most
+     * maxTiles tiles of tileSize*tileSize distances in memory and spilling the others to out (see {@link TiledDistance}).
+     * This is the way to run a BFS over a map whose distances do not fit the memory.
+     *
+     * @param start    The source.
+     * @param obsColor The color which is addressed as an obstacle.
+     * @param cyclic   Whether the paths may wrap around the map borders.
+     * @param out      The file to write the distances to (created or overwritten).
+     * @param tileSize The side of a tile, in cells.
+     * @param maxTiles The number of tiles kept in memory.
+     * @return the distance map, mapped read only over out.
+     */
+    public MappedMap allDistanceTiled(Pixel2D start, int obsColor, boolean cyclic, Path out, int tileSize, int maxTiles) {
+        if (getPixel(start) == obsColor) {
+            create(out, _w, _h, -1, CellEncoding.INT).close();
+        } else {
+            new TiledDistance(this, obsColor, cyclic, out, tileSize, maxTiles).run((long) start.getX() * _h + start.getY());
+        }
+        return open(out, false);
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * A BFS whose distances (plus bias) go to dist, where bias-1 means not reached yet.
+     *
+     * @return the distance of dst once it is reached (dst NONE: runs to the end and returns NONE).
+     */
+    private long bfs(long src, long dst, int obsColor, boolean cyclic, MappedMap dist, int bias) {
+        int unreached = bias - 1;
+        LongQueue queue = new LongQueue();
+        long[] next = new long[4];
+        dist.store(src, bias);
+        queue.add(src);
+        while (!queue.isEmpty()) {
+            long u = queue.poll();
+            int du = dist.getCell(u);
+            if (u == dst) return du - bias;
+            BfsWorkspace.neighbours(u, _w, _h, cyclic, next);
+            for (long v : next) {
+                if (v != NONE && dist.getCell(v) == unreached && getCell(v) != obsColor) {
+                    dist.store(v, du + 1);
+                    queue.add(v);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    private void store(long index, int v) {
+        long off = HEADER_SIZE + index * _cellBytes;
+        MappedByteBuffer chunk = _chunks[(int) (off >>> CHUNK_BITS)];
+        int pos = (int) (off & CHUNK_MASK);
+        if (_cellBytes == 1) chunk.put(pos, (byte) v);
+        else chunk.putInt(pos, v);
+    }
+
+    /**
+     * Sets the file to the size of a w*h map, rewrites the header and sets every cell to v.
+     */
+    private void resize(int w, int h, int v) {
+        if (w <= 0 || h <= 0)
+            throw new RuntimeException("common.Map2D init error: wrong dimensions");
+        try {
+            force();
+            _chunks = null;
+            _channel.truncate(HEADER_SIZE);
+            _w = w;
+            _h = h;
+            mapChunks();
+        } catch (IOException e) {
+            throw new RuntimeException("common.MappedMap init error: " + e.getMessage(), e);
+        }
+
+        writeHeader(_chunks[0], w, h, _cellBytes, _cyclicFlag);
+
+        // the file grew with zeros, so only a non zero value is written (a whole run of bytes at a time)
+        if (v != 0) {
+            byte[] run = new byte[1 << 16];
+            if (_cellBytes == 1) {
+                Arrays.fill(run, (byte) v);
+            } else {
+                ByteBuffer.wrap(run).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(intRun(run.length / 4, v));
+            }
+            long end = fileSize(w, h);
+            for (long off = HEADER_SIZE; off < end; ) {
+                MappedByteBuffer chunk = _chunks[(int) (off >>> CHUNK_BITS)];
+                int pos = (int) (off & CHUNK_MASK);
+                int len = (int) Math.min(run.length, Math.min(end - off, chunk.capacity() - pos));
+                chunk.put(pos, run, 0, len);
+                off += len;
+            }
+        }
+    }
+
+    /**
+     * Closes the file without forcing the pages to disk (for the scratch files of the searches).
+     */
+    private void release() {
+        _chunks = null;
+        try {
+            if (_channel != null) _channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("common.MappedMap close error: " + e.getMessage(), e);
+        }
+    }
+
+    private static int[] intRun(int n, int v) {
+        int[] run = new int[n];
+        Arrays.fill(run, v);
+        return run;
+    }
+
+    /**
+     * Maps the file in chunks of 1GB (mapping a writable file past its end extends it).
+     */
+    private void mapChunks() throws IOException {
+        long total = fileSize(_w, _h);
+        int count = (int) ((total + CHUNK_MASK) >>> CHUNK_BITS);
+        FileChannel.MapMode mode = _writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        _chunks = new MappedByteBuffer[count];
+        for (int k = 0; k < count; k++) {
+            long pos = (long) k << CHUNK_BITS;
+            _chunks[k] = _channel.map(mode, pos, Math.min(1L << CHUNK_BITS, total - pos));
+            _chunks[k].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private long fileSize(int w, int h) {
+        return HEADER_SIZE + (long) w * h * _cellBytes;
+    }
+
+    private Path tempFile() {
+        try {
+            Path dir = _file.toAbsolutePath().getParent();
+            return Files.createTempFile(dir, "dist", ".pmap");
+        } catch (IOException e) {
+            throw new RuntimeException("common.MappedMap error: cannot create a distance file: " + e.getMessage(), e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // a leftover temporary file is harmless
+        }
+    }
+
+    private static int cellBytes(CellEncoding encoding) {
+        if (encoding == CellEncoding.BYTE) return 1;
+        if (encoding == CellEncoding.INT) return 4;
+        throw new RuntimeException("common.MappedMap error: unsupported encoding " + encoding + ", use BYTE or INT");
+    }
+
+    private void checkWritable(String method) {
+        if (!_writable) throw new RuntimeException("common.MappedMap " + method + " error: the map was opened read only");
+    }
+
+    private void checkValue(int v, String method) {
+        if (_cellBytes == 1 && (v < Byte.MIN_VALUE || v > Byte.MAX_VALUE))
+            throw new RuntimeException("common.MappedMap " + method + " error: " + v + " does not fit a RAW8 cell");
+    }
+
+    /**
+     * A growable ring of longs, used both as the BFS queue (add / poll) and as the fill stack (push / pop).
+     */
+    private static final class LongQueue {
+        private long[] _items = new long[64];
+        private int _head, _size;
+
+        boolean isEmpty() {
+            return _size == 0;
+        }
+
+        void add(long v) {
+            if (_size == _items.length) grow();
+            _items[(_head + _size++) & (_items.length - 1)] = v;
+        }
+
+        void push(long v) {
+            add(v);
+        }
+
+        long poll() {
+            long v = _items[_head];
+            _head = (_head + 1) & (_items.length - 1);
+            _size--;
+            return v;
+        }
+
+        long pop() {
+            return _items[(_head + --_size) & (_items.length - 1)];
+        }
+
+        private void grow() {
+            long[] items = new long[_items.length * 2];
+            for (int i = 0; i < _size; i++) {
+                items[i] = _items[(_head + i) & (_items.length - 1)];
+            }
+            _items = items;
+            _head = 0;
+        }
+    }
+}
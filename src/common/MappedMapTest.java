@@ -0,0 +1,116 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedMapTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * checks a map survives a close and reopen, header included, and that read only maps refuse writes
+     */
+    @Test
+    void testCreateAndOpen() throws Exception {
+        Path file = dir.resolve("level.pmap");
+        try (MappedMap map = MappedMap.create(file, 5, 3, -1, CellEncoding.BYTE)) {
+            map.setPixel(4, 2, 7);
+            map.setCyclic(false);
+            assertEquals(-1, map.getPixel(0, 0));
+        }
+        assertEquals(MappedMap.HEADER_SIZE + 15, Files.size(file));
+
+        try (MappedMap map = MappedMap.open(file, false)) {
+            assertEquals(5, map.getWidth());
+            assertEquals(3, map.getHeight());
+            assertEquals(CellEncoding.BYTE, map.getEncoding());
+            assertFalse(map.isCyclic());
+            assertEquals(7, map.getPixel(4, 2));
+            assertEquals(-1, map.getCell(0));
+            assertThrows(RuntimeException.class, () -> map.setPixel(0, 0, 1));
+        }
+
+        try (MappedMap map = MappedMap.create(file, 2, 2, 0, CellEncoding.BYTE)) {
+            assertThrows(RuntimeException.class, () -> map.setPixel(0, 0, 200));
+        }
+        assertThrows(RuntimeException.class, () -> MappedMap.create(file, 2, 2, 0, CellEncoding.NIBBLE));
+        Files.write(file, new byte[40]);
+        assertThrows(RuntimeException.class, () -> MappedMap.open(file, false));
+    }
+
+    /**
+     * checks fill, shortestPath and allDistance give the same results as Map
+     */
+    @Test
+    void testSameAsMap() {
+        Random rnd = new Random(18);
+        for (CellEncoding e : new CellEncoding[] {CellEncoding.BYTE, CellEncoding.INT}) {
+            for (boolean cyclic : new boolean[] {false, true}) {
+                Map map = TestMaps.randomMap(rnd, 21, 17, 0.33);
+                map.setCyclic(cyclic);
+                try (MappedMap mapped = MappedMap.copyOf(dir.resolve(e + "-" + cyclic + ".pmap"), map, e)) {
+                    assertArrayEquals(map.getMap(), mapped.getMap());
+                    for (int round = 0; round < 20; round++) {
+                        Pixel2D p = new Index2D(rnd.nextInt(21), rnd.nextInt(17));
+                        Pixel2D q = new Index2D(rnd.nextInt(21), rnd.nextInt(17));
+                        Pixel2D[] expected = map.shortestPath(p, q, -1, cyclic);
+                        Pixel2D[] path = mapped.shortestPath(p, q, -1, cyclic);
+                        if (expected == null) {
+                            assertNull(path);
+                        } else {
+                            assertEquals(expected.length, path.length);
+                            assertEquals(q, path[path.length - 1]);
+                        }
+                        try (MappedMap dist = mapped.allDistance(p, -1, cyclic, dir.resolve("dist.pmap"))) {
+                            assertArrayEquals(map.allDistance(p, -1, cyclic).getMap(), dist.getMap());
+                        }
+                        int v = rnd.nextInt(5);
+                        assertEquals(map.fill(p, v), mapped.fill(p, v));
+                        assertArrayEquals(map.getMap(), mapped.getMap());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * checks the tiled BFS matches the in memory one, with a cache much smaller than the map
+     */
+    @Test
+    void testTiledDistance() {
+        Random rnd = new Random(19);
+        for (boolean cyclic : new boolean[] {false, true}) {
+            Map map = TestMaps.randomMap(rnd, 50, 37, 0.33);
+            try (MappedMap mapped = MappedMap.copyOf(dir.resolve("tiled-" + cyclic + ".pmap"), map, CellEncoding.BYTE)) {
+                for (int round = 0; round < 5; round++) {
+                    Pixel2D start = new Index2D(rnd.nextInt(50), rnd.nextInt(37));
+                    int[][] expected = map.allDistance(start, -1, cyclic).getMap();
+                    try (MappedMap dist = mapped.allDistanceTiled(start, -1, cyclic, dir.resolve("tiled.pmap"), 8, 3)) {
+                        assertArrayEquals(expected, dist.getMap(), "from " + start);
+                    }
+                }
+
+                // a single tile of memory for 35 tiles, from the largest component: tiles go to disk and come back
+                Components comps = map.components(-1, cyclic);
+                int src = 0;
+                for (int c = 0; c < map.size(); c++) {
+                    if (comps.size(comps.component(c)) > comps.size(comps.component(src))) src = c;
+                }
+                Pixel2D start = map.pixel(src);
+                TiledDistance tiled = new TiledDistance(mapped, -1, cyclic, dir.resolve("one.pmap"), 8, 1);
+                tiled.run(src);
+                assertTrue(tiled.spills() > 0 && tiled.loads() > 0, tiled.runs() + " runs, " + tiled.spills() + " spills, " + tiled.loads() + " loads");
+                try (MappedMap dist = MappedMap.open(dir.resolve("one.pmap"), false)) {
+                    assertArrayEquals(map.allDistance(start, -1, cyclic).getMap(), dist.getMap());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package common;
+
+/**
+ * A {@link Map2D} with four bits per cell (values -8..7, enough for every {@link GameInfo} value),
+ * an eighth of the memory of {@link Map}.
+ *
+ * Sixteen cells are packed in a long, cell c is the nibble at bits 4*(c%16) of word c/16,
+ * stored in two's complement and sign extended on read.
+ */
+public final class NibbleMap extends CompactMap {
+    // set by allocate(), which runs inside the super constructor (so no field initializer here)
+    private long[] _words;
+
+    /**
+     * Constructs a w*h map with an init value v.
+     *
+     * @param w The width.
+     * @param h The height.
+     * @param v The init value.
+     */
+    public NibbleMap(int w, int h, int v) {
+        super(w, h, v);
+    }
+
+    /**
+     * Constructs a map from a 2D array (deep copy).
+     *
+     * @param data The cells, every value in -8..7.
+     */
+    public NibbleMap(int[][] data) {
+        super(data);
+    }
+
+    @Override
+    public int minValue() {
+        return -8;
+    }
+
+    @Override
+    public int maxValue() {
+        return 7;
+    }
+
+    @Override
+    public int getCell(int index) {
+        // move the nibble to the top 4 bits, then shift it back down with sign extension
+        long word = _words[index >>> 4];
+        return (int) (word << (60 - ((index & 15) << 2)) >> 60);
+    }
+
+    @Override
+    void allocate(int cells) {
+        _words = new long[(cells + 15) >>> 4];
+    }
+
+    @Override
+    void store(int index, int v) {
+        int shift = (index & 15) << 2;
+        int i = index >>> 4;
+        _words[i] = (_words[i] & ~(0xFL << shift)) | ((long) (v & 0xF) << shift);
+    }
+}
@@ -0,0 +1,156 @@
+package common;
+
+/**
+ * A read only view of a {@link Map}, see {@link Map#readOnly()}.
+ *
+ * Nothing is copied: every read goes to the live map, so the view shows the map's later changes.
+ * The methods that would modify the map (init, setPixel, fill, setCyclic) throw instead.
+ * The searches of {@link DistanceCache} and {@link MapOverlay} take the view as it is, so a reader that only searches
+ * the map needs no copy. A consumer that needs a stable or writable copy takes {@link #snapshot()}, which is copy on
+ * write: once a snapshot is taken, the next write of the viewed map clones its cells.
+ */
+public final class ReadOnlyMap implements Map2D {
+    private final Map _map;
+
+    /**
+     * @param map The map to view.
+     */
+    ReadOnlyMap(Map map) {
+        _map = map;
+    }
+
+    /**
+     * @return a copy on write snapshot of the viewed map (see {@link Map#snapshot()}).
+     */
+    public Map snapshot() {
+        return _map.snapshot();
+    }
+
+    @Override
+    public void init(int w, int h, int v) {
+        throw readOnly("init");
+    }
+
+    @Override
+    public void init(int[][] arr) {
+        throw readOnly("init");
+    }
+
+    @Override
+    public int[][] getMap() {
+        return _map.getMap();
+    }
+
+    @Override
+    public int getWidth() {
+        return _map.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return _map.getHeight();
+    }
+
+    @Override
+    public int getPixel(int x, int y) {
+        return _map.getPixel(x, y);
+    }
+
+    @Override
+    public int getPixel(Pixel2D p) {
+        return _map.getPixel(p);
+    }
+
+    /**
+     * @param index A flat cell index (see {@link Map#index(int, int)}).
+     * @return the value of the cell.
+     */
+    public int getCell(int index) {
+        return _map.getCell(index);
+    }
+
+    /**
+     * @param obsColor The obstacle color.
+     * @return the obstacle hash of the viewed map (see {@link Map#obstacleHash(int)}).
+     */
+    public long obstacleHash(int obsColor) {
+        return _map.obstacleHash(obsColor);
+    }
+
+    /**
+     * @return the board hash of the viewed map (see {@link Map#boardHash()}).
+     */
+    public long boardHash() {
+        return _map.boardHash();
+    }
+
+    @Override
+    public void setPixel(int x, int y, int v) {
+        throw readOnly("setPixel");
+    }
+
+    @Override
+    public void setPixel(Pixel2D p, int v) {
+        throw readOnly("setPixel");
+    }
+
+    @Override
+    public boolean isInside(Pixel2D p) {
+        return _map.isInside(p);
+    }
+
+    @Override
+    public boolean isCyclic() {
+        return _map.isCyclic();
+    }
+
+    @Override
+    public void setCyclic(boolean cy) {
+        throw readOnly("setCyclic");
+    }
+
+    @Override
+    public int fill(Pixel2D p, int new_v) {
+        throw readOnly("fill");
+    }
+
+    @Override
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        return _map.shortestPath(p1, p2, obsColor, cyclic);
+    }
+
+    @Override
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
+        return _map.allDistance(start, obsColor, cyclic);
+    }
+
+    /**
+     * @return the path to the nearest cell of a color on the viewed map (see {@link Map#nearestPath}).
+     */
+    public Pixel2D[] nearestPath(Pixel2D start, int color, int obsColor, boolean cyclic) {
+        return _map.nearestPath(start, color, obsColor, cyclic);
+    }
+
+    /**
+     * @param index A flat cell index.
+     * @return the shared Index2D of the cell (see {@link Map#pixel(int)}).
+     */
+    public Index2D pixel(int index) {
+        return _map.pixel(index);
+    }
+
+    ////////////////////// Package Methods ///////////////////////
+
+    /**
+     * @return the viewed map, for the read only searches of this package (see {@link MapOverlay}).
+     */
+    Map map() {
+        return _map;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    private static RuntimeException readOnly(String method) {
+        return new RuntimeException("common.ReadOnlyMap " + method + " error: the map is read only");
+    }
+}
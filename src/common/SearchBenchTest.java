@@ -0,0 +1,98 @@
+package common;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * a rerunnable benchmark of jump point search against BFS and A*, off by default:
+ * run it with -Dbench=true (and optionally -Dbench.size, -Dbench.queries, -Dbench.seed, by default 300, 200, 15)
+ */
+@Tag("bench")
+class SearchBenchTest {
+    private static final SearchMode[] MODES = {SearchMode.BFS, SearchMode.A_STAR, SearchMode.JUMP_POINT};
+    // untimed passes over the queries, so the JIT has compiled the searches before the timed one
+    private static final int WARMUP = 3;
+
+    /**
+     * prints the average expansions and microseconds per query of the searches on an open board, a board with 5%
+     * random walls and a board of long serpentine corridors, after checking they agree on every path length.
+     * the BFS expansions are the cells closer to the start than the target, the cells a BFS dequeues before it
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "bench", matches = "true")
+    void benchJumpPoint() {
+        int size = Integer.getInteger("bench.size", 300);
+        int queries = Integer.getInteger("bench.queries", 200);
+        long seed = Long.getLong("bench.seed", 15);
+
+        System.out.println("boards " + size + "x" + size + ", " + queries + " queries, seed " + seed);
+        System.out.printf("%-10s %12s %12s %10s %10s %10s%n", "board", "bfs exp", "jps exp", "bfs us", "a* us", "jps us");
+        run("open", new Map(size, size, 0), queries, new Random(seed));
+        run("walls 5%", TestMaps.randomMap(new Random(seed), size, size, 0.05), queries, new Random(seed));
+        run("corridors", corridors(size), queries, new Random(seed));
+    }
+
+    /**
+     * runs and prints one board
+     */
+    private static void run(String name, Map map, int queries, Random rnd) {
+        // random pairs of walkable cells that are connected
+        Pixel2D[] from = new Pixel2D[queries], to = new Pixel2D[queries];
+        for (int q = 0; q < queries; ) {
+            Pixel2D a = map.pixel(rnd.nextInt(map.size()));
+            Pixel2D b = map.pixel(rnd.nextInt(map.size()));
+            if (a.equals(b) || map.shortestPath(a, b, -1, false) == null) continue;
+            from[q] = a;
+            to[q++] = b;
+        }
+
+        long bfsExpanded = 0, jpsExpanded = 0;
+        int[] length = new int[queries];
+        for (int q = 0; q < queries; q++) {
+            Map2D dist = map.allDistance(from[q], -1, false);
+            int d = dist.getPixel(to[q]);
+            length[q] = d + 1;
+            for (int x = 0; x < map.getWidth(); x++) {
+                for (int y = 0; y < map.getHeight(); y++) {
+                    int v = dist.getPixel(x, y);
+                    if (v >= 0 && v < d) bfsExpanded++;
+                }
+            }
+            map.shortestPath(from[q], to[q], -1, false, SearchMode.JUMP_POINT);
+            jpsExpanded += JumpPointSearch.get().expanded();
+        }
+
+        long[] nanos = new long[MODES.length];
+        for (int pass = 0; pass <= WARMUP; pass++) {
+            for (int m = 0; m < MODES.length; m++) {
+                long start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    Pixel2D[] path = map.shortestPath(from[q], to[q], -1, false, MODES[m]);
+                    assertNotNull(path, MODES[m] + " " + from[q] + " -> " + to[q]);
+                    assertEquals(length[q], path.length, MODES[m] + " " + from[q] + " -> " + to[q]);
+                }
+                if (pass == WARMUP) nanos[m] = System.nanoTime() - start;
+            }
+        }
+        System.out.printf("%-10s %12d %12d %10d %10d %10d%n", name, bfsExpanded / queries, jpsExpanded / queries,
+                nanos[0] / 1000 / queries, nanos[1] / 1000 / queries, nanos[2] / 1000 / queries);
+    }
+
+    /**
+     * walls on every fourth column with a gap at the bottom and the top in turn, one long serpentine corridor
+     */
+    private static Map corridors(int size) {
+        Map map = new Map(size, size, 0);
+        for (int x = 2; x < size; x += 4) {
+            for (int y = 0; y < size; y++) {
+                if (y != (x % 8 == 2 ? size - 1 : 0)) map.setPixel(x, y, -1);
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,17 @@
+package common;
+
+/**
+ * The search strategies of {@link Map#shortestPath(Pixel2D, Pixel2D, int, boolean, SearchMode)}.
+ * All of them return a shortest path, they differ in how many cells they expand on the way;
+ * when several shortest paths exist each strategy may return a different one.
+ */
+public enum SearchMode {
+    /** Plain breadth first search from the start point (the Map2D default). */
+    BFS,
+    /** A* with a Manhattan distance heuristic, measured around the borders when the map is cyclic. */
+    A_STAR,
+    /** Breadth first search from both ends, one level at a time, until the two frontiers meet. */
+    BIDIRECTIONAL,
+    /** A* over jump points: straight runs are scanned without queueing their cells, only the turns are expanded. */
+    JUMP_POINT
+}
@@ -0,0 +1,36 @@
+package common;
+
+import java.util.Random;
+
+/**
+ * random maps for the tests of this package
+ */
+final class TestMaps {
+
+    private TestMaps() {
+    }
+
+    /**
+     * a random w*h map of walls (-1) and empty cells (0)
+     *
+     * @param density the probability of a cell to be a wall
+     */
+    static Map randomMap(Random rnd, int w, int h, double density) {
+        return randomMap(rnd, w, h, density, 0);
+    }
+
+    /**
+     * a random w*h map: every cell is a wall (-1) with the given probability, otherwise a value in [0,maxValue]
+     *
+     * @param density  the probability of a cell to be a wall
+     * @param maxValue the largest value of the other cells
+     */
+    static Map randomMap(Random rnd, int w, int h, double density, int maxValue) {
+        Map map = new Map(w, h, 0);
+        for (int c = 0; c < w * h; c++) {
+            if (rnd.nextDouble() < density) map.setCell(c, -1);
+            else if (maxValue > 0) map.setCell(c, rnd.nextInt(maxValue + 1));
+        }
+        return map;
+    }
+}
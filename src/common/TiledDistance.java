@@ -0,0 +1,312 @@
+package common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A single source BFS over a {@link MappedMap} that keeps only a few tiles of distances in memory,
+ * used by {@link MappedMap#allDistanceTiled(Pixel2D, int, boolean, Path, int, int)}.
+ *
+ * The map is cut into square tiles. A tile is run as a local BFS from its "inbox", the cells on its border that
+ * a neighbouring tile reached (with their distances). A step out of the tile, across the map border too when
+ * cyclic, posts a seed to the inbox of the tile next door. The tiles are run in the order of their smallest
+ * pending seed, like a Dijkstra over tiles, and a tile whose cells get shorter distances later is simply run
+ * again from those seeds (label correcting), so the result is exact whatever the order.
+ *
+ * The distance tiles live in an LRU cache of a bounded number of tiles; the least recently used one is spilled
+ * to the output file (a RAW32 map file) and read back if it is needed again. Tiles that are never reached are
+ * written as -1 at the end, so the memory used is the cache, the inboxes and one tile of queue.
+ */
+final class TiledDistance {
+    private final MappedMap _map;
+    private final int _w, _h, _tile, _nty, _tiles;
+    private final int _maxTiles;
+    private final int _obsColor;
+    private final boolean _cyclic;
+    private final FileChannel _out;
+    private final LinkedHashMap<Integer, int[]> _cache;
+    private final boolean[] _onDisk;
+
+    // the pending seeds of every tile, as (local cell, distance) pairs
+    private final int[][] _inbox;
+    private final int[] _inboxSize;
+    private final IntMinHeap _pending = new IntMinHeap(64);
+
+    // scratch of a tile run
+    private final int[] _queue;
+    private final long[] _next = new long[4];
+    private ByteBuffer _io;
+
+    private int _runs, _loads, _spills;
+
+    /**
+     * @param map      The map.
+     * @param obsColor The color which is addressed as an obstacle.
+     * @param cyclic   Whether the paths may wrap around the map borders.
+     * @param out      The file to write the distances to (created or overwritten).
+     * @param tile     The side of a tile, in cells.
+     * @param maxTiles The number of distance tiles kept in memory (at least 1).
+     */
+    TiledDistance(MappedMap map, int obsColor, boolean cyclic, Path out, int tile, int maxTiles) {
+        if (tile < 1 || maxTiles < 1)
+            throw new RuntimeException("common.TiledDistance error: bad tile size " + tile + " or cache size " + maxTiles);
+        _map = map;
+        _w = map.getWidth();
+        _h = map.getHeight();
+        _tile = tile;
+        int ntx = (_w + tile - 1) / tile;
+        _nty = (_h + tile - 1) / tile;
+        long tiles = (long) ntx * _nty;
+        if (tiles > Integer.MAX_VALUE - 8)
+            throw new RuntimeException("common.TiledDistance error: too many tiles, use larger ones");
+        _tiles = (int) tiles;
+        _obsColor = obsColor;
+        _cyclic = cyclic;
+        _onDisk = new boolean[_tiles];
+        _inbox = new int[_tiles][];
+        _inboxSize = new int[_tiles];
+        _maxTiles = maxTiles;
+        _queue = new int[tile * tile];
+        _cache = new LinkedHashMap<Integer, int[]>(16, 0.75f, true);
+        try {
+            _out = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException("common.TiledDistance error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs the search and writes the distance file, then closes it.
+     *
+     * @param src The flat index of the source, which must be walkable.
+     */
+    void run(long src) {
+        try {
+            post(tileOf(src), local(src), 0);
+            while (!_pending.isEmpty()) {
+                int t = _pending.pop();
+                if (_inboxSize[t] > 0) runTile(t);
+            }
+
+            // spill what is left, and write the tiles that were never reached
+            for (Iterator<java.util.Map.Entry<Integer, int[]>> it = _cache.entrySet().iterator(); it.hasNext(); ) {
+                java.util.Map.Entry<Integer, int[]> e = it.next();
+                writeTile(e.getKey(), e.getValue());
+                it.remove();
+            }
+            int[] unreached = null;
+            for (int t = 0; t < _tiles; t++) {
+                if (_onDisk[t]) continue;
+                if (unreached == null) {
+                    unreached = new int[_tile * _tile];
+                    Arrays.fill(unreached, -1);
+                }
+                writeTile(t, unreached);
+            }
+            ByteBuffer header = ByteBuffer.allocate(MappedMap.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            MappedMap.writeHeader(header, _w, _h, 4, _cyclic);
+            writeFully(header, 0);
+            _out.close();
+        } catch (IOException e) {
+            throw new RuntimeException("common.TiledDistance error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the number of tile runs (a tile may be run more than once).
+     */
+    int runs() {
+        return _runs;
+    }
+
+    /**
+     * @return the number of times a spilled tile was read back.
+     */
+    int loads() {
+        return _loads;
+    }
+
+    /**
+     * @return the number of times a tile was written out to make room.
+     */
+    int spills() {
+        return _spills;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * Runs the BFS of a tile from its inbox: the seeds (sorted by distance) and the FIFO queue are merged,
+     * so the cells come out in distance order and the first distance set in a run is final for it.
+     * A run goes to the end of the tile: bounding it to stay in Dijkstra order cycles the whole wavefront
+     * through the cache, which costs far more IO than running some tiles again.
+     */
+    private void runTile(int t) throws IOException {
+        _runs++;
+        int[] dist = tile(t);
+        int[] inbox = _inbox[t];
+        int count = _inboxSize[t];
+        _inboxSize[t] = 0;
+
+        // keep the seeds that improve the tile, sorted by distance
+        long[] seeds = new long[count / 2];
+        int n = 0;
+        for (int i = 0; i < count; i += 2) {
+            int l = inbox[i], d = inbox[i + 1];
+            if (dist[l] == -1 || d < dist[l]) seeds[n++] = (long) d << 32 | l;
+        }
+        Arrays.sort(seeds, 0, n);
+        if (_inbox[t].length > 64) _inbox[t] = null;
+
+        int tx = t / _nty, ty = t - tx * _nty;
+        int x0 = tx * _tile, y0 = ty * _tile;
+        int th = Math.min(_tile, _h - y0);
+        int[] queue = _queue;
+        int head = 0, tail = 0, s = 0;
+        while (s < n || head < tail) {
+            int u;
+            if (head < tail && (s == n || dist[queue[head]] <= (int) (seeds[s] >>> 32))) {
+                u = queue[head++];
+            } else {
+                int l = (int) seeds[s], d = (int) (seeds[s] >>> 32);
+                s++;
+                if (dist[l] != -1 && dist[l] <= d) continue;
+                dist[l] = d;
+                u = l;
+            }
+
+            int du = dist[u];
+            long cell = (long) (x0 + u / th) * _h + y0 + u % th;
+            BfsWorkspace.neighbours(cell, _w, _h, _cyclic, _next);
+            for (long v : _next) {
+                if (v == BfsWorkspace.NONE || _map.getCell(v) == _obsColor) continue;
+                int tv = tileOf(v), lv = local(v);
+                if (tv == t) {
+                    if (dist[lv] == -1 || du + 1 < dist[lv]) {
+                        dist[lv] = du + 1;
+                        queue[tail++] = lv;
+                    }
+                } else {
+                    // another tile: skip the seed if that tile is in memory and already as close
+                    int[] other = _cache.get(tv);
+                    if (other == null || other[lv] == -1 || du + 1 < other[lv]) post(tv, lv, du + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a seed to the inbox of a tile and queues the tile.
+     */
+    private void post(int t, int local, int d) {
+        int[] inbox = _inbox[t];
+        int size = _inboxSize[t];
+        if (inbox == null) _inbox[t] = inbox = new int[8];
+        else if (size == inbox.length) _inbox[t] = inbox = Arrays.copyOf(inbox, size * 2);
+        inbox[size] = local;
+        inbox[size + 1] = d;
+        _inboxSize[t] = size + 2;
+        _pending.push(d, t);
+    }
+
+    /**
+     * @return the distances of a tile, from the cache, from the file, or new (all -1), spilling the eldest tile if needed.
+     */
+    private int[] tile(int t) throws IOException {
+        int[] dist = _cache.get(t);
+        if (dist != null) return dist;
+        dist = new int[_tile * _tile];
+        if (_onDisk[t]) {
+            readTile(t, dist);
+            _loads++;
+        } else {
+            Arrays.fill(dist, -1);
+        }
+        if (_cache.size() >= _maxTiles) {
+            Iterator<java.util.Map.Entry<Integer, int[]>> it = _cache.entrySet().iterator();
+            java.util.Map.Entry<Integer, int[]> eldest = it.next();
+            writeTile(eldest.getKey(), eldest.getValue());
+            it.remove();
+            _spills++;
+        }
+        _cache.put(t, dist);
+        return dist;
+    }
+
+    /**
+     * Writes a tile to its columns in the output file.
+     */
+    private void writeTile(int t, int[] dist) throws IOException {
+        int tx = t / _nty, ty = t - tx * _nty;
+        int x0 = tx * _tile, y0 = ty * _tile;
+        int tw = Math.min(_tile, _w - x0), th = Math.min(_tile, _h - y0);
+        ByteBuffer io = io();
+        io.clear();
+        IntBuffer ints = io.asIntBuffer();
+        for (int lx = 0; lx < tw; lx++) {
+            io.clear();
+            ints.clear();
+            ints.put(dist, lx * th, th);
+            io.limit(th * 4);
+            writeFully(io, MappedMap.HEADER_SIZE + ((long) (x0 + lx) * _h + y0) * 4);
+        }
+        _onDisk[t] = true;
+    }
+
+    /**
+     * Reads a spilled tile back from its columns in the output file.
+     */
+    private void readTile(int t, int[] dist) throws IOException {
+        int tx = t / _nty, ty = t - tx * _nty;
+        int x0 = tx * _tile, y0 = ty * _tile;
+        int tw = Math.min(_tile, _w - x0), th = Math.min(_tile, _h - y0);
+        ByteBuffer io = io();
+        for (int lx = 0; lx < tw; lx++) {
+            io.clear();
+            io.limit(th * 4);
+            long pos = MappedMap.HEADER_SIZE + ((long) (x0 + lx) * _h + y0) * 4;
+            while (io.hasRemaining()) {
+                if (_out.read(io, pos + io.position()) < 0)
+                    throw new IOException("unexpected end of the distance file");
+            }
+            io.flip();
+            io.asIntBuffer().get(dist, lx * th, th);
+        }
+    }
+
+    private void writeFully(ByteBuffer buf, long pos) throws IOException {
+        long start = pos - buf.position();
+        while (buf.hasRemaining()) {
+            _out.write(buf, start + buf.position());
+        }
+    }
+
+    private ByteBuffer io() {
+        if (_io == null) _io = ByteBuffer.allocateDirect(_tile * 4).order(ByteOrder.LITTLE_ENDIAN);
+        return _io;
+    }
+
+    private int tileOf(long cell) {
+        int x = (int) (cell / _h), y = (int) (cell - (long) x * _h);
+        return (x / _tile) * _nty + y / _tile;
+    }
+
+    /**
+     * @return the index of a cell inside its tile (column major, like the map).
+     */
+    private int local(long cell) {
+        int x = (int) (cell / _h), y = (int) (cell - (long) x * _h);
+        int y0 = (y / _tile) * _tile;
+        int th = Math.min(_tile, _h - y0);
+        return (x % _tile) * th + (y - y0);
+    }
+}
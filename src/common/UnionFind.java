@@ -0,0 +1,66 @@
+package common;
+
+/**
+ * A disjoint set forest over the integers [0,n), used to label connected regions of a {@link Map}
+ * (every cell starts as its own set, the root of a set is its smallest member).
+ *
+ * {@link #union(int, int)} and {@link #find(int)} compress paths (path halving), so they must not run
+ * concurrently on the same sets. {@link #root(int)} only reads, and is safe to call from many threads
+ * once the unions are done.
+ */
+final class UnionFind {
+    private final int[] _parent;
+
+    /**
+     * @param n The number of elements.
+     */
+    UnionFind(int n) {
+        _parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            _parent[i] = i;
+        }
+    }
+
+    /**
+     * @param a An element.
+     * @return the root of the set of a, compressing the path to it.
+     */
+    int find(int a) {
+        int[] p = _parent;
+        while (p[a] != a) {
+            p[a] = p[p[a]];
+            a = p[a];
+        }
+        return a;
+    }
+
+    /**
+     * @param a An element.
+     * @return the root of the set of a, without changing the forest.
+     */
+    int root(int a) {
+        int[] p = _parent;
+        while (p[a] != a) {
+            a = p[a];
+        }
+        return a;
+    }
+
+    /**
+     * Merges the sets of a and b.
+     *
+     * @param a An element.
+     * @param b An element.
+     * @return the root of the merged set.
+     */
+    int union(int a, int b) {
+        int ra = find(a), rb = find(b);
+        if (ra == rb) return ra;
+        if (ra < rb) {
+            _parent[rb] = ra;
+            return ra;
+        }
+        _parent[ra] = rb;
+        return rb;
+    }
+}
@@ -0,0 +1,212 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * The searches of {@link Map} over a per cell cost grid: a 0-1 BFS when every cost is 0 or 1,
+ * otherwise Dijkstra with a bucketed (Dial) queue. Used by
+ * {@link Map#cheapestPath(Pixel2D, Pixel2D, int, boolean, int[])} and
+ * {@link Map#cheapestNearestPath(Pixel2D, int, int, boolean, int[])}.
+ *
+ * A step into cell v costs cost[v]. The costs are small non negative ints, so instead of a heap:
+ * - 0-1 BFS keeps a deque, a 0 step goes to the front and a 1 step to the back.
+ * - Dial keeps maxCost+1 buckets in a ring, bucket d % (maxCost+1) holds the cells at cost d.
+ *   Every pending cell is within maxCost of the current cost, so the ring never wraps onto itself.
+ * The buckets are linked lists in a pool of int entries, a cell is queued again when its cost improves and the
+ * stale entries are skipped. Above {@link #MAX_BUCKETS} buckets Dial would spend more on the ring than on the
+ * search, so larger costs run Dijkstra over the workspace's binary heap instead. The costs and parents live in the thread's {@link BfsWorkspace}, and all the memory
+ * is reused from one search to the next, so a search allocates nothing once it has grown.
+ */
+final class WeightedSearch {
+    /** The largest maxCost searched with Dial's buckets, above it a binary heap is used. */
+    static final int MAX_BUCKETS = 1 << 12;
+    private static final ThreadLocal<WeightedSearch> LOCAL = ThreadLocal.withInitial(WeightedSearch::new);
+
+    // the 0-1 BFS deque, a ring of a power of two size
+    private int[] _deque = new int[64];
+    private int _front, _back;
+    // the Dial buckets: the first entry of every bucket, and the pool of (cell, next entry) pairs
+    private int[] _buckets = new int[16];
+    private int[] _cell = new int[64], _next = new int[64];
+    private int _entries;
+    private int _expanded;
+
+    private WeightedSearch() {
+    }
+
+    /**
+     * @return the search memory of the calling thread.
+     */
+    static WeightedSearch get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Finds the cheapest path from src to dst, or to the cheapest cell of a color if byColor.
+     * The parents and the costs of the reached cells are left in ws.parent and ws.dist.
+     *
+     * @param ws       The workspace, acquired for the map.
+     * @param data     The cells in the layout of {@link Map}.
+     * @param src      The flat index of the start.
+     * @param dst      The flat index of the target (ignored if byColor).
+     * @param byColor  Whether to stop at the first cell of the color instead of dst.
+     * @param color    The target color if byColor.
+     * @param obsColor The obstacle color.
+     * @param cost     The cost of stepping into every cell.
+     * @param maxCost  The largest value of cost.
+     * @return the reached cell, or {@link BfsWorkspace#NONE}.
+     */
+    int search(BfsWorkspace ws, int[] data, int src, int dst, boolean byColor, int color, int obsColor,
+               int[] cost, int maxCost) {
+        _expanded = 0;
+        ws.visit(src, src);
+        ws.dist[src] = 0;
+        if (maxCost <= 1) return zeroOne(ws, data, src, dst, byColor, color, obsColor, cost);
+        if (maxCost <= MAX_BUCKETS) return dial(ws, data, src, dst, byColor, color, obsColor, cost, maxCost);
+        return dijkstra(ws, data, src, dst, byColor, color, obsColor, cost);
+    }
+
+    /**
+     * @return the number of cells settled by the last search.
+     */
+    int expanded() {
+        return _expanded;
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    private int zeroOne(BfsWorkspace ws, int[] data, int src, int dst, boolean byColor, int color, int obsColor,
+                        int[] cost) {
+        int[] dist = ws.dist, next = ws.next;
+        _front = _back = 0;
+        pushBack(src);
+        while (_front != _back) {
+            int u = _deque[_front];
+            _front = (_front + 1) & (_deque.length - 1);
+            if (ws.isClosed(u)) continue;
+            ws.close(u);
+            _expanded++;
+            if (byColor ? (u != src && data[u] == color) : u == dst) return u;
+
+            ws.neighbours(u, next);
+            for (int i = 0; i < 4; i++) {
+                int v = next[i];
+                if (v == BfsWorkspace.NONE || data[v] == obsColor || ws.isClosed(v)) continue;
+                int d = dist[u] + cost[v];
+                if (!ws.isVisited(v) || d < dist[v]) {
+                    ws.visit(v, u);
+                    dist[v] = d;
+                    if (cost[v] == 0) pushFront(v);
+                    else pushBack(v);
+                }
+            }
+        }
+        return BfsWorkspace.NONE;
+    }
+
+    private int dial(BfsWorkspace ws, int[] data, int src, int dst, boolean byColor, int color, int obsColor,
+                     int[] cost, int maxCost) {
+        int[] dist = ws.dist, next = ws.next;
+        int b = maxCost + 1;
+        if (_buckets.length < b) _buckets = new int[b];
+        Arrays.fill(_buckets, 0, b, -1);
+        _entries = 0;
+        push(src, 0, b);
+        int pending = 1;
+        for (int d = 0; pending > 0; d++) {
+            int slot = d % b;
+            // the bucket may grow while it is emptied (0 cost steps)
+            while (_buckets[slot] != -1) {
+                int e = _buckets[slot];
+                _buckets[slot] = _next[e];
+                pending--;
+                int u = _cell[e];
+                if (ws.isClosed(u) || dist[u] != d) continue;
+                ws.close(u);
+                _expanded++;
+                if (byColor ? (u != src && data[u] == color) : u == dst) return u;
+
+                ws.neighbours(u, next);
+                for (int i = 0; i < 4; i++) {
+                    int v = next[i];
+                    if (v == BfsWorkspace.NONE || data[v] == obsColor || ws.isClosed(v)) continue;
+                    int nd = d + cost[v];
+                    if (!ws.isVisited(v) || nd < dist[v]) {
+                        ws.visit(v, u);
+                        dist[v] = nd;
+                        push(v, nd, b);
+                        pending++;
+                    }
+                }
+            }
+        }
+        return BfsWorkspace.NONE;
+    }
+
+    private int dijkstra(BfsWorkspace ws, int[] data, int src, int dst, boolean byColor, int color, int obsColor,
+                         int[] cost) {
+        int[] dist = ws.dist, next = ws.next;
+        IntMinHeap heap = ws.heap();
+        heap.push(0, src);
+        while (!heap.isEmpty()) {
+            int d = heap.peekKey();
+            int u = heap.pop();
+            if (ws.isClosed(u) || dist[u] != d) continue;
+            ws.close(u);
+            _expanded++;
+            if (byColor ? (u != src && data[u] == color) : u == dst) return u;
+
+            ws.neighbours(u, next);
+            for (int i = 0; i < 4; i++) {
+                int v = next[i];
+                if (v == BfsWorkspace.NONE || data[v] == obsColor || ws.isClosed(v)) continue;
+                int nd = d + cost[v];
+                if (!ws.isVisited(v) || nd < dist[v]) {
+                    ws.visit(v, u);
+                    dist[v] = nd;
+                    heap.push(nd, v);
+                }
+            }
+        }
+        return BfsWorkspace.NONE;
+    }
+
+    /**
+     * Adds a cell to the bucket of its cost.
+     */
+    private void push(int cell, int d, int b) {
+        if (_entries == _cell.length) {
+            _cell = Arrays.copyOf(_cell, _entries * 2);
+            _next = Arrays.copyOf(_next, _entries * 2);
+        }
+        int slot = d % b;
+        _cell[_entries] = cell;
+        _next[_entries] = _buckets[slot];
+        _buckets[slot] = _entries++;
+    }
+
+    private void pushBack(int cell) {
+        _deque[_back] = cell;
+        _back = (_back + 1) & (_deque.length - 1);
+        if (_back == _front) grow();
+    }
+
+    private void pushFront(int cell) {
+        _front = (_front - 1) & (_deque.length - 1);
+        _deque[_front] = cell;
+        if (_back == _front) grow();
+    }
+
+    /**
+     * Doubles the full deque, unrolling the ring so the front is at 0.
+     */
+    private void grow() {
+        int n = _deque.length;
+        int[] deque = new int[n * 2];
+        System.arraycopy(_deque, _front, deque, 0, n - _front);
+        System.arraycopy(_deque, 0, deque, n - _front, _front);
+        _deque = deque;
+        _front = 0;
+        _back = n;
+    }
+}
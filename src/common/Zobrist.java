@@ -0,0 +1,45 @@
+package common;
+
+/**
+ * The Zobrist keys of the board hashes of {@link Map}.
+ *
+ * A key is a fixed pseudo random 64 bit number per cell (for the obstacle hashes) or per cell and value
+ * (for the hash of the whole board). A hash is the XOR of the keys of
+ * a set of cells, so a write updates it in O(1) by XORing out the old key and XORing in the new one.
+ * The keys are derived from the cell index by the splitmix64 finalizer instead of being stored in tables,
+ * so they cost no memory and every map of every size uses the same ones.
+ */
+final class Zobrist {
+    private static final long SEED = 0x5DEECE66DL;
+
+    private Zobrist() {
+    }
+
+    /**
+     * @param index A flat cell index.
+     * @return the key of the cell, the same whatever its value.
+     */
+    static long cell(int index) {
+        return mix(SEED + index * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * @param index A flat cell index.
+     * @param v     The value of the cell.
+     * @return the key of the cell holding that value (distinct for every (index, value) pair).
+     */
+    static long cell(int index, int v) {
+        return mix(((long) index << 32 | (v & 0xFFFFFFFFL)) ^ ~SEED);
+    }
+
+    ////////////////////// Private Methods ///////////////////////
+
+    /**
+     * The splitmix64 finalizer, a bijection of the longs that spreads every input bit over the whole output.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}